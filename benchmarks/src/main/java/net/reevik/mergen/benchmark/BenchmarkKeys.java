@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class BenchmarkKeys {
+
+  private BenchmarkKeys() {
+  }
+
+  /**
+   * Fixed-width keys, so that the string order of the keys is their numeric order.
+   */
+  static String[] keys(int keyCount) {
+    var keys = new String[keyCount];
+    for (int i = 0; i < keyCount; i++) {
+      keys[i] = String.format("%010d", i);
+    }
+    return keys;
+  }
+
+  static Path tempFile(String prefix) {
+    try {
+      return Files.createTempFile(prefix, ".db");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.benchmark;
+
+import static net.reevik.mergen.io.DiskFile.PAGE_SIZE;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import net.reevik.mergen.io.DiskFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Page read and write throughput of {@link DiskFile} at random page offsets of a pre-allocated
+ * file. Writes include the {@code force} of the file channel.
+ *
+ * @author Erhan Bagdemir
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiskFileBenchmark {
+
+  @Param({"1024"})
+  private int pageCount;
+
+  private Path file;
+  private DiskFile diskFile;
+  private byte[] page;
+  private SplittableRandom random;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    file = BenchmarkKeys.tempFile("mergen-file");
+    diskFile = new DiskFile(file.toString());
+    page = new byte[PAGE_SIZE];
+    for (int i = 0; i < pageCount; i++) {
+      diskFile.writeAt(page);
+    }
+    random = new SplittableRandom(42L);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    diskFile.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public byte[] readPage() {
+    return diskFile.readBytes(randomPageOffset(), PAGE_SIZE);
+  }
+
+  @Benchmark
+  public long writePage() {
+    return diskFile.writeAt(page, randomPageOffset());
+  }
+
+  private long randomPageOffset() {
+    return (long) random.nextInt(pageCount) * PAGE_SIZE;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.reevik.mergen.benchmark.KeyDistribution.KeyGenerator;
+import net.reevik.mergen.index.BTreeIndex;
+import net.reevik.mergen.index.DataEntity;
+import net.reevik.mergen.index.DataRecord;
+import net.reevik.mergen.io.DiskController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the point operations of {@link BTreeIndex} for different tree sizes and key
+ * distributions. The tree is built once per trial by inserting the keys in a random order.
+ *
+ * @author Erhan Bagdemir
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+
+  private static final long SEED = 42L;
+
+  @Param({"1000", "10000", "100000"})
+  private int treeSize;
+
+  @Param({"SEQUENTIAL", "UNIFORM", "ZIPFIAN"})
+  private KeyDistribution distribution;
+
+  private Path indexFile;
+  private BTreeIndex index;
+  private String[] keys;
+  private byte[] payload;
+  private KeyGenerator keyGenerator;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    indexFile = BenchmarkKeys.tempFile("mergen-index");
+    index = new BTreeIndex(new DiskController(indexFile.toString()));
+    keys = BenchmarkKeys.keys(treeSize);
+    payload = new byte[64];
+    var insertOrder = new ArrayList<>(Arrays.asList(keys));
+    Collections.shuffle(insertOrder, new Random(SEED));
+    for (var key : insertOrder) {
+      index.upsert(new DataEntity(key, payload));
+    }
+    keyGenerator = distribution.newGenerator(treeSize, SEED);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    index.close();
+    Files.deleteIfExists(indexFile);
+  }
+
+  @Benchmark
+  public List<DataRecord> query() {
+    return index.query(keys[keyGenerator.nextIndex()]);
+  }
+
+  @Benchmark
+  public void upsert() {
+    index.upsert(new DataEntity(keys[keyGenerator.nextIndex()], payload));
+  }
+
+  /**
+   * Deletes a key and inserts it back to keep the tree size stable over the iterations.
+   */
+  @Benchmark
+  public List<DataRecord> deleteAndReinsert() {
+    var key = keys[keyGenerator.nextIndex()];
+    var deleted = index.delete(key);
+    index.upsert(new DataEntity(key, payload));
+    return deleted;
+  }
+}
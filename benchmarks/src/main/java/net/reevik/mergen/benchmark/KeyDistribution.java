@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distributions of the keys, which the benchmarks access. The generators return the position of
+ * the next key in a key space of the given size.
+ *
+ * @author Erhan Bagdemir
+ */
+public enum KeyDistribution {
+
+  /**
+   * Keys are accessed in their order, wrapping around at the end of the key space.
+   */
+  SEQUENTIAL {
+    @Override
+    KeyGenerator newGenerator(int keyCount, long seed) {
+      return new KeyGenerator() {
+        private int next;
+
+        @Override
+        public int nextIndex() {
+          int index = next;
+          next = next + 1 == keyCount ? 0 : next + 1;
+          return index;
+        }
+      };
+    }
+  },
+
+  /**
+   * Every key is equally likely to be accessed.
+   */
+  UNIFORM {
+    @Override
+    KeyGenerator newGenerator(int keyCount, long seed) {
+      var random = new SplittableRandom(seed);
+      return () -> random.nextInt(keyCount);
+    }
+  },
+
+  /**
+   * A few keys are hot, i.e. the probability of the key at rank i is proportional to 1 / i^theta.
+   * The hot keys are scattered over the key space so that they don't share the same leaves.
+   */
+  ZIPFIAN {
+    @Override
+    KeyGenerator newGenerator(int keyCount, long seed) {
+      return new ZipfianGenerator(keyCount, seed);
+    }
+  };
+
+  abstract KeyGenerator newGenerator(int keyCount, long seed);
+
+  @FunctionalInterface
+  interface KeyGenerator {
+
+    int nextIndex();
+  }
+
+  /**
+   * Zipfian generator of Gray et al., "Quickly Generating Billion-Record Synthetic Databases",
+   * as it is used by YCSB.
+   */
+  static final class ZipfianGenerator implements KeyGenerator {
+
+    private static final double THETA = 0.99d;
+
+    private final SplittableRandom random;
+    private final int keyCount;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+
+    ZipfianGenerator(int keyCount, long seed) {
+      this.random = new SplittableRandom(seed);
+      this.keyCount = keyCount;
+      this.zetaN = zeta(keyCount);
+      this.alpha = 1.0d / (1.0d - THETA);
+      this.eta = (1 - Math.pow(2.0d / keyCount, 1 - THETA)) / (1 - zeta(2) / zetaN);
+    }
+
+    private static double zeta(int n) {
+      double sum = 0;
+      for (int i = 1; i <= n; i++) {
+        sum += 1 / Math.pow(i, THETA);
+      }
+      return sum;
+    }
+
+    @Override
+    public int nextIndex() {
+      double u = random.nextDouble();
+      double uz = u * zetaN;
+      int rank;
+      if (uz < 1.0d) {
+        rank = 0;
+      } else if (uz < 1.0d + Math.pow(0.5d, THETA)) {
+        rank = 1;
+      } else {
+        rank = (int) (keyCount * Math.pow(eta * u - eta + 1, alpha));
+      }
+      return scatter(Math.min(rank, keyCount - 1));
+    }
+
+    // Maps the rank onto a key position with a multiplicative hash.
+    private int scatter(int rank) {
+      return (int) Long.remainderUnsigned(rank * 0x9E3779B97F4A7C15L, keyCount);
+    }
+  }
+}
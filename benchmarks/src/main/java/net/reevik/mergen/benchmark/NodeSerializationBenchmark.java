@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import net.reevik.mergen.index.DataNode;
+import net.reevik.mergen.index.DataRecord;
+import net.reevik.mergen.index.InnerNode;
+import net.reevik.mergen.index.Key;
+import net.reevik.mergen.index.KeyData;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.Page;
+import net.reevik.mergen.io.PageRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of the nodes into pages and their deserialization from the page bytes. The nodes
+ * are filled up to the capacity, which the order of the index allows without a split.
+ *
+ * @author Erhan Bagdemir
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeSerializationBenchmark {
+
+  private Path file;
+  private DiskController diskController;
+  private DataNode dataNode;
+  private InnerNode innerNode;
+  private byte[] dataNodePage;
+  private byte[] innerNodePage;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    file = BenchmarkKeys.tempFile("mergen-node");
+    diskController = new DiskController(file.toString());
+    dataNode = new DataNode(diskController);
+    dataNode.add(new KeyData("0000000100", new DataRecord(PageRef.of(100), diskController)));
+    dataNode.add(new KeyData("0000000200", new DataRecord(PageRef.of(200), diskController)));
+    innerNode = new InnerNode(diskController);
+    innerNode.add(new Key("0000000100", new DataNode(PageRef.of(100), diskController)));
+    innerNode.add(new Key("0000000200", new DataNode(PageRef.of(200), diskController)));
+    innerNode.setRightMost(new Key(new DataNode(PageRef.of(300), diskController)));
+    dataNodePage = dataNode.serialize().getPageBuffer();
+    innerNodePage = innerNode.serialize().getPageBuffer();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    diskController.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public Page serializeDataNode() {
+    return dataNode.serialize();
+  }
+
+  @Benchmark
+  public DataNode deserializeDataNode() {
+    return DataNode.deserialize(new Page(dataNodePage, PageRef.of(0)), diskController);
+  }
+
+  @Benchmark
+  public Page serializeInnerNode() {
+    return innerNode.serialize();
+  }
+
+  @Benchmark
+  public InnerNode deserializeInnerNode() {
+    return InnerNode.deserialize(new Page(innerNodePage, PageRef.of(0)), diskController);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import net.reevik.mergen.index.DataNode;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.Page;
+import net.reevik.mergen.io.PageRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of filling a {@link Page} with cells of a fixed size and of iterating the cells of a full
+ * page, which is read from a byte array as it comes from the disk.
+ *
+ * @author Erhan Bagdemir
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageBenchmark {
+
+  @Param({"16", "128", "1024"})
+  private int cellSize;
+
+  private Path file;
+  private DiskController diskController;
+  private DataNode owner;
+  private ByteBuffer cell;
+  private byte[] fullPage;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    file = BenchmarkKeys.tempFile("mergen-page");
+    diskController = new DiskController(file.toString());
+    owner = new DataNode(diskController);
+    cell = ByteBuffer.wrap(new byte[cellSize]);
+    fullPage = appendCells().getPageBuffer();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    diskController.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public Page appendCells() {
+    var page = new Page(owner);
+    while (page.hasSpace(cellSize)) {
+      page.appendCell(cell);
+    }
+    return page;
+  }
+
+  @Benchmark
+  public void iterateCells(Blackhole blackhole) {
+    for (ByteBuffer nextCell : new Page(fullPage, PageRef.of(0))) {
+      blackhole.consume(nextCell);
+    }
+  }
+}
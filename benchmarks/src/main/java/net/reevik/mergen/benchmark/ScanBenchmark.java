@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.reevik.mergen.index.BTreeIndex;
+import net.reevik.mergen.index.DataEntity;
+import net.reevik.mergen.index.LeafScanner;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.PageRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of a full ordered scan of {@link BTreeIndex}, both over the tree in memory and over the
+ * persisted leaves with different read-ahead windows. A window of zero disables the read-ahead.
+ *
+ * @author Erhan Bagdemir
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+  private static final long SEED = 42L;
+
+  @Param({"10000", "100000"})
+  private int treeSize;
+
+  @Param({"0", "8", "32"})
+  private int readAhead;
+
+  private Path indexFile;
+  private DiskController diskController;
+  private BTreeIndex index;
+  private PageRef firstLeaf;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    indexFile = BenchmarkKeys.tempFile("mergen-scan");
+    diskController = new DiskController(indexFile.toString());
+    index = new BTreeIndex(diskController);
+    var insertOrder = new ArrayList<>(Arrays.asList(BenchmarkKeys.keys(treeSize)));
+    Collections.shuffle(insertOrder, new Random(SEED));
+    var payload = new byte[64];
+    for (var key : insertOrder) {
+      index.upsert(new DataEntity(key, payload));
+    }
+    firstLeaf = index.persistLeaves();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    index.close();
+    Files.deleteIfExists(indexFile);
+  }
+
+  @Benchmark
+  public long scanInMemory() {
+    long count = 0;
+    for (var cursor = index.scan(); cursor.hasNext(); cursor.next()) {
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public long scanPersistedLeaves() {
+    long count = 0;
+    try (var scanner = new LeafScanner(firstLeaf, diskController, readAhead)) {
+      for (; scanner.hasNext(); scanner.next()) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -15,8 +15,45 @@
  */
 package net.reevik.mergen.index;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import net.reevik.mergen.index.MessageBuffer.Kind;
+import net.reevik.mergen.index.MessageBuffer.Message;
 import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.ValueLog;
+import net.reevik.mergen.io.ValuePointer;
+import net.reevik.mergen.jfr.IndexOperationEvent;
+import net.reevik.mergen.metrics.IndexMetrics;
 import net.reevik.mikron.annotation.Configurable;
 import net.reevik.mikron.annotation.Initialize;
 import net.reevik.mikron.annotation.Managed;
@@ -26,28 +63,533 @@ import net.reevik.mikron.annotation.Wire;
  * A B+Tree implementation of indexing. The order is the number of index keys each inner or data
  * node can hold. {@link BTreeIndex} is a {@link NodeObserver} implementation. Whenever the root
  * node needs to be updated, e.g. in case of node split, the {@link BTreeIndex} will be notified.
+ * <p>
+ * Queries run concurrently with each other, whereas upserts and deletes are exclusive. The
+ * asynchronous queries run on virtual threads, so the blocking disk reads park the virtual threads
+ * instead of occupying platform threads.
+ * <p>
+ * If the message buffers are enabled, the upserts and deletes are buffered in the inner nodes and
+ * flushed down to the leaves in batches, as in a B-epsilon tree, so the updates of the same leaves
+ * are applied together. The queries see the buffered messages, and the scans flush the buffers
+ * before they read the leaves.
  *
  * @author Erhan Bagdemir
  */
 @Managed(name = "index")
-public class BTreeIndex implements NodeObserver {
+public class BTreeIndex implements NodeObserver, Closeable {
 
   static final int ORDER = 4;
 
+  /**
+   * The number of the records, which {@link #queryStream(String)} fetches at once.
+   */
+  private static final int STREAM_BATCH_SIZE = 256;
+
+  private static final BiFunction<List<KeyData>, DataNode, List<DataRecord>> ALL_RECORDS =
+      (keyData, dataNode) -> keyData.stream().flatMap(kd -> kd.dataRecords().stream()).toList();
+
   /**
    * Root node of the B+Tree index.
    */
   private Node root;
 
+  private boolean rootChanged;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Runs the asynchronous queries. Each query gets its own virtual thread.
+   */
+  private final ExecutorService queryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
   @Configurable(name = "order")
   private int order;
 
+  /**
+   * If true, the index is non-unique, i.e. an upsert with an existing index key adds another data
+   * record to the key's posting list instead of being ignored.
+   */
+  @Configurable(name = "duplicateKeys")
+  private boolean duplicateKeys;
+
+  /**
+   * The number of the keys, for which the Bloom filter is dimensioned initially. The filter is
+   * disabled if it is not positive.
+   */
+  @Configurable(name = "bloomFilterExpectedKeys")
+  private int bloomFilterExpectedKeys;
+
+  /**
+   * The number of the messages, which an inner node buffers before it flushes them to its
+   * children. The message buffers are disabled if it is not positive.
+   */
+  @Configurable(name = "messageBufferSize")
+  private int messageBufferSize;
+
+  /**
+   * The fill threshold of the nodes in percent of their capacity. The nodes, which fall below it
+   * after a delete, borrow from or are merged with a sibling. If it is not positive, only the empty
+   * leaves and the inner nodes with a single child are eliminated.
+   */
+  @Configurable(name = "minFillPercent")
+  private int minFillPercent;
+
+  /**
+   * The number of the tombstones, at which they are purged in the background. If it is positive,
+   * the deletes are deferred, i.e. the deleted entries are replaced by tombstones, and the tree
+   * isn't restructured by the deletes themselves.
+   */
+  @Configurable(name = "tombstonePurgeThreshold")
+  private int tombstonePurgeThreshold;
+
+  /**
+   * The maximum size of the payloads, which are stored inline in the leaf cells next to their
+   * index keys, so the point queries on the persisted leaves don't read the data record pages. The
+   * payloads are stored out of line, if it is not positive.
+   */
+  @Configurable(name = "inlinePayloadLimit")
+  private int inlinePayloadLimit;
+
+  /**
+   * The index keys, which are marked with tombstones, and are to be purged.
+   */
+  private final NavigableSet<String> tombstones = new TreeSet<>();
+  private final AtomicBoolean purgeScheduled = new AtomicBoolean();
+
+  /**
+   * The log, to which the payloads not smaller than the minimum size are appended, so the leaves
+   * keep only their {@link ValuePointer}. The log is owned by the caller.
+   */
+  private volatile ValueLog valueLog;
+  private volatile int valueLogMinSize;
+  private volatile int valueLogGcPercent;
+  private final AtomicBoolean collectionScheduled = new AtomicBoolean();
+
+  /**
+   * Serializes the collections of the value log, i.e. the background ones and those called
+   * directly, which would otherwise collect the same segment.
+   */
+  private final ReentrantLock collectionLock = new ReentrantLock();
+
+  /**
+   * The messages, which are left without a buffer during a flush, and are to be applied next.
+   */
+  private final Deque<Message> pendingMessages = new ArrayDeque<>();
+  private volatile boolean hasBufferedMessages;
+
+  /**
+   * The right most leaf, to which the upserts of the monotonically increasing keys are added
+   * without descending the tree. It is resolved again after the deletes and the root changes.
+   */
+  private DataNode rightMostLeaf;
+
+  /**
+   * Optional filter over the index keys, which answers the lookups for the missing keys without
+   * descending the tree.
+   */
+  private BloomFilter bloomFilter;
+  private long deletesSinceRebuild;
+
   @Wire
   private DiskController diskAccessController;
 
+  public BTreeIndex() {
+  }
+
+  public BTreeIndex(DiskController diskAccessController) {
+    this(diskAccessController, false);
+  }
+
+  public BTreeIndex(DiskController diskAccessController, boolean duplicateKeys) {
+    this.diskAccessController = diskAccessController;
+    this.duplicateKeys = duplicateKeys;
+    init();
+  }
+
   @Initialize
   public void init() {
     this.root = resolveRoot();
+    if (bloomFilterExpectedKeys > 0) {
+      enableBloomFilter(bloomFilterExpectedKeys);
+    }
+  }
+
+  /**
+   * Enables the Bloom filter, which is built from the keys in the index.
+   *
+   * @param expectedKeys The number of the keys, for which the filter is dimensioned initially. The
+   * filter grows as the index grows.
+   */
+  public void enableBloomFilter(int expectedKeys) {
+    lock.writeLock().lock();
+    try {
+      bloomFilterExpectedKeys = expectedKeys;
+      rebuildBloomFilter();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Enables the message buffers in the inner nodes, or disables them, in which case the buffered
+   * messages are flushed to the leaves.
+   *
+   * @param bufferSize The number of the messages, which an inner node buffers before it flushes
+   * them to its children, or zero to disable the buffers.
+   */
+  public void enableMessageBuffers(int bufferSize) {
+    lock.writeLock().lock();
+    try {
+      if (bufferSize <= 0) {
+        drainMessageBuffers();
+      }
+      messageBufferSize = Math.max(0, bufferSize);
+      rightMostLeaf = null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Sets the fill threshold of the nodes, below which the deletes rebalance the nodes with their
+   * siblings.
+   *
+   * @param minFillPercent Fill threshold in percent of the nodes' capacity, or zero to eliminate
+   * only the empty leaves and the inner nodes with a single child.
+   */
+  public void setMinFillPercent(int minFillPercent) {
+    lock.writeLock().lock();
+    try {
+      this.minFillPercent = Math.clamp(minFillPercent, 0, 100);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Sets the maximum size of the payloads, which are stored inline in the leaf cells, once the
+   * leaves are persisted.
+   *
+   * @param inlinePayloadLimit Maximum payload size in bytes up to
+   * {@link KeyData#MAX_INLINE_PAYLOAD}, or zero to store all payloads out of line.
+   */
+  public void setInlinePayloadLimit(int inlinePayloadLimit) {
+    lock.writeLock().lock();
+    try {
+      this.inlinePayloadLimit = Math.max(0, inlinePayloadLimit);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Enables the deferred deletes, or disables them, in which case the tombstones are purged right
+   * away. The message buffers defer the deletes on their own, so the deletes are buffered rather
+   * than marked, if both are enabled.
+   *
+   * @param purgeThreshold The number of the tombstones, at which they are purged in the
+   * background, or zero to disable the deferred deletes.
+   */
+  public void enableDeferredDeletes(int purgeThreshold) {
+    lock.writeLock().lock();
+    try {
+      tombstonePurgeThreshold = Math.max(0, purgeThreshold);
+      if (tombstonePurgeThreshold == 0) {
+        purgeTombstones();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Enables the key-value separation, in which the payloads not smaller than the minimum size are
+   * appended to the value log, and the leaves keep only their location in the log, so the leaves
+   * stay small and the payload writes are sequential. The posting lists refer to the record pages
+   * only, so the value log requires an index with unique keys.
+   *
+   * @param valueLog Value log, which the caller closes after the index is no longer used.
+   * @param minValueSize The minimum size of the payloads appended to the log in bytes.
+   * @param gcGarbagePercent The share of the garbage in a sealed segment in percent, at which the
+   * segment is collected in the background, or zero to collect only with
+   * {@link #collectValueLog()}.
+   */
+  public void enableValueLog(ValueLog valueLog, int minValueSize, int gcGarbagePercent) {
+    if (duplicateKeys) {
+      throw new IllegalStateException("The value log requires an index with unique keys.");
+    }
+    lock.writeLock().lock();
+    try {
+      this.valueLogMinSize = Math.max(0, minValueSize);
+      this.valueLogGcPercent = Math.max(0, gcGarbagePercent);
+      this.valueLog = valueLog;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Collects the sealed segment of the value log with the biggest share of garbage. The segment is
+   * read sequentially, the payloads, to which the index still refers, are appended to the head of
+   * the log, their entries are updated with the new locations, and the segment is dropped. The
+   * write lock is only held while an entry is updated, so the collection doesn't hold up the other
+   * operations.
+   *
+   * @return Number of the payloads moved, or -1 if there is no sealed segment to collect.
+   */
+  public int collectValueLog() {
+    collectionLock.lock();
+    try {
+      var log = valueLog;
+      int segment = log != null ? log.garbageSegment() : -1;
+      if (segment < 0) {
+        return -1;
+      }
+      // The payloads in the buffers aren't visible in the leaves, so they are applied first.
+      drainBeforeRead();
+      var moved = new AtomicInteger();
+      log.scan(segment, entry -> {
+        if (isLive(entry)) {
+          var newPointer = log.append(entry.key(), entry.value());
+          lock.writeLock().lock();
+          try {
+            if (root != null && root.leafFor(entry.key()).relocate(entry.key(),
+                entry.valuePointer(), DataRecord.createLogged(newPointer, diskAccessController))) {
+              moved.incrementAndGet();
+            } else {
+              log.discard(newPointer);
+            }
+          } finally {
+            lock.writeLock().unlock();
+          }
+        }
+      });
+      // The payloads are read under the read lock, so no read is left in the dropped segment.
+      lock.writeLock().lock();
+      try {
+        log.drop(segment);
+      } finally {
+        lock.writeLock().unlock();
+      }
+      return moved.get();
+    } finally {
+      collectionLock.unlock();
+    }
+  }
+
+  private boolean isLive(ValueLog.Entry entry) {
+    lock.readLock().lock();
+    try {
+      return root != null && root.doQuery(entry.key(), ALL_RECORDS).stream()
+          .anyMatch(dataRecord -> entry.valuePointer().equals(dataRecord.getValuePointer()));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void scheduleCollectionIfDue() {
+    var log = valueLog;
+    if (log == null || valueLogGcPercent == 0) {
+      return;
+    }
+    int segment = log.garbageSegment();
+    if (segment >= 0 && log.garbagePercent(segment) >= valueLogGcPercent
+        && collectionScheduled.compareAndSet(false, true)) {
+      queryExecutor.execute(() -> {
+        try {
+          collectValueLog();
+        } finally {
+          collectionScheduled.set(false);
+        }
+      });
+    }
+  }
+
+  // Appends the payload to the value log before the index is locked, so the index only keeps its
+  // location. Returns null, if the payload is kept in the index.
+  private DataRecord logged(DataEntity dataEntity) {
+    var log = valueLog;
+    if (log == null || dataEntity.payload().length < valueLogMinSize) {
+      return null;
+    }
+    var valuePointer = log.append(dataEntity.indexKey().toString(), dataEntity.payload());
+    return DataRecord.createLogged(valuePointer, diskAccessController);
+  }
+
+  // Accounts the payloads, which the index no longer refers to, as garbage of the value log.
+  private void discardLogged(List<DataRecord> dataRecords) {
+    var log = valueLog;
+    if (log != null) {
+      dataRecords.stream().map(DataRecord::getValuePointer).filter(Objects::nonNull)
+          .forEach(log::discard);
+    }
+  }
+
+  // Reads the payloads, which are stored in the value log, into copies, so the index keeps their
+  // locations only. The caller holds the lock, so the segments aren't dropped meanwhile.
+  private List<DataRecord> resolveLogged(List<DataRecord> dataRecords) {
+    if (valueLog == null || dataRecords.stream().allMatch(dr -> dr.getValuePointer() == null)) {
+      return dataRecords;
+    }
+    return dataRecords.stream().map(this::resolveLogged).toList();
+  }
+
+  private KeyData resolveLogged(KeyData keyData) {
+    var dataRecord = keyData.dataRecord();
+    return dataRecord == null || dataRecord.getValuePointer() == null ? keyData
+        : new KeyData(keyData.indexKey(), resolveLogged(dataRecord));
+  }
+
+  private DataRecord resolveLogged(DataRecord dataRecord) {
+    var valuePointer = dataRecord.getValuePointer();
+    return valuePointer == null ? dataRecord : DataRecord.createSynced(PageRef.empty(),
+        valueLog.read(valuePointer), diskAccessController);
+  }
+
+  /**
+   * Purges the tombstones leaf by leaf, i.e. all tombstones of a leaf are removed at once, and the
+   * leaf is rebalanced afterwards, if it has become empty or fallen below the fill threshold. The
+   * write lock is released between the leaves, so the purge doesn't hold up the other operations.
+   *
+   * @return Number of the tombstones purged.
+   */
+  public int purgeTombstones() {
+    int purged = 0;
+    while (true) {
+      lock.writeLock().lock();
+      try {
+        var indexKey = tombstones.pollFirst();
+        if (indexKey == null) {
+          return purged;
+        }
+        // The leaf might have been purged with a key before, or the key might have been upserted
+        // again, in which case there is nothing left to purge.
+        purged += root.leafFor(indexKey).purgeTombstones(minFillPercent);
+        rightMostLeaf = null;
+        updateTreeHeight();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private void schedulePurgeIfDue() {
+    if (tombstones.size() >= tombstonePurgeThreshold && purgeScheduled.compareAndSet(false, true)) {
+      queryExecutor.execute(() -> {
+        try {
+          purgeTombstones();
+        } finally {
+          purgeScheduled.set(false);
+        }
+      });
+    }
+  }
+
+  private void submit(Message message) {
+    pendingMessages.add(message);
+    applyPendingMessages();
+  }
+
+  private void applyPendingMessages() {
+    while (!pendingMessages.isEmpty()) {
+      var message = pendingMessages.removeFirst();
+      if (root instanceof InnerNode innerRoot) {
+        hasBufferedMessages = true;
+        innerRoot.buffer(message, messageBufferSize, this::applyToLeaf, this::discardDropped);
+      } else {
+        applyToLeaf(message);
+      }
+    }
+  }
+
+  // The flushed messages are routed from the root, since the nodes on their way might split or be
+  // merged while the leaves are being updated.
+  private void applyToLeaf(Message message) {
+    if (!message.applyTo(root.leafFor(message.key()), minFillPercent)) {
+      discardDropped(message);
+    }
+  }
+
+  // An upsert of an existing key has no effect, so the payload it appended to the value log is
+  // garbage right away.
+  private void discardDropped(Message message) {
+    discardLogged(Collections.singletonList(message.dataRecord()));
+  }
+
+  // Flushes all buffers down to the leaves. The flushes restructure the tree, so the tree is
+  // drained until no buffer holds messages.
+  private void drainMessageBuffers() {
+    if (!hasBufferedMessages) {
+      return;
+    }
+    while (root instanceof InnerNode innerRoot && innerRoot.hasBufferedMessages()) {
+      innerRoot.drainBuffers(this::applyToLeaf, this::discardDropped);
+      applyPendingMessages();
+    }
+    hasBufferedMessages = false;
+  }
+
+  @Override
+  public void onPendingMessages(List<Message> messages) {
+    pendingMessages.addAll(messages);
+  }
+
+  @Override
+  public void onDroppedMessages(List<Message> messages) {
+    messages.forEach(this::discardDropped);
+  }
+
+  // Rebuilds the filter from the leaves, which drops the deleted keys and resizes the filter.
+  private void rebuildBloomFilter() {
+    drainMessageBuffers();
+    var indexKeys = new ArrayList<Object>();
+    for (var leaf = root != null ? root.firstLeaf() : null; leaf != null; leaf = leaf.nextLeaf()) {
+      leaf.entriesAfter(null, true).forEach(keyData -> indexKeys.add(keyData.indexKey()));
+    }
+    int expectedKeys = Math.max(bloomFilterExpectedKeys, indexKeys.size() * 2);
+    var newBloomFilter = BloomFilter.create(expectedKeys, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE,
+        diskAccessController);
+    indexKeys.forEach(newBloomFilter::add);
+    bloomFilter = newBloomFilter;
+    deletesSinceRebuild = 0;
+  }
+
+  // The filter is rebuilt, once it is over its capacity, or a quarter of its keys are deleted.
+  private void rebuildBloomFilterIfStale() {
+    if (bloomFilter != null && (bloomFilter.getInsertions() > bloomFilter.getCapacity()
+        || deletesSinceRebuild > bloomFilter.getInsertions() / 4)) {
+      rebuildBloomFilter();
+    }
+  }
+
+  /**
+   * Persists the Bloom filter in dedicated pages in the index file.
+   *
+   * @return {@link PageRef} of the filter, or an empty reference if the filter isn't enabled.
+   */
+  public PageRef persistBloomFilter() {
+    lock.readLock().lock();
+    try {
+      return bloomFilter != null ? bloomFilter.persist() : PageRef.empty();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Replaces the Bloom filter with the one persisted in the index file.
+   *
+   * @param pageRef {@link PageRef} returned by {@link #persistBloomFilter()}.
+   */
+  public void loadBloomFilter(PageRef pageRef) {
+    var persistedBloomFilter = BloomFilter.read(pageRef, diskAccessController);
+    lock.writeLock().lock();
+    try {
+      bloomFilter = persistedBloomFilter;
+      deletesSinceRebuild = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   private Node resolveRoot() {
@@ -57,27 +599,466 @@ public class BTreeIndex implements NodeObserver {
   }
 
   /**
-   * Inserts or update an existing record.
+   * Inserts or update an existing record. If the index allows duplicate keys, the record is added
+   * to the records of the index key.
    *
    * @param dataEntity An instance of {@link DataEntity}.
    */
   public void upsert(DataEntity dataEntity) {
-    if (root == null) {
-      root = new DataNode(diskAccessController);
-      root.registerObserver(this);
+    var event = new IndexOperationEvent();
+    event.begin();
+    long start = System.nanoTime();
+    var loggedRecord = logged(dataEntity);
+    lock.writeLock().lock();
+    try {
+      if (root == null) {
+        root = new DataNode(diskAccessController);
+        root.registerObserver(this);
+        rootChanged = true;
+      }
+      if (messageBufferSize > 0) {
+        submit(new Message(duplicateKeys ? Kind.APPEND : Kind.UPSERT, dataEntity.indexKey(),
+            loggedRecord != null ? loggedRecord
+                : DataRecord.createNew(dataEntity, diskAccessController)));
+      } else if (loggedRecord != null) {
+        applyToLeaf(new Message(Kind.UPSERT, dataEntity.indexKey(), loggedRecord));
+      } else {
+        var leaf = rightEdgeLeafFor(dataEntity.indexKey().toString());
+        if (leaf != null) {
+          leaf.addAtRightEdge(dataEntity, duplicateKeys);
+        } else if (duplicateKeys) {
+          root.doAppend(dataEntity);
+        } else {
+          root.doUpsert(dataEntity);
+        }
+      }
+      if (bloomFilter != null) {
+        bloomFilter.add(dataEntity.indexKey());
+        rebuildBloomFilterIfStale();
+      }
+      updateTreeHeight();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (loggedRecord != null) {
+      scheduleCollectionIfDue();
     }
-    root.doUpsert(dataEntity);
+    getMetrics().upsert().recordSince(start);
+    commit(event, "upsert", dataEntity.indexKey(), 1);
+  }
+
+  // The keys, which aren't smaller than the first key of the right most leaf, are routed to that
+  // leaf anyway, so they are added to the cached leaf without descending the tree. Returns null,
+  // if the key belongs to another leaf, or the root is a leaf itself.
+  private DataNode rightEdgeLeafFor(String indexKey) {
+    if (rightMostLeaf == null) {
+      rightMostLeaf = root.lastLeaf();
+    }
+    if (!rightMostLeaf.hasParent()
+        || indexKey.compareTo(rightMostLeaf.firstIndexKey().toString()) < 0) {
+      return null;
+    }
+    getMetrics().rightEdgeAppend();
+    return rightMostLeaf;
   }
 
   /**
-   * Query the index by index key.
+   * Query the index by index key. If the Bloom filter is enabled and rules the key out, the query
+   * returns without descending the tree.
    *
    * @param indexKey An index key.
    * @return {@link DataRecord} instances found for the index key.
    */
   public List<DataRecord> query(String indexKey) {
-    return root.doQuery(indexKey,
-        (keyData, dataNode) -> keyData.stream().map(KeyData::dataRecord).toList());
+    var event = new IndexOperationEvent();
+    event.begin();
+    long start = System.nanoTime();
+    List<DataRecord> dataRecords;
+    lock.readLock().lock();
+    try {
+      if (bloomFilter != null && !bloomFilter.mightContain(indexKey)) {
+        getMetrics().bloomFilterNegative();
+        dataRecords = List.of();
+      } else {
+        dataRecords = resolveLogged(root.doQuery(indexKey, ALL_RECORDS));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    getMetrics().query().recordSince(start);
+    commit(event, "query", indexKey, dataRecords.size());
+    return dataRecords;
+  }
+
+  /**
+   * Query the index by multiple index keys at once. The keys are sorted first, so the keys routed
+   * through the same inner node share the descent, and each node on the way is visited once. The
+   * payloads of the records, which are not yet loaded, are read in a batch, in which the duplicate
+   * pages are read once and the pages adjacent in the file are read together.
+   *
+   * @param indexKeys Index keys.
+   * @return {@link DataRecord} instances found for each index key, sorted by the index keys.
+   */
+  public Map<String, List<DataRecord>> queryAll(Collection<?> indexKeys) {
+    var event = new IndexOperationEvent();
+    event.begin();
+    long start = System.nanoTime();
+    var sortedKeys = indexKeys.stream().map(Object::toString).distinct().sorted().toList();
+    var results = new TreeMap<String, List<DataRecord>>();
+    lock.readLock().lock();
+    try {
+      var candidates = new ArrayList<String>(sortedKeys.size());
+      for (var indexKey : sortedKeys) {
+        if (bloomFilter == null || bloomFilter.mightContain(indexKey)) {
+          candidates.add(indexKey);
+        } else {
+          getMetrics().bloomFilterNegative();
+          results.put(indexKey, List.of());
+        }
+      }
+      if (root != null) {
+        root.doQueryAll(candidates, 0, candidates.size(), results);
+      }
+      if (valueLog != null) {
+        results.replaceAll((indexKey, dataRecords) -> resolveLogged(dataRecords));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    results = loadUnsynced(results);
+    getMetrics().query().recordSince(start);
+    commit(event, "queryAll", sortedKeys.isEmpty() ? ""
+        : sortedKeys.getFirst() + ".." + sortedKeys.getLast(), results.size());
+    return results;
+  }
+
+  // Reads the payloads of the unsynced records in a batch into copies, as loaded(DataRecord) does,
+  // since the records are shared with the tree, which is no longer locked.
+  private TreeMap<String, List<DataRecord>> loadUnsynced(
+      TreeMap<String, List<DataRecord>> results) {
+    var unsynced = new ArrayList<PageRef>();
+    for (var dataRecords : results.values()) {
+      for (var dataRecord : dataRecords) {
+        if (isUnloaded(dataRecord)) {
+          unsynced.add(dataRecord.getPageRef());
+        }
+      }
+    }
+    if (unsynced.isEmpty()) {
+      return results;
+    }
+    var pages = diskAccessController.readAll(unsynced);
+    results.replaceAll((indexKey, dataRecords) -> dataRecords.stream()
+        .map(dataRecord -> isUnloaded(dataRecord)
+            ? DataRecord.deserialize(pages.get(dataRecord.getPageRef()), diskAccessController)
+            : dataRecord)
+        .toList());
+    return results;
+  }
+
+  private static boolean isUnloaded(DataRecord dataRecord) {
+    return dataRecord.isUnsynced() && !dataRecord.getPageRef().hasNoOffset();
+  }
+
+  /**
+   * Query the index by index key on a virtual thread.
+   *
+   * @param indexKey An index key.
+   * @return {@link CompletableFuture} which completes with the {@link DataRecord} instances found
+   * for the index key.
+   */
+  public CompletableFuture<List<DataRecord>> queryAsync(String indexKey) {
+    return CompletableFuture.supplyAsync(() -> query(indexKey), queryExecutor);
+  }
+
+  /**
+   * Query the index by multiple index keys on a virtual thread.
+   *
+   * @param indexKeys Index keys.
+   * @return {@link CompletableFuture} which completes with the {@link DataRecord} instances found
+   * for each index key.
+   * @see #queryAll(Collection)
+   */
+  public CompletableFuture<Map<String, List<DataRecord>>> queryAllAsync(
+      Collection<?> indexKeys) {
+    return CompletableFuture.supplyAsync(() -> queryAll(indexKeys), queryExecutor);
+  }
+
+  /**
+   * Scans the whole index in the key order.
+   *
+   * @return {@link ScanCursor} over the entries.
+   */
+  public ScanCursor scan() {
+    return new ScanCursor(this, null, null);
+  }
+
+  /**
+   * Scans the key range in the key order.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to scan up to the last key.
+   * @return {@link ScanCursor} over the entries in the range.
+   */
+  public ScanCursor scan(String from, String to) {
+    return new ScanCursor(this, from, to);
+  }
+
+  /**
+   * Scans the index keys starting with the prefix in the key order. The prefix is turned into the
+   * key range [prefix, upper bound), where the upper bound is the prefix with its last character
+   * incremented, so the scan descends to the first key of the prefix once and walks the leaves
+   * until the keys stop matching, without testing every key for the prefix.
+   *
+   * @param prefix Prefix of the index keys, e.g. "tenant-123/".
+   * @return {@link ScanCursor} over the entries, of which index keys start with the prefix.
+   */
+  public ScanCursor queryPrefix(String prefix) {
+    return scan(prefix, prefixUpperBound(prefix));
+  }
+
+  /**
+   * Returns the smallest key, which is bigger than all keys starting with the prefix, or null if
+   * there is no such key, i.e. the prefix is empty or consists of {@link Character#MAX_VALUE}s.
+   */
+  static String prefixUpperBound(String prefix) {
+    int end = prefix.length();
+    while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+      end--;
+    }
+    if (end == 0) {
+      return null;
+    }
+    return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+  }
+
+  /**
+   * Scans the key range on a virtual thread and passes the entries to the consumer.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to scan up to the last key.
+   * @param consumer Consumer of the entries.
+   * @return {@link CompletableFuture} which completes once the scan is done.
+   */
+  public CompletableFuture<Void> scanAsync(String from, String to, Consumer<KeyData> consumer) {
+    return CompletableFuture.runAsync(() -> scan(from, to).forEachRemaining(consumer),
+        queryExecutor);
+  }
+
+  /**
+   * Query the index by index key lazily. The records are fetched from the leaf entry in batches as
+   * the stream is consumed, and the payloads of the records, which are not yet loaded, are read
+   * from the disk one by one, and they are not retained by the index, so even the large posting
+   * lists are consumed in constant memory. Every fetch continues after the last record returned,
+   * so the stream observes the records appended meanwhile.
+   *
+   * @param indexKey An index key.
+   * @return {@link Stream} of the {@link DataRecord} instances of the index key.
+   */
+  public Stream<DataRecord> queryStream(String indexKey) {
+    var records = new RecordCursor(indexKey);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records,
+        Spliterator.ORDERED | Spliterator.NONNULL), false).map(this::loaded);
+  }
+
+  // Returns the records of the index key from the position on, up to the count. The records are
+  // copied, so the streams don't hold the lock between the fetches.
+  private List<DataRecord> recordsOf(String indexKey, int from, int count) {
+    drainBeforeRead();
+    lock.readLock().lock();
+    try {
+      if (root == null || bloomFilter != null && !bloomFilter.mightContain(indexKey)) {
+        return List.of();
+      }
+      var keyData = root.leafFor(indexKey).entryOf(indexKey);
+      if (keyData == null) {
+        return List.of();
+      }
+      if (keyData.postingList() != null) {
+        return keyData.postingList().records(from, count);
+      }
+      return from == 0 ? resolveLogged(List.of(keyData.dataRecord())) : List.of();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Streams the records in the key range in the key order. The leaves are fetched one by one as
+   * the stream is consumed, and the payloads are loaded lazily. The stream should be closed, if it
+   * isn't consumed completely, which stops the underlying {@link ScanCursor}.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to scan up to the last key.
+   * @return {@link Stream} of the {@link DataRecord} instances in the range.
+   */
+  public Stream<DataRecord> stream(String from, String to) {
+    var cursor = scan(from, to);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+            Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(cursor::close)
+        .flatMap(keyData -> keyData.dataRecords().stream())
+        .map(this::loaded);
+  }
+
+  /**
+   * Publishes the records in the key range in the key order. Every subscriber gets its own scan,
+   * which runs on a virtual thread and fetches the leaves only as far as the subscriber has
+   * requested the records. Cancelling the subscription stops the scan.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to scan up to the last key.
+   * @return {@link Flow.Publisher} of the {@link DataRecord} instances in the range.
+   */
+  public Flow.Publisher<DataRecord> publisher(String from, String to) {
+    return new RecordPublisher(() -> stream(from, to), queryExecutor);
+  }
+
+  // Reads the payload of an unsynced record into a copy, so the index doesn't retain it.
+  private DataRecord loaded(DataRecord dataRecord) {
+    if (isUnloaded(dataRecord)) {
+      return DataRecord.deserialize(diskAccessController.read(dataRecord.getPageRef()),
+          diskAccessController);
+    }
+    return dataRecord;
+  }
+
+  // The reads, which walk the leaves or count their keys, don't resolve the buffered messages, so
+  // the buffers are drained first.
+  private void drainBeforeRead() {
+    if (hasBufferedMessages) {
+      lock.writeLock().lock();
+      try {
+        drainMessageBuffers();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of the index keys in the index. The keys with multiple records are counted
+   * once.
+   */
+  public long size() {
+    drainBeforeRead();
+    lock.readLock().lock();
+    try {
+      return root != null ? root.getSubtreeSize() : 0;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the number of the index keys in the key range in O(log n), i.e. without walking the
+   * leaves of the range.
+   *
+   * @param from Lower bound of the range (inclusive), or null to count from the first key.
+   * @param to Upper bound of the range (exclusive), or null to count up to the last key.
+   * @return Number of the index keys in the range.
+   */
+  public long count(String from, String to) {
+    drainBeforeRead();
+    lock.readLock().lock();
+    try {
+      if (root == null) {
+        return 0;
+      }
+      long upper = to != null ? root.doRank(to) : root.getSubtreeSize();
+      long lower = from != null ? root.doRank(from) : 0;
+      return Math.max(0, upper - lower);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the position of the index key in the key order, i.e. the number of the index keys
+   * smaller than the index key. The index key itself doesn't need to exist.
+   *
+   * @param indexKey An index key.
+   * @return Number of the index keys smaller than the index key.
+   */
+  public long rank(String indexKey) {
+    drainBeforeRead();
+    lock.readLock().lock();
+    try {
+      return root != null ? root.doRank(indexKey) : 0;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the entry at the position in the key order in O(log n), e.g. the first entry of a
+   * result page, from which the page is scanned with {@link #scan(String, String)}.
+   *
+   * @param position Zero-based position in the key order.
+   * @return {@link KeyData} at the position.
+   * @throws IndexOutOfBoundsException if the position isn't smaller than {@link #size()}.
+   */
+  public KeyData select(long position) {
+    drainBeforeRead();
+    lock.readLock().lock();
+    try {
+      if (root == null || position < 0 || position >= root.getSubtreeSize()) {
+        throw new IndexOutOfBoundsException("Position: " + position);
+      }
+      return resolveLogged(root.doSelect(position));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Returns the entries of the first leaf, which has keys after the index key (or at it, if
+  // inclusive). The entries are copied, so the cursors don't hold the lock between the fetches.
+  List<KeyData> nextLeafEntries(String indexKey, boolean inclusive) {
+    drainBeforeRead();
+    lock.readLock().lock();
+    try {
+      if (root == null) {
+        return List.of();
+      }
+      var leaf = indexKey == null ? root.firstLeaf() : root.leafFor(indexKey);
+      for (; leaf != null; leaf = leaf.nextLeaf()) {
+        var entries = leaf.entriesAfter(indexKey, inclusive);
+        if (!entries.isEmpty()) {
+          return valueLog == null ? entries : entries.stream().map(this::resolveLogged).toList();
+        }
+      }
+      return List.of();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Persists the leaves, in which every leaf page refers to the next leaf in the key order through
+   * its sibling reference, so the leaves can be scanned on the disk with a {@link LeafScanner}.
+   * The leaves are persisted from right to left, since every leaf needs the page reference of its
+   * right sibling.
+   *
+   * @return {@link PageRef} of the left most leaf, or an empty reference if the index is empty.
+   */
+  public PageRef persistLeaves() {
+    lock.writeLock().lock();
+    try {
+      drainMessageBuffers();
+      var leaves = new ArrayList<DataNode>();
+      for (var leaf = root != null ? root.firstLeaf() : null; leaf != null;
+          leaf = leaf.nextLeaf()) {
+        leaves.add(leaf);
+      }
+      var nextLeaf = PageRef.empty();
+      for (var leaf : leaves.reversed()) {
+        leaf.setNextSlottedPageRef(nextLeaf);
+        nextLeaf = leaf.persist(inlinePayloadLimit);
+      }
+      return nextLeaf;
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
@@ -87,8 +1068,175 @@ public class BTreeIndex implements NodeObserver {
    * @return A list of {@link DataRecord}s.
    */
   public List<DataRecord> delete(String indexKey) {
-    return root.doQuery(indexKey, (keyData, dataNode) ->
-        keyData.stream().map(kd -> dataNode.delete(kd.indexKey().toString())).toList());
+    var event = new IndexOperationEvent();
+    event.begin();
+    long start = System.nanoTime();
+    List<DataRecord> dataRecords;
+    lock.writeLock().lock();
+    try {
+      if (messageBufferSize > 0 && root instanceof InnerNode) {
+        dataRecords = root.doQuery(indexKey, ALL_RECORDS);
+        if (!dataRecords.isEmpty()) {
+          submit(Message.delete(indexKey));
+        }
+      } else if (tombstonePurgeThreshold > 0) {
+        dataRecords = root.doQuery(indexKey, (keyData, dataNode) -> keyData.stream()
+            .flatMap(kd -> {
+              dataNode.markDeleted(kd.indexKey().toString());
+              return kd.dataRecords().stream();
+            }).toList());
+        if (!dataRecords.isEmpty()) {
+          tombstones.add(indexKey);
+          schedulePurgeIfDue();
+        }
+      } else {
+        dataRecords = root.doQuery(indexKey, (keyData, dataNode) -> keyData.stream()
+            .flatMap(kd -> {
+              dataNode.delete(kd.indexKey().toString(), minFillPercent);
+              return kd.dataRecords().stream();
+            }).toList());
+      }
+      discardLogged(dataRecords);
+      dataRecords = resolveLogged(dataRecords);
+      rightMostLeaf = null;
+      deletesSinceRebuild += dataRecords.size();
+      rebuildBloomFilterIfStale();
+      updateTreeHeight();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    scheduleCollectionIfDue();
+    getMetrics().delete().recordSince(start);
+    commit(event, "delete", indexKey, dataRecords.size());
+    return dataRecords;
+  }
+
+  /**
+   * Deletes the index keys in the key range. The sub-trees, which are entirely in the range, are
+   * dropped as a whole, so only the leaves on the bounds of the range are visited, and the inner
+   * nodes on the paths to the bounds are rebalanced once the keys are removed. The cost of the
+   * delete is, therefore, proportional to the height of the tree, and not to the number of the
+   * keys deleted.
+   *
+   * @param from Lower bound of the range (inclusive), or null to delete from the first key.
+   * @param to Upper bound of the range (exclusive), or null to delete up to the last key.
+   * @return Number of the index keys deleted.
+   */
+  public long deleteRange(String from, String to) {
+    if (from != null && to != null && from.compareTo(to) >= 0) {
+      return 0;
+    }
+    var event = new IndexOperationEvent();
+    event.begin();
+    long start = System.nanoTime();
+    long deleted;
+    lock.writeLock().lock();
+    try {
+      if (root == null) {
+        return 0;
+      }
+      drainMessageBuffers();
+      var removed = valueLog != null ? new ArrayList<DataRecord>() : null;
+      deleted = root.deleteRange(from, to, null, null, removed);
+      if (removed != null) {
+        discardLogged(removed);
+      }
+      if (root.getSize() == 0) {
+        root = new DataNode(diskAccessController);
+        root.registerObserver(this);
+        rootChanged = true;
+      } else {
+        repairPath(from);
+        repairPath(to);
+      }
+      tombstones.removeIf(indexKey -> (from == null || indexKey.compareTo(from) >= 0)
+          && (to == null || indexKey.compareTo(to) < 0));
+      rightMostLeaf = null;
+      deletesSinceRebuild += deleted;
+      rebuildBloomFilterIfStale();
+      updateTreeHeight();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    getMetrics().delete().recordSince(start);
+    commit(event, "deleteRange", from + ".." + to, (int) Math.min(deleted, Integer.MAX_VALUE));
+    return deleted;
+  }
+
+  // The range delete leaves the inner nodes on the path to its bound with a single child. They
+  // are rebalanced from the top, since a node can only be merged with, or borrow from its sibling,
+  // once its parent has more than one child. With a fill threshold, the leaf on the path is
+  // rebalanced afterwards.
+  private void repairPath(String indexKey) {
+    if (indexKey == null) {
+      return;
+    }
+    while (true) {
+      var node = root;
+      while (node instanceof InnerNode innerNode && !innerNode.isUnbalanced()) {
+        node = innerNode.childFor(indexKey);
+      }
+      if (!(node instanceof InnerNode unbalanced)) {
+        break;
+      }
+      unbalanced.fixUnderflow(minFillPercent);
+    }
+    var leaf = root.leafFor(indexKey);
+    if (minFillPercent > 0 && leaf.hasParent()
+        && leaf.getSize() < DataNode.minKeys(minFillPercent)) {
+      leaf.getParent().rebalanceLeaf(leaf, minFillPercent);
+    }
+  }
+
+  // The event is committed only if the operation took longer than the event's threshold.
+  private void commit(IndexOperationEvent event, String operation, Object indexKey, int records) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.indexKey = indexKey.toString();
+      event.records = records;
+      event.commit();
+    }
+  }
+
+  // The root is replaced during splits and merges before its children are attached, so the height
+  // is determined once the operation is completed.
+  private void updateTreeHeight() {
+    if (rootChanged) {
+      rootChanged = false;
+      int height = 1;
+      for (var node = root; node instanceof InnerNode innerNode; height++) {
+        node = innerNode.iterator().next().node();
+      }
+      getMetrics().treeHeight(height);
+    }
+  }
+
+  /**
+   * Stops the asynchronous queries, the publisher scans and the background purges and value log
+   * collections after the submitted ones are completed, and closes the index file. The value log
+   * is owned by the caller, and it isn't closed.
+   */
+  @Override
+  public void close() throws IOException {
+    queryExecutor.shutdown();
+    try {
+      queryExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    diskAccessController.close();
+  }
+
+  DiskController getDiskAccessController() {
+    return diskAccessController;
+  }
+
+  /**
+   * @return {@link IndexMetrics} of the index, which are registered under the index file name.
+   */
+  public IndexMetrics getMetrics() {
+    return diskAccessController.getMetrics();
   }
 
   /**
@@ -99,5 +1247,40 @@ public class BTreeIndex implements NodeObserver {
   @Override
   public void onNewRoot(Node newRoot) {
     root = newRoot;
+    rootChanged = true;
+    rightMostLeaf = null;
+  }
+
+  // Fetches the records of an index key in batches, each of which continues after the last record
+  // returned.
+  private final class RecordCursor implements Iterator<DataRecord> {
+
+    private final String indexKey;
+    private int position;
+    private Iterator<DataRecord> batch = Collections.emptyIterator();
+    private boolean exhausted;
+
+    private RecordCursor(String indexKey) {
+      this.indexKey = indexKey;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (!batch.hasNext() && !exhausted) {
+        var dataRecords = recordsOf(indexKey, position, STREAM_BATCH_SIZE);
+        exhausted = dataRecords.size() < STREAM_BATCH_SIZE;
+        position += dataRecords.size();
+        batch = dataRecords.iterator();
+      }
+      return batch.hasNext();
+    }
+
+    @Override
+    public DataRecord next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return batch.next();
+    }
   }
 }
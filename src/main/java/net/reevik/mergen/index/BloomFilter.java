@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import net.reevik.mergen.io.ByteCodec;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.Page;
+import net.reevik.mergen.io.Page.PageType;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.SerializableObject;
+
+/**
+ * <p>
+ * A blocked Bloom filter over the index keys. The bit array is divided into blocks of 512 bits,
+ * i.e. a cache line, and all bits of a key are set within a single block, so that a lookup touches
+ * one cache line at the cost of a slightly higher false positive rate than a classic Bloom filter.
+ * If {@link #mightContain(Object)} returns false, the key has definitely never been added.
+ * </p>
+ * <p>
+ * The filter is persisted in dedicated pages. The first cell keeps the dimensions of the filter,
+ * and the remaining cells are the chunks of the bit array prefixed with their position, so the
+ * pages can be read in any order:
+ * </p>
+ * <pre>
+ *   [blockCount:int][hashCount:int][insertions:long]
+ *   [first word:int][words:long...]
+ * </pre>
+ *
+ * @author Erhan Bagdemir
+ */
+public class BloomFilter extends SerializableObject {
+
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01d;
+  private static final int BLOCK_WORDS = 8;
+  private static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+  private static final int MAX_HASH_COUNT = 16;
+  private static final int CHUNK_WORDS = 512;
+
+  private final long[] words;
+  private final int blockCount;
+  private final int hashCount;
+  private long insertions;
+
+  private BloomFilter(int blockCount, int hashCount, PageRef pageRef,
+      DiskController diskAccessController) {
+    super(pageRef, diskAccessController);
+    this.blockCount = blockCount;
+    this.hashCount = hashCount;
+    this.words = new long[blockCount * BLOCK_WORDS];
+  }
+
+  /**
+   * Creates a filter dimensioned for the expected number of keys and the false positive rate.
+   *
+   * @param expectedKeys Expected number of the keys.
+   * @param falsePositiveRate False positive rate, e.g. 0.01.
+   * @param diskAccessController {@link DiskController} to persist the filter.
+   * @return An empty {@link BloomFilter}.
+   */
+  public static BloomFilter create(int expectedKeys, double falsePositiveRate,
+      DiskController diskAccessController) {
+    int keys = Math.max(1, expectedKeys);
+    double bits = -keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+    int blockCount = (int) Math.max(1, Math.ceil(bits / BLOCK_BITS));
+    int hashCount = (int) Math.round(bits / keys * Math.log(2));
+    hashCount = Math.clamp(hashCount, 1, MAX_HASH_COUNT);
+    return new BloomFilter(blockCount, hashCount, PageRef.empty(), diskAccessController);
+  }
+
+  public void add(Object indexKey) {
+    long hash = hash(indexKey);
+    int block = blockOf(hash) * BLOCK_WORDS;
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+      words[block + (bit >>> 6)] |= 1L << bit;
+    }
+    insertions++;
+  }
+
+  public boolean mightContain(Object indexKey) {
+    long hash = hash(indexKey);
+    int block = blockOf(hash) * BLOCK_WORDS;
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+      if ((words[block + (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The block is chosen by a second mix of the hash, so it is independent of the bits in the block.
+  private int blockOf(long hash) {
+    return (int) ((mix(hash) >>> 33) % blockCount);
+  }
+
+  // 64-bit FNV-1a over the key's bytes, followed by the MurmurHash3 finalizer.
+  private static long hash(Object indexKey) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : indexKey.toString().getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Returns the number of the keys added, including the keys added more than once.
+   */
+  public long getInsertions() {
+    return insertions;
+  }
+
+  /**
+   * Returns the number of the keys, for which the filter keeps the configured false positive
+   * rate.
+   */
+  public long getCapacity() {
+    return Math.round(blockCount * (double) BLOCK_BITS * Math.log(2) / hashCount);
+  }
+
+  @Override
+  public PageRef persist() {
+    var page = new Page(this);
+    var header = new byte[Integer.BYTES * 2 + Long.BYTES];
+    ByteCodec.putInt(header, 0, blockCount);
+    ByteCodec.putInt(header, Integer.BYTES, hashCount);
+    ByteCodec.putLong(header, Integer.BYTES * 2, insertions);
+    page.appendCell(ByteBuffer.wrap(header));
+    for (int from = 0; from < words.length; from += CHUNK_WORDS) {
+      int count = Math.min(CHUNK_WORDS, words.length - from);
+      var chunk = new byte[Integer.BYTES + count * Long.BYTES];
+      ByteCodec.putInt(chunk, 0, from);
+      for (int i = 0; i < count; i++) {
+        ByteCodec.putLong(chunk, Integer.BYTES + i * Long.BYTES, words[from + i]);
+      }
+      if (!page.hasSpace(chunk.length)) {
+        var pageRef = getDiskAccessController().append(page);
+        page = new Page(this);
+        page.setNextSlottedPage(pageRef);
+      }
+      page.appendCell(ByteBuffer.wrap(chunk));
+    }
+    var pageRef = getDiskAccessController().append(page);
+    markSynced();
+    return pageRef;
+  }
+
+  /**
+   * Reads the filter persisted with {@link #persist()}.
+   *
+   * @param pageRef Page reference returned by {@link #persist()}.
+   * @param controller {@link DiskController} to read the pages.
+   * @return {@link BloomFilter} read.
+   */
+  public static BloomFilter read(PageRef pageRef, DiskController controller) {
+    // The pages are chained backwards, so the header is the first cell of the last page visited.
+    var cells = new ArrayList<ByteBuffer>();
+    int headerIndex = -1;
+    for (var nextPage = pageRef; !nextPage.hasNoOffset(); ) {
+      var page = controller.read(nextPage);
+      if (page.getPageType() != PageType.BLOOM_FILTER) {
+        throw new IllegalStateException(
+            "Page at " + nextPage.pageOffset() + " isn't a Bloom filter page.");
+      }
+      headerIndex = cells.size();
+      page.forEach(cells::add);
+      nextPage = page.getNextSlottedPage();
+    }
+    if (headerIndex < 0 || headerIndex == cells.size()) {
+      throw new IllegalStateException("Bloom filter header is missing.");
+    }
+    var header = cells.remove(headerIndex).array();
+    var bloomFilter = new BloomFilter(ByteCodec.getInt(header, 0),
+        ByteCodec.getInt(header, Integer.BYTES), pageRef, controller);
+    bloomFilter.insertions = ByteCodec.getLong(header, Integer.BYTES * 2);
+    for (var chunk : cells) {
+      bloomFilter.readChunk(chunk.array(), chunk.capacity());
+    }
+    bloomFilter.markSynced();
+    return bloomFilter;
+  }
+
+  private void readChunk(byte[] chunk, int length) {
+    int from = ByteCodec.getInt(chunk, 0);
+    int count = (length - Integer.BYTES) / Long.BYTES;
+    for (int i = 0; i < count; i++) {
+      words[from + i] = ByteCodec.getLong(chunk, Integer.BYTES + i * Long.BYTES);
+    }
+  }
+
+  @Override
+  public PageType getPageType() {
+    return PageType.BLOOM_FILTER;
+  }
+}
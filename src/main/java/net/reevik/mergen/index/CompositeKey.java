@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.reevik.mergen.io.ByteCodec;
+
+/**
+ * <p>
+ * An index key of multiple components, e.g. (tenant, timestamp, id), which is encoded so that the
+ * order of the encoded keys is the order of their components from left to right. Every component
+ * is prefixed with its type, and encoded as follows:
+ * </p>
+ * <pre>
+ *   String    [0x02][UTF-8 bytes, 0x00 escaped as 0x00 0xFF][0x00]
+ *   byte[]    [0x01][bytes, 0x00 escaped as 0x00 0xFF][0x00]
+ *   integral  [0x03][long, big-endian with the sign bit flipped]
+ *   double    [0x04][bits, big-endian, all flipped if negative, otherwise the sign bit flipped]
+ * </pre>
+ * <p>
+ * The index compares the keys by their {@link #toString()}, so the encoded bytes are rendered as a
+ * string of one character per byte, of which order is the unsigned order of the bytes. The
+ * characters are below 0x100, and the leaf cells keep them in UTF-8, which preserves their order,
+ * so the keys compare the same in the cells. The keys with the same leading components are
+ * adjacent, and they are in the range from the key of the leading components to its
+ * {@link #prefixUpperBound()}. A plain prefix query isn't sufficient, since the key ("a") is also a
+ * prefix of the key ("a\0"):
+ * </p>
+ * <pre>
+ *   var tenant = CompositeKey.of("tenant-1");
+ *   index.scan(tenant.toString(), tenant.prefixUpperBound());
+ *   index.scan(CompositeKey.of("tenant-1", from).toString(),
+ *       CompositeKey.of("tenant-1", to).toString());
+ * </pre>
+ *
+ * @author Erhan Bagdemir
+ */
+public final class CompositeKey implements Comparable<CompositeKey> {
+
+  private static final int BYTES = 0x01;
+  private static final int STRING = 0x02;
+  private static final int INTEGRAL = 0x03;
+  private static final int DOUBLE = 0x04;
+  private static final int TERMINATOR = 0x00;
+  private static final int ESCAPE = 0xFF;
+
+  private final String encoded;
+
+  private CompositeKey(String encoded) {
+    this.encoded = encoded;
+  }
+
+  /**
+   * Creates the key of the components.
+   *
+   * @param components Components of the key, either {@link String}, byte[], {@link Long},
+   * {@link Integer}, {@link Short}, {@link Byte}, {@link Double} or {@link Float}.
+   * @return {@link CompositeKey} of the components.
+   */
+  public static CompositeKey of(Object... components) {
+    var out = new ByteArrayOutputStream();
+    for (var component : components) {
+      switch (component) {
+        case String string -> writeTerminated(out, STRING,
+            string.getBytes(StandardCharsets.UTF_8));
+        case byte[] bytes -> writeTerminated(out, BYTES, bytes);
+        case Long value -> writeLong(out, INTEGRAL, value ^ Long.MIN_VALUE);
+        case Integer value -> writeLong(out, INTEGRAL, value ^ Long.MIN_VALUE);
+        case Short value -> writeLong(out, INTEGRAL, value ^ Long.MIN_VALUE);
+        case Byte value -> writeLong(out, INTEGRAL, value ^ Long.MIN_VALUE);
+        case Double value -> writeLong(out, DOUBLE, sortableBits(value));
+        case Float value -> writeLong(out, DOUBLE, sortableBits(value));
+        case null -> throw new IllegalArgumentException("Components must not be null.");
+        default -> throw new IllegalArgumentException(
+            "Unsupported component type: " + component.getClass().getName());
+      }
+    }
+    return new CompositeKey(new String(out.toByteArray(), StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Decodes the index key, e.g. the one read from a leaf, which is the string representation of a
+   * composite key.
+   *
+   * @param indexKey Index key created with {@link #of(Object...)}.
+   * @return {@link CompositeKey} of the index key.
+   */
+  public static CompositeKey decode(Object indexKey) {
+    if (indexKey instanceof CompositeKey compositeKey) {
+      return compositeKey;
+    }
+    var compositeKey = new CompositeKey(indexKey.toString());
+    // Decoding the components validates the encoding.
+    compositeKey.components();
+    return compositeKey;
+  }
+
+  /**
+   * Returns the components of the key. The integral components are returned as {@link Long}, and
+   * the floating-point ones as {@link Double}.
+   */
+  public List<Object> components() {
+    var bytes = encoded.getBytes(StandardCharsets.ISO_8859_1);
+    var components = new ArrayList<>();
+    for (int offset = 0; offset < bytes.length; ) {
+      int type = bytes[offset++] & 0xFF;
+      switch (type) {
+        case STRING, BYTES -> {
+          var out = new ByteArrayOutputStream();
+          offset = readTerminated(bytes, offset, out);
+          components.add(type == STRING ? out.toString(StandardCharsets.UTF_8) : out.toByteArray());
+        }
+        case INTEGRAL, DOUBLE -> {
+          if (offset + Long.BYTES > bytes.length) {
+            throw new IllegalArgumentException("Truncated composite key: " + encoded);
+          }
+          long value = ByteCodec.getLong(bytes, offset);
+          offset += Long.BYTES;
+          if (type == INTEGRAL) {
+            components.add(value ^ Long.MIN_VALUE);
+          } else {
+            components.add(fromSortableBits(value));
+          }
+        }
+        default -> throw new IllegalArgumentException(
+            "Unknown component type " + type + " in composite key: " + encoded);
+      }
+    }
+    return components;
+  }
+
+  /**
+   * Returns the smallest index key, which is bigger than all keys, of which leading components are
+   * the components of this key. In such keys, the components are followed by a type, which is
+   * smaller than 0xFF, whereas the keys, of which last component only starts with a terminated
+   * component of this key, continue with the escape 0xFF, and are not below the bound.
+   */
+  public String prefixUpperBound() {
+    return encoded + (char) ESCAPE;
+  }
+
+  private static void writeTerminated(ByteArrayOutputStream out, int type, byte[] bytes) {
+    out.write(type);
+    for (byte b : bytes) {
+      out.write(b);
+      if (b == TERMINATOR) {
+        out.write(ESCAPE);
+      }
+    }
+    out.write(TERMINATOR);
+  }
+
+  private static int readTerminated(byte[] bytes, int offset, ByteArrayOutputStream out) {
+    while (offset < bytes.length) {
+      byte b = bytes[offset++];
+      if (b != TERMINATOR) {
+        out.write(b);
+      } else if (offset < bytes.length && (bytes[offset] & 0xFF) == ESCAPE) {
+        out.write(TERMINATOR);
+        offset++;
+      } else {
+        return offset;
+      }
+    }
+    throw new IllegalArgumentException("Unterminated component in composite key.");
+  }
+
+  private static void writeLong(ByteArrayOutputStream out, int type, long value) {
+    var bytes = new byte[Long.BYTES + 1];
+    bytes[0] = (byte) type;
+    ByteCodec.putLong(bytes, 1, value);
+    out.writeBytes(bytes);
+  }
+
+  // The negative values are flipped entirely, so that the bigger magnitudes come first.
+  private static long sortableBits(double value) {
+    long bits = Double.doubleToLongBits(value);
+    return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+  }
+
+  private static double fromSortableBits(long bits) {
+    return Double.longBitsToDouble(bits < 0 ? bits ^ Long.MIN_VALUE : ~bits);
+  }
+
+  @Override
+  public int compareTo(CompositeKey other) {
+    return encoded.compareTo(other.encoded);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof CompositeKey compositeKey && encoded.equals(compositeKey.encoded);
+  }
+
+  @Override
+  public int hashCode() {
+    return encoded.hashCode();
+  }
+
+  /**
+   * Returns the encoded key, which is the index key stored in the index.
+   */
+  @Override
+  public String toString() {
+    return encoded;
+  }
+
+  /**
+   * Returns the components in a human readable form, e.g. for logging.
+   */
+  public String describe() {
+    return components().stream()
+        .map(component -> component instanceof byte[] bytes ? Arrays.toString(bytes)
+            : component.toString())
+        .toList().toString();
+  }
+}
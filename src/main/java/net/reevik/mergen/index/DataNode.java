@@ -18,19 +18,45 @@ package net.reevik.mergen.index;
 import static net.reevik.mergen.index.DataRecord.createNew;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.function.BiFunction;
 import net.reevik.mergen.io.DiskController;
 import net.reevik.mergen.io.Page;
 import net.reevik.mergen.io.Page.PageType;
 import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.ValuePointer;
+import net.reevik.mergen.jfr.NodeSplitEvent;
 
 public class DataNode extends Node implements Iterable<KeyData> {
 
-  private final TreeSet<KeyData> keyDataSet = new TreeSet<>();
+  /**
+   * The max. number of the keys in a leaf. The leaf splits, once it exceeds it.
+   */
+  static final int MAX_KEYS = BTreeIndex.ORDER - 2;
+
+  /**
+   * The share of the keys, which the left node takes over, if the right most leaf splits after a
+   * key has been appended at the right edge of the tree. The right node keeps the appended key, so
+   * the leaves of the monotonically increasing keys are left nearly full.
+   *
+   * @see #addAtRightEdge(DataEntity, boolean)
+   */
+  private static final double RIGHT_EDGE_SPLIT_RATIO = 0.9d;
+
+  /**
+   * The entries of the leaf. The entries of a leaf read from the disk are kept as their record
+   * offsets, until they are updated.
+   */
+  private final KeyDataArray entries = new KeyDataArray(getDiskAccessController());
+
+  /**
+   * The number of the tombstones in the leaf, which aren't counted as keys of the sub-tree.
+   */
+  private int tombstoneCount;
 
   public DataNode(PageRef pageRef, DiskController diskAccessController) {
     super(pageRef, diskAccessController);
@@ -46,19 +72,27 @@ public class DataNode extends Node implements Iterable<KeyData> {
 
   public static DataNode deserialize(Page page, DiskController controller) {
     DataNode dataNode = new DataNode(page.getPageRef(), controller);
-    page.forEach(nextCell -> dataNode.add(KeyData.deserialize(nextCell, controller)));
+    // The plain cells are read into the key arena directly, without creating their entries.
+    page.forEach(nextCell -> {
+      if (!dataNode.entries.addCell(nextCell)) {
+        dataNode.entries.add(KeyData.deserialize(nextCell, controller));
+      }
+    });
     return dataNode;
   }
 
   public Page serialize() {
     Page page = new Page(this);
-    for (var keyData : keyDataSet) {
+    for (var keyData : entries) {
+      if (keyData.tombstone()) {
+        continue;
+      }
       ByteBuffer serialize = keyData.serialize();
       if (!page.hasSpace(serialize.capacity())) {
         getDiskAccessController().append(page);
         page = new Page(this);
       }
-      page.appendCell(keyData.serialize());
+      page.appendCell(serialize);
     }
     return page;
   }
@@ -70,38 +104,256 @@ public class DataNode extends Node implements Iterable<KeyData> {
   }
 
   public DataNode add(KeyData keyData) {
-    keyDataSet.add(keyData);
+    return add(keyData, false);
+  }
+
+  private DataNode add(KeyData keyData, boolean rightEdge) {
+    if (!keyData.tombstone()) {
+      removeTombstone(keyData.indexKey().toString());
+    }
+    boolean added = entries.add(keyData);
+    if (added) {
+      if (keyData.tombstone()) {
+        tombstoneCount++;
+      } else {
+        propagateSubtreeSize(1);
+      }
+    }
     markDirty();
-    if (keyDataSet.size() >= BTreeIndex.ORDER - 1) {
-      split();
+    if (entries.size() > MAX_KEYS) {
+      split(rightEdge && added && entries.last().indexKey().equals(keyData.indexKey().toString()));
     }
     return this;
   }
 
+  /**
+   * Adds the entity to the right most leaf of the tree, to which the index appends the keys
+   * without descending the tree. If the key is the largest one, the leaf splits near its end
+   * rather than at the mid-point, since the left node won't receive any further keys.
+   *
+   * @param dataEntity Entity to be added.
+   * @param duplicateKeys Whether the record is appended to the posting list of an existing key.
+   */
+  void addAtRightEdge(DataEntity dataEntity, boolean duplicateKeys) {
+    var dataRecord = createNew(dataEntity, getDiskAccessController());
+    if (duplicateKeys) {
+      append(dataEntity.indexKey(), dataRecord, true);
+    } else {
+      add(new KeyData(dataEntity.indexKey(), dataRecord), true);
+    }
+  }
+
+  /**
+   * Adds the entity. If the index key already exists, the new data record is appended to the
+   * index key's posting list.
+   */
+  public DataNode append(DataEntity dataEntity) {
+    return append(dataEntity.indexKey(), createNew(dataEntity, getDiskAccessController()));
+  }
+
+  DataNode append(Object indexKey, DataRecord dataRecord) {
+    return append(indexKey, dataRecord, false);
+  }
+
+  private DataNode append(Object indexKey, DataRecord dataRecord, boolean rightEdge) {
+    removeTombstone(indexKey.toString());
+    int index = entries.indexOf(indexKey.toString());
+    if (index < 0) {
+      return add(new KeyData(indexKey, dataRecord), rightEdge);
+    }
+    var existing = entries.get(index);
+    var postingList = existing.postingList();
+    if (postingList == null) {
+      postingList = new PostingList(getDiskAccessController());
+      postingList.add(existing.dataRecord());
+      entries.set(index, new KeyData(existing.indexKey(), existing.dataRecord(), postingList));
+    }
+    postingList.add(dataRecord);
+    markDirty();
+    return this;
+  }
+
   public DataNode add(Object indexKey, DataRecord dataRecord) {
     return add(new KeyData(indexKey, dataRecord));
   }
 
   DataRecord delete(String indexKey) {
+    return delete(indexKey, 0);
+  }
+
+  /**
+   * Deletes the index key. An empty leaf is removed from the tree, and a leaf, which falls below
+   * the fill threshold, borrows a key from or is merged with a sibling.
+   *
+   * @param indexKey Index key to be deleted.
+   * @param minFillPercent Fill threshold of the nodes in percent of their capacity.
+   * @return Deleted data record, or null if the index key doesn't exist.
+   */
+  DataRecord delete(String indexKey, int minFillPercent) {
     KeyData deletedKeyData = null;
-    for (var keyData : keyDataSet) {
-      if (keyData.indexKey().equals(indexKey)) {
-        keyDataSet.remove(keyData);
+    int index = entries.indexOf(indexKey);
+    if (index >= 0) {
+      var keyData = entries.removeAt(index);
+      if (keyData.tombstone()) {
+        tombstoneCount--;
+      } else {
         deletedKeyData = keyData;
-        break;
+        propagateSubtreeSize(-1);
       }
     }
-    if (keyDataSet.isEmpty() && hasParent()) {
-      getParent().deleteNodeAndBalanceBy(indexKey);
-    }
+    rebalanceIfUnderfull(indexKey, minFillPercent);
     return deletedKeyData != null ? deletedKeyData.dataRecord() : null;
   }
 
-  private void split() {
-    var leftNode = newLeftNode();
-    removeItems(leftNode);
+  @Override
+  long deleteRange(String from, String to, String lo, String hi, List<DataRecord> removed) {
+    int start = from != null ? entries.ceilingIndex(from, true) : 0;
+    int end = Math.max(start, to != null ? entries.ceilingIndex(to, true) : entries.size());
+    int tombstones = entries.tombstonesIn(start, end);
+    if (removed != null) {
+      entries.entries(start, end).forEach(keyData -> removed.addAll(keyData.dataRecords()));
+    }
+    if (end > start) {
+      entries.removeRange(start, end);
+      tombstoneCount -= tombstones;
+      markDirty();
+    }
+    return end - start - tombstones;
+  }
+
+  // Removes the empty leaf from the tree, or rebalances it with a sibling, if it has fallen below
+  // the fill threshold. The index key is one of the leaf's range, by which the parent finds it.
+  private void rebalanceIfUnderfull(String indexKey, int minFillPercent) {
+    if (entries.isEmpty() && hasParent()) {
+      getParent().deleteNodeAndBalanceBy(indexKey, minFillPercent);
+    } else if (hasParent() && entries.size() < minKeys(minFillPercent)) {
+      getParent().rebalanceLeaf(this, minFillPercent);
+    }
+  }
+
+  /**
+   * Returns the entry of the index key, or null if the index key doesn't exist.
+   */
+  KeyData entryOf(String indexKey) {
+    var keyData = entries.get(indexKey);
+    return keyData == null || keyData.tombstone() ? null : keyData;
+  }
+
+  /**
+   * Replaces the entry of the index key with a tombstone, i.e. the entry is deleted for the
+   * queries, but it keeps its place in the leaf, and the tree isn't restructured until the
+   * tombstones are purged.
+   *
+   * @param indexKey Index key to be deleted.
+   * @return Deleted entry, or null if the index key doesn't exist.
+   */
+  KeyData markDeleted(String indexKey) {
+    int index = entries.indexOf(indexKey);
+    if (index < 0 || entries.isTombstone(index)) {
+      return null;
+    }
+    var keyData = entries.get(index);
+    entries.set(index, keyData.asTombstone());
+    tombstoneCount++;
+    propagateSubtreeSize(-1);
+    markDirty();
+    return keyData;
+  }
+
+  /**
+   * Moves the payload of the index key to another location in the value log, if the entry still
+   * refers to the payload at the old location, i.e. the index key hasn't been overwritten or
+   * deleted in the meantime.
+   *
+   * @param indexKey Index key of the payload.
+   * @param valuePointer Old location of the payload.
+   * @param dataRecord Data record of the payload at the new location.
+   * @return true if the payload is moved.
+   */
+  boolean relocate(String indexKey, ValuePointer valuePointer, DataRecord dataRecord) {
+    int index = entries.indexOf(indexKey);
+    if (index < 0 || entries.isTombstone(index)
+        || !valuePointer.equals(entries.get(index).dataRecord().getValuePointer())) {
+      return false;
+    }
+    entries.set(index, new KeyData(indexKey, dataRecord));
+    markDirty();
+    return true;
+  }
+
+  /**
+   * Removes all tombstones of the leaf at once, and rebalances the leaf afterwards.
+   *
+   * @param minFillPercent Fill threshold of the nodes in percent of their capacity.
+   * @return Number of the tombstones removed.
+   */
+  int purgeTombstones(int minFillPercent) {
+    if (tombstoneCount == 0) {
+      return 0;
+    }
+    var indexKey = entries.stream().filter(KeyData::tombstone).findFirst().orElseThrow()
+        .indexKey().toString();
+    int purged = tombstoneCount;
+    entries.removeIf(KeyData::tombstone);
+    tombstoneCount = 0;
+    markDirty();
+    rebalanceIfUnderfull(indexKey, minFillPercent);
+    return purged;
+  }
+
+  // An upsert of a deleted index key replaces its tombstone.
+  private void removeTombstone(String indexKey) {
+    if (tombstoneCount == 0) {
+      return;
+    }
+    int index = entries.indexOf(indexKey);
+    if (index >= 0 && entries.isTombstone(index)) {
+      entries.removeRange(index, index + 1);
+      tombstoneCount--;
+    }
+  }
+
+  /**
+   * Returns the min. number of the keys in a leaf for the fill threshold.
+   */
+  static int minKeys(int minFillPercent) {
+    return (int) Math.ceil(minFillPercent * MAX_KEYS / 100.0d);
+  }
+
+  // Moves the keys into the sibling, which takes over the range of the leaf.
+  void moveKeysTo(DataNode sibling) {
+    sibling.entries.addAll(entries);
+    sibling.tombstoneCount += tombstoneCount;
+    entries.clear();
+    tombstoneCount = 0;
+    sibling.markDirty();
+    markDirty();
+  }
+
+  // Moves the first or the last key of the sibling into the leaf, and returns the moved key.
+  KeyData borrowFrom(DataNode sibling, boolean first) {
+    var keyData = sibling.entries.removeAt(first ? 0 : sibling.entries.size() - 1);
+    entries.add(keyData);
+    if (keyData.tombstone()) {
+      sibling.tombstoneCount--;
+      tombstoneCount++;
+    }
+    sibling.markDirty();
+    markDirty();
+    return keyData;
+  }
+
+  private void split(boolean rightEdge) {
+    metrics().dataNodeSplit();
+    var event = new NodeSplitEvent();
+    event.begin();
+    // The new root counts the keys of the whole leaf, before they are split.
     createRootIfNotExists();
-    getParent().add(newLeftNodeKey(leftNode));
+    var leftNode = newLeftNode(rightEdge ? rightEdgeSplitPoint() : getMidPoint());
+    removeItems(leftNode);
+    var leftNodeKey = newLeftNodeKey(leftNode);
+    getParent().add(leftNodeKey);
+    commitSplitEvent(event, leftNodeKey.indexKey());
   }
 
   private void createRootIfNotExists() {
@@ -109,24 +361,21 @@ public class DataNode extends Node implements Iterable<KeyData> {
       var root = newRoot();
       setParent(root);
       root.add(toRightMostKey());
+      root.recountSubtreeSize();
     }
   }
 
   private void removeItems(DataNode leftNode) {
-    keyDataSet.removeAll(leftNode.keyDataSet);
+    entries.removeRange(0, leftNode.entries.size());
+    tombstoneCount -= leftNode.tombstoneCount;
   }
 
-  // Splitting the existing node into two parts at the mid-point.
-  private DataNode newLeftNode() {
-    var midPoint = getMidPoint();
+  // Splitting the existing node into two parts at the split point, i.e. the left node takes over
+  // the keys before the split point.
+  private DataNode newLeftNode(int splitPoint) {
     var leftNode = new DataNode(getDiskAccessController());
-    var c = 0;
-    for (var dataRecord : keyDataSet) {
-      if (++c < midPoint) {
-        leftNode.add(dataRecord);
-      } else {
-        break;
-      }
+    for (int i = 0; i < splitPoint - 1; i++) {
+      leftNode.add(entries.get(i));
     }
     return leftNode;
   }
@@ -138,7 +387,7 @@ public class DataNode extends Node implements Iterable<KeyData> {
   private Key newLeftNodeKey(DataNode leftNode) {
     leftNode.setParent(getParent());
     leftNode.registerObservers(getNodeObservers());
-    return new Key(keyDataSet.getFirst().indexKey(), leftNode);
+    return new Key(entries.first().indexKey(), leftNode);
   }
 
   private InnerNode newRoot() {
@@ -149,12 +398,17 @@ public class DataNode extends Node implements Iterable<KeyData> {
   }
 
   private int getMidPoint() {
-    return (int) Math.ceil(keyDataSet.size() / 2.0d);
+    return (int) Math.ceil(entries.size() / 2.0d);
+  }
+
+  private int rightEdgeSplitPoint() {
+    int leftKeys = (int) (entries.size() * RIGHT_EDGE_SPLIT_RATIO);
+    return Math.clamp(leftKeys, 1, entries.size() - 1) + 1;
   }
 
   @Override
   Object getFirstIndexKey() {
-    return keyDataSet.first().indexKey();
+    return entries.first().indexKey();
   }
 
   @Override
@@ -162,17 +416,85 @@ public class DataNode extends Node implements Iterable<KeyData> {
     add(dataEntity);
   }
 
+  @Override
+  void doAppend(DataEntity dataEntity) {
+    append(dataEntity);
+  }
+
   @Override
   List<DataRecord> doQuery(String query,
       BiFunction<List<KeyData>, DataNode, List<DataRecord>> operation) {
-    List<KeyData> results = keyDataSet.stream().filter(keyData -> keyData.indexKey().equals(query))
-        .toList();
+    var keyData = entryOf(query);
+    var results = keyData != null ? List.of(keyData) : List.<KeyData>of();
     return operation.apply(results, this);
   }
 
+  @Override
+  void doQueryAll(List<String> indexKeys, int from, int to,
+      Map<String, List<DataRecord>> results) {
+    for (int i = from; i < to; i++) {
+      var indexKey = indexKeys.get(i);
+      var keyData = entries.get(indexKey);
+      results.put(indexKey, keyData != null ? keyData.dataRecords() : List.of());
+    }
+  }
+
+  @Override
+  DataNode firstLeaf() {
+    return this;
+  }
+
+  @Override
+  DataNode lastLeaf() {
+    return this;
+  }
+
+  @Override
+  DataNode leafFor(String indexKey) {
+    return this;
+  }
+
+  /**
+   * Returns the next leaf in the key order, or null if this is the right most leaf.
+   */
+  DataNode nextLeaf() {
+    return hasParent() ? getParent().leafAfter(this) : null;
+  }
+
+  /**
+   * Returns a copy of the entries after the index key (or at it, if inclusive) without the
+   * tombstones, or all entries if the index key is null.
+   */
+  List<KeyData> entriesAfter(String indexKey, boolean inclusive) {
+    int from = indexKey == null ? 0 : entries.ceilingIndex(indexKey, inclusive);
+    return entries.entries(from, entries.size());
+  }
+
   @Override
   int doGetSize() {
-    return keyDataSet.size();
+    return entries.size();
+  }
+
+  @Override
+  long getSubtreeSize() {
+    return entries.size() - tombstoneCount;
+  }
+
+  @Override
+  long doRank(String indexKey) {
+    int head = entries.ceilingIndex(indexKey, true);
+    return tombstoneCount == 0 ? head : head - entries.tombstonesIn(0, head);
+  }
+
+  @Override
+  KeyData doSelect(long position) {
+    long remaining = position;
+    for (int i = 0; i < entries.size(); i++) {
+      if (!entries.isTombstone(i) && remaining-- == 0) {
+        return entries.get(i);
+      }
+    }
+    throw new IndexOutOfBoundsException("Position is out of the leaf's range.");
   }
 
   @Override
@@ -182,11 +504,25 @@ public class DataNode extends Node implements Iterable<KeyData> {
 
   @Override
   public PageRef persist() {
+    return persist(0);
+  }
+
+  /**
+   * Persists the leaf, in which the payloads up to the inline limit are stored in the leaf cells.
+   *
+   * @param inlinePayloadLimit The maximum size of the payloads, which are stored inline. The
+   * payloads aren't stored inline if it is not positive.
+   * @return the page reference of the leaf.
+   */
+  public PageRef persist(int inlinePayloadLimit) {
     // TODO Precondition checks for the cells bigger than page size.
     // Alternatively we can split the cell into multiple pages.
     Page page = new Page(this);
-    for (var keyData : keyDataSet) {
-      ByteBuffer serialize = keyData.serialize();
+    for (var keyData : entries) {
+      if (keyData.tombstone()) {
+        continue;
+      }
+      ByteBuffer serialize = keyData.serialize(inlinePayloadLimit);
       if (!page.hasSpace(serialize.capacity())) {
         PageRef pageRef = getDiskAccessController().append(page);
         page = new Page(this);
@@ -194,7 +530,12 @@ public class DataNode extends Node implements Iterable<KeyData> {
         // will be the node's page offset.
         page.setNextSlottedPage(pageRef);
       }
-      page.appendCell(keyData.serialize());
+      page.appendCell(serialize);
+      // The payload, which is written inline, has no other copy, so it stays inline, even if the
+      // limit is lowered later.
+      if (KeyData.isInlinePayload(serialize)) {
+        keyData.dataRecord().markSynced();
+      }
     }
     PageRef pageRef = getDiskAccessController().append(page);
     markSynced();
@@ -208,14 +549,14 @@ public class DataNode extends Node implements Iterable<KeyData> {
 
   @Override
   public Iterator<KeyData> iterator() {
-    return keyDataSet.iterator();
+    return entries.iterator();
   }
 
   public Set<KeyData> getKeyDataSet() {
-    return keyDataSet;
+    return Collections.unmodifiableSet(entries);
   }
 
   public boolean contains(KeyData keyData) {
-    return keyDataSet.contains(keyData);
+    return entries.contains(keyData);
   }
 }
@@ -22,11 +22,17 @@ import net.reevik.mergen.io.Page;
 import net.reevik.mergen.io.Page.PageType;
 import net.reevik.mergen.io.PageRef;
 import net.reevik.mergen.io.SerializableObject;
+import net.reevik.mergen.io.ValuePointer;
 
 public class DataRecord extends SerializableObject {
   private byte[] payload = new byte[0];
   private int size;
 
+  /**
+   * The location of the payload in the value log, if the payload is stored apart from the index.
+   */
+  private ValuePointer valuePointer;
+
   public DataRecord(byte[] payload, PageRef pageRef, DiskController diskAccessController) {
     super(pageRef, diskAccessController);
     this.payload = payload;
@@ -48,6 +54,10 @@ public class DataRecord extends SerializableObject {
     return payload;
   }
 
+  public ValuePointer getValuePointer() {
+    return valuePointer;
+  }
+
   @Override
   public PageRef persist() {
     markSynced();
@@ -88,6 +98,16 @@ public class DataRecord extends SerializableObject {
     return dataRecord;
   }
 
+  /**
+   * Creates the record of a payload, which is stored in the value log. The payload isn't loaded,
+   * until it is read from the log.
+   */
+  public static DataRecord createLogged(ValuePointer valuePointer, DiskController controller) {
+    var dataRecord = new DataRecord(PageRef.empty(), controller);
+    dataRecord.valuePointer = valuePointer;
+    return dataRecord;
+  }
+
   public static DataRecord deserialize(Page page, DiskController controller) {
     Iterator<ByteBuffer> iterator = page.iterator();
     if (iterator.hasNext()) {
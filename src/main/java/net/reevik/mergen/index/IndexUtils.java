@@ -15,47 +15,38 @@
  */
 package net.reevik.mergen.index;
 
-import java.nio.ByteBuffer;
+import net.reevik.mergen.io.ByteCodec;
 
 public class IndexUtils {
 
   public static long bytesToLong(byte[] bytes) {
-    ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-    buffer.put(bytes);
-    buffer.flip();
-    return buffer.getLong();
+    return ByteCodec.getLong(bytes, 0);
   }
 
   public static short bytesToShort(byte[] bytes) {
-    ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES);
-    buffer.put(bytes);
-    buffer.flip();
-    return buffer.getShort();
+    return ByteCodec.getShort(bytes, 0);
   }
 
   public static int bytesToInt(byte[] bytes) {
-    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
-    buffer.put(bytes);
-    buffer.flip();
-    return buffer.getInt();
+    return ByteCodec.getInt(bytes, 0);
   }
 
   public static byte[] getBytesOf(long total) {
-    var buffer = ByteBuffer.allocate(Long.BYTES);
-    buffer.putLong(total);
-    return buffer.array();
+    var bytes = new byte[Long.BYTES];
+    ByteCodec.putLong(bytes, 0, total);
+    return bytes;
   }
 
   public static byte[] getBytesOf(short value) {
-    var buffer = ByteBuffer.allocate(Short.BYTES);
-    buffer.putShort(value);
-    return buffer.array();
+    var bytes = new byte[Short.BYTES];
+    ByteCodec.putShort(bytes, 0, value);
+    return bytes;
   }
 
   public static byte[] getBytesOf(int value) {
-    var buffer = ByteBuffer.allocate(Integer.BYTES);
-    buffer.putInt(value);
-    return buffer.array();
+    var bytes = new byte[Integer.BYTES];
+    ByteCodec.putInt(bytes, 0, value);
+    return bytes;
   }
 
   public static int append(byte[] buffer, byte[] source, int start) {
@@ -16,17 +16,21 @@
 package net.reevik.mergen.index;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import net.reevik.mergen.index.MessageBuffer.Message;
 import net.reevik.mergen.io.DiskController;
 import net.reevik.mergen.io.Page;
 import net.reevik.mergen.io.Page.PageType;
 import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.jfr.NodeRebalanceEvent;
+import net.reevik.mergen.jfr.NodeSplitEvent;
 
 /**
  * <p>
@@ -42,17 +46,34 @@ import net.reevik.mergen.io.PageRef;
  * product of the split, become the direct children of the new root node.
  * </p>
  * <p>
- * Every inner node keeps track of its direct children in a {@link Set} of {@link Key}, which are
- * references to the children for an index range key. The set is sorted by the index range key, and
- * each reference is a link to a child, of which index range keys are smaller than reference's.
- * Children of an inner node is either another inner node or a {@link DataNode}.
+ * Every inner node keeps track of its direct children in two contiguous arrays, a sorted array of
+ * separators, i.e. the index range keys, and an array of child references. The child at the
+ * position i is the link to the child, of which index range keys are smaller than the separator at
+ * i and equal or bigger than the separator at i - 1. Children of an inner node is either another
+ * inner node or a {@link DataNode}:
  * </p>
+ * <pre>
+ *   separators     [100, 200]
+ *   children     [A,   B,   C]
+ * </pre>
  * <p>
- * The right most reference points to the child node, of which index range key is equals and bigger
- * than the previous sibling. It means, the number of children of an inner node is one greater than
- * the index range key. All index range keys are maintaining references to children, of which index
- * range keys are smaller than their parents, but the last children that is referenced by the right
- * most reference, is greater than all other siblings.
+ * The last child is the right most reference, which points to the child node, of which index range
+ * key is equals and bigger than the last separator. It means, the number of children of an inner
+ * node is one greater than the number of separators. The child for an index key is found by a
+ * binary search over the separators, so the routing doesn't allocate and costs O(log n) string
+ * comparisons.
+ * </p>
+ * <p>
+ * If the message buffers are enabled, the inner nodes hold the pending upserts and deletes of
+ * their sub-trees in a {@link MessageBuffer}, which is flushed down in batches. The queries apply
+ * the buffered messages of the nodes on the way down to the records found in the leaf.
+ * </p>
+ * <p>
+ * Every inner node keeps the number of the index keys in its sub-tree, which is persisted in the
+ * cells of its parent, so the position of a key in the key order is found in a single descent by
+ * summing up the sizes of the children left to the path. The leaves propagate the added and
+ * removed keys to their ascendants, and the nodes, of which children change in a split or a merge,
+ * recount their size from their direct children.
  * </p>
  *
  * @author Erhan Bagdemir
@@ -61,15 +82,32 @@ import net.reevik.mergen.io.PageRef;
 public class InnerNode extends Node implements Iterable<Key> {
 
   /**
-   * A sorted set of references to the children.
+   * The max. number of the children of an inner node. The node splits, once it exceeds it, and two
+   * nodes are merged, only if their children fit into it. The fill threshold is relative to it.
+   */
+  static final int MAX_CHILDREN = BTreeIndex.ORDER - 1;
+
+  /**
+   * The separators of a node, which exceeds the capacity by a child, until it splits.
+   */
+  private static final int INITIAL_CAPACITY = MAX_CHILDREN;
+
+  /**
+   * A sorted array of the index range keys.
    */
-  private final TreeSet<Key> keySet = new TreeSet<>();
+  private String[] separators = new String[INITIAL_CAPACITY];
 
   /**
-   * The right most key, which is a reference to a child, of which index range keys are greater than
-   * its sibling.
+   * References to the children. The child at the position {@link #separatorCount} is the right
+   * most one.
    */
-  private Key rightMost;
+  private Node[] children = new Node[INITIAL_CAPACITY + 1];
+
+  private int separatorCount;
+
+  private MessageBuffer messageBuffer = new MessageBuffer();
+
+  private long subtreeSize;
 
   public InnerNode(PageRef pageRef, DiskController diskAccessController) {
     super(pageRef, diskAccessController);
@@ -81,52 +119,354 @@ public class InnerNode extends Node implements Iterable<Key> {
 
   public static InnerNode deserialize(Page page, DiskController controller) {
     InnerNode dataNode = new InnerNode(page.getPageRef(), controller);
-    page.forEach(nextCell -> dataNode.add(Key.deserialize(nextCell, controller)));
+    page.forEach(nextCell -> {
+      var key = Key.deserialize(nextCell, controller);
+      dataNode.add(key);
+      dataNode.subtreeSize += key.subtreeSize();
+    });
     return dataNode;
   }
 
   @Override
   public void doUpsert(DataEntity dataEntity) {
-    String indexKeyAsStr = dataEntity.indexKey().toString();
-    for (var key : keySet) {
-      if (indexKeyAsStr.compareTo(key.indexKey().toString()) <= 0) {
-        key.node().doUpsert(dataEntity);
-        return;
+    childFor(dataEntity.indexKey().toString()).doUpsert(dataEntity);
+  }
+
+  @Override
+  void doAppend(DataEntity dataEntity) {
+    childFor(dataEntity.indexKey().toString()).doAppend(dataEntity);
+  }
+
+  /**
+   * Buffers the message, and flushes the buffer if it is full.
+   *
+   * @param message Message to be buffered.
+   * @param capacity Number of the messages, at which the buffers are flushed.
+   * @param leafWriter Applies the flushed messages to the leaves.
+   * @param dropped Receives the upserts, which are dropped in the buffers, as they have no effect.
+   */
+  void buffer(Message message, int capacity, Consumer<Message> leafWriter,
+      Consumer<Message> dropped) {
+    if (!messageBuffer.add(message)) {
+      dropped.accept(message);
+    }
+    if (messageBuffer.size() >= capacity) {
+      flushBuffer(capacity, leafWriter, dropped);
+    }
+  }
+
+  /**
+   * Flushes the messages of the child with the most pending messages, until the buffer is below
+   * its capacity. The messages are moved into the buffer of an inner child, or they are applied to
+   * the leaves. The leaf writer routes the messages to the leaves from the root, since the node
+   * itself might split or be merged while the leaves are being updated. A capacity of zero flushes
+   * the whole sub-tree.
+   */
+  void flushBuffer(int capacity, Consumer<Message> leafWriter, Consumer<Message> dropped) {
+    while (!messageBuffer.isEmpty() && messageBuffer.size() >= capacity) {
+      int childIndex = busiestChildIndex();
+      var batch = messageBuffer.removeRange(childIndex > 0 ? separators[childIndex - 1] : null,
+          childIndex < separatorCount ? separators[childIndex] : null);
+      if (children[childIndex] instanceof InnerNode innerChild) {
+        innerChild.messageBuffer.addAll(batch).forEach(dropped);
+        if (innerChild.messageBuffer.size() >= capacity) {
+          innerChild.flushBuffer(capacity, leafWriter, dropped);
+        }
+      } else {
+        batch.forEach(leafWriter);
+      }
+    }
+  }
+
+  // Returns the index of the child, for which the most messages are buffered.
+  private int busiestChildIndex() {
+    var counts = new int[separatorCount + 1];
+    for (var indexKey : messageBuffer.keys()) {
+      counts[childIndexOf(indexKey)]++;
+    }
+    int busiest = 0;
+    for (int i = 1; i < counts.length; i++) {
+      if (counts[i] > counts[busiest]) {
+        busiest = i;
       }
     }
-    rightMost.node().doUpsert(dataEntity);
+    return busiest;
+  }
+
+  /**
+   * Flushes the buffers of the sub-tree down to the leaves.
+   */
+  void drainBuffers(Consumer<Message> leafWriter, Consumer<Message> dropped) {
+    flushBuffer(0, leafWriter, dropped);
+    for (var child : Arrays.copyOf(children, separatorCount + 1)) {
+      if (child instanceof InnerNode innerChild) {
+        innerChild.drainBuffers(leafWriter, dropped);
+      }
+    }
+  }
+
+  boolean hasBufferedMessages() {
+    if (!messageBuffer.isEmpty()) {
+      return true;
+    }
+    for (int i = 0; i <= separatorCount; i++) {
+      if (children[i] instanceof InnerNode innerChild && innerChild.hasBufferedMessages()) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
   List<DataRecord> doQuery(String indexQuery,
       BiFunction<List<KeyData>, DataNode, List<DataRecord>> operation) {
-    for (var key : keySet) {
-      if (indexQuery.compareTo(key.indexKey().toString()) < 0) {
-        return key.node().doQuery(indexQuery, operation);
+    var dataRecords = childFor(indexQuery).doQuery(indexQuery, operation);
+    return messageBuffer.isEmpty() ? dataRecords : messageBuffer.resolve(indexQuery, dataRecords);
+  }
+
+  @Override
+  void doQueryAll(List<String> indexKeys, int from, int to,
+      Map<String, List<DataRecord>> results) {
+    queryChildren(indexKeys, from, to, results);
+    if (!messageBuffer.isEmpty()) {
+      for (int i = from; i < to; i++) {
+        var indexKey = indexKeys.get(i);
+        results.computeIfPresent(indexKey,
+            (ignored, dataRecords) -> messageBuffer.resolve(indexKey, dataRecords));
+      }
+    }
+  }
+
+  private void queryChildren(List<String> indexKeys, int from, int to,
+      Map<String, List<DataRecord>> results) {
+    // The keys are sorted, so the ones routed to the same child form a contiguous run, which
+    // descends into the child once.
+    while (from < to) {
+      int childIndex = childIndexOf(indexKeys.get(from));
+      int runEnd = from + 1;
+      if (childIndex == separatorCount) {
+        runEnd = to;
+      } else {
+        while (runEnd < to && indexKeys.get(runEnd).compareTo(separators[childIndex]) < 0) {
+          runEnd++;
+        }
+      }
+      children[childIndex].doQueryAll(indexKeys, from, runEnd, results);
+      from = runEnd;
+    }
+  }
+
+  @Override
+  DataNode firstLeaf() {
+    return children[0].firstLeaf();
+  }
+
+  @Override
+  DataNode lastLeaf() {
+    return children[separatorCount].lastLeaf();
+  }
+
+  @Override
+  DataNode leafFor(String indexKey) {
+    return childFor(indexKey).leafFor(indexKey);
+  }
+
+  /**
+   * Returns the leaf following the sub-tree of the child in the key order, or null if the child is
+   * the right most one of the tree.
+   */
+  DataNode leafAfter(Node child) {
+    int index = indexOfChild(child);
+    if (index >= 0 && index < separatorCount) {
+      return children[index + 1].firstLeaf();
+    }
+    return hasParent() ? getParent().leafAfter(this) : null;
+  }
+
+  private int indexOfChild(Node child) {
+    for (int i = 0; i <= separatorCount; i++) {
+      if (children[i] == child) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  long getSubtreeSize() {
+    return subtreeSize;
+  }
+
+  void addToSubtreeSize(long delta) {
+    subtreeSize += delta;
+  }
+
+  /**
+   * Recounts the size of the sub-tree from the sizes of the direct children.
+   */
+  void recountSubtreeSize() {
+    long size = 0;
+    for (int i = 0; i <= separatorCount; i++) {
+      if (children[i] != null) {
+        size += children[i].getSubtreeSize();
+      }
+    }
+    subtreeSize = size;
+  }
+
+  /**
+   * <p>
+   * Removes the index keys in the range [from, to) from the sub-tree. The children, which are
+   * entirely in the range, are dropped as a whole without being visited, so only the children on
+   * the bounds of the range are descended. The children, which become empty, are removed together
+   * with a separator next to them, i.e. the remaining neighbour takes over their range:
+   * </p>
+   * <pre>
+   *        200 300 400                           200
+   *   [100] [200] [300] [400 500]  =>  [100] [450 500]     range [200, 450)
+   * </pre>
+   * <p>
+   * The nodes on the bounds might be left with a single child, which are to be rebalanced
+   * afterwards.
+   * </p>
+   */
+  @Override
+  long deleteRange(String from, String to, String lo, String hi, List<DataRecord> removed) {
+    int first = from == null ? 0 : childIndexOf(from);
+    int last = to == null ? separatorCount : childIndexOf(to);
+    if (last > 0 && to != null && separators[last - 1].equals(to)) {
+      last--;
+    }
+    long removedKeys = 0;
+    var dropped = new boolean[separatorCount + 1];
+    int droppedCount = 0;
+    for (int i = first; i <= last; i++) {
+      var childLo = i == 0 ? lo : separators[i - 1];
+      var childHi = i == separatorCount ? hi : separators[i];
+      if ((from == null || childLo != null && childLo.compareTo(from) >= 0)
+          && (to == null || childHi != null && childHi.compareTo(to) <= 0)) {
+        removedKeys += children[i].getSubtreeSize();
+        dropped[i] = true;
+        if (removed != null) {
+          collectRecords(children[i], removed);
+        }
+      } else {
+        removedKeys += children[i].deleteRange(from, to, childLo, childHi, removed);
+        dropped[i] = children[i].getSize() == 0;
+      }
+      droppedCount += dropped[i] ? 1 : 0;
+    }
+    subtreeSize -= removedKeys;
+    if (droppedCount == getTotalSize()) {
+      Arrays.fill(separators, 0, separatorCount, null);
+      Arrays.fill(children, 0, separatorCount + 1, null);
+      separatorCount = 0;
+      markDirty();
+    } else {
+      for (int i = last; i >= first; i--) {
+        if (dropped[i]) {
+          removeChildAt(i);
+        }
+      }
+    }
+    return removedKeys;
+  }
+
+  // Collects the data records of the sub-tree, which is dropped as a whole, from its leaves.
+  private static void collectRecords(Node subtree, List<DataRecord> records) {
+    if (subtree instanceof InnerNode innerNode) {
+      for (int i = 0; i <= innerNode.separatorCount; i++) {
+        collectRecords(innerNode.children[i], records);
+      }
+    } else if (subtree instanceof DataNode leaf) {
+      leaf.entriesAfter(null, true).forEach(keyData -> records.addAll(keyData.dataRecords()));
+    }
+  }
+
+  @Override
+  long doRank(String indexKey) {
+    int childIndex = childIndexOf(indexKey);
+    long rank = 0;
+    for (int i = 0; i < childIndex; i++) {
+      rank += children[i].getSubtreeSize();
+    }
+    return rank + children[childIndex].doRank(indexKey);
+  }
+
+  @Override
+  KeyData doSelect(long position) {
+    for (int i = 0; i <= separatorCount; i++) {
+      long childSize = children[i].getSubtreeSize();
+      if (position < childSize) {
+        return children[i].doSelect(position);
       }
+      position -= childSize;
     }
-    return rightMost.node().doQuery(indexQuery, operation);
+    throw new IndexOutOfBoundsException("Position is out of the sub-tree's range.");
+  }
+
+  Node childFor(String indexKey) {
+    return children[childIndexOf(indexKey)];
+  }
+
+  /**
+   * Binary search for the child, which is responsible for the index key, i.e. the position of the
+   * first separator bigger than the index key.
+   */
+  int childIndexOf(String indexKey) {
+    int low = 0;
+    int high = separatorCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (indexKey.compareTo(separators[mid]) < 0) {
+        high = mid - 1;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
   }
 
   // TODO this method needs to be package-private. PageTest needs to access the add-method, hence
   //  public.
   public void add(Key key) {
     if (key.isRightMost()) {
-      rightMost = key;
+      children[separatorCount] = key.node();
     } else {
-      keySet.add(key);
+      insertSeparator(key.indexKey().toString(), key.node());
     }
+    splitIfFull();
+  }
 
-    if (getTotalSize() >= BTreeIndex.ORDER) {
-      split();
+  // Inserts the separator and the child left to it. Already existing separators are ignored.
+  private void insertSeparator(String separator, Node child) {
+    int index = Arrays.binarySearch(separators, 0, separatorCount, separator);
+    if (index >= 0) {
+      return;
+    }
+    index = -(index + 1);
+    ensureCapacity(separatorCount + 1);
+    System.arraycopy(separators, index, separators, index + 1, separatorCount - index);
+    System.arraycopy(children, index, children, index + 1, separatorCount - index + 1);
+    separators[index] = separator;
+    children[index] = child;
+    separatorCount++;
+  }
+
+  private void ensureCapacity(int separatorCapacity) {
+    if (separatorCapacity > separators.length) {
+      int newCapacity = Math.max(separatorCapacity, separators.length * 2);
+      separators = Arrays.copyOf(separators, newCapacity);
+      children = Arrays.copyOf(children, newCapacity + 1);
     }
   }
 
   /**
    * <p>
-   * The method deletes a node by index key and rebalances the tree if a node remains unbalanced.
-   * Unbalanced nodes need to be eliminated by reassigning their remaining child to the unbalanced
-   * one's parent and moving the parent to the sibling:
+   * The method deletes the child node, which is responsible for the index key, and rebalances the
+   * tree if the node remains unbalanced. Unbalanced nodes, i.e. inner nodes with a single child,
+   * need to be eliminated by moving their remaining child together with the parent's separator to
+   * the sibling:
    * </p>
    * <pre>
    *      100                  50  100              100                 100 150
@@ -135,182 +475,335 @@ public class InnerNode extends Node implements Iterable<Key> {
    * </pre>
    * <p>
    * The nodes which are marked with "*" are unbalanced ones with a single child, so they are to be
-   * eliminated. Unbalanced nodes' children will be assigned to their parent, and the parent is to
-   * join the sibling.
+   * eliminated. If the root remains with a single child, the child becomes the new root.
+   * </p>
+   * <p>
+   * If a fill threshold is given, the nodes, which fall below it, are rebalanced with a sibling
+   * instead, see {@link #rebalanceLeaf(DataNode, int)}.
    * </p>
    *
    * @param indexKey Index key of the node to be deleted.
+   * @param minFillPercent Fill threshold of the nodes in percent of their capacity, or zero to
+   * eliminate the unbalanced nodes only.
    */
-  void deleteNodeAndBalanceBy(String indexKey) {
-    // Remove the node by the index key in the current node. The current now may be left in
-    // unbalanced state, which will be handled below.
-    if (removeNodeKeyBy(indexKey) && hasParent()) {
-      var remainingKeyOnNode = getLastKeyOrRightmost();
-      var parent = getParent();
-      if (parent.isBinaryNode()) {
-        // Since the parent has two children, is a binary branch, we read the left branch by
-        // default, which is used to compare the index range key of the remaining key on the node.
-        // It helps to determine if the current node on the left or right branch of the parent.
-        var parentKey = parent.getLastKeyOrRightmost();
-        if (isRemainingInTheLeftBranch(remainingKeyOnNode, parentKey)) {
-          mergeParentToRightSibling(parentKey, remainingKeyOnNode);
-        } else {
-          mergeParentToLeftSibling(parentKey, remainingKeyOnNode);
-        }
-      } else {
-        removeKeyOnABalancedNode(remainingKeyOnNode, parent);
-      }
+  void deleteNodeAndBalanceBy(String indexKey, int minFillPercent) {
+    metrics().nodeDeleted();
+    var event = new NodeRebalanceEvent();
+    event.begin();
+    removeChildAt(childIndexOf(indexKey));
+    int merges = minFillPercent > 0 ? fixUnderflow(minFillPercent) : rebalance(indexKey);
+    if (event.shouldCommit()) {
+      event.indexKey = indexKey;
+      event.pageOffset = getPageRef().pageOffset();
+      event.merges = merges;
+      event.commit();
     }
   }
 
-  private void removeKeyOnABalancedNode(Key remainingKey, InnerNode node) {
-    if (node.isUnbalanced()) {
-      throw new IllegalArgumentException("The node must be balanced.");
+  // Returns the number of the unbalanced nodes eliminated on the way up.
+  private int rebalance(String indexKey) {
+    if (!isUnbalanced()) {
+      return 0;
     }
-    Iterator<Key> iterator = node.getKeySet().iterator();
-    while (iterator.hasNext()) {
-      Key nextKey = iterator.next();
-      if (nextKey.compareTo(remainingKey) > 0) {
-        InnerNode rightBranchInner = iterator.hasNext() ?
-            (InnerNode) iterator.next().node() :
-            (InnerNode) node.getRightMost().node();
-        rightBranchInner.add(new Key(nextKey.indexKey(), remainingKey.node()));
-        node.getKeySet().remove(nextKey);
-      }
+    metrics().nodeMerged();
+    var remainingChild = children[0];
+    if (!hasParent()) {
+      return collapseRoot();
     }
-    if (remainingKey.compareTo(node.getRightMost()) >= 0) {
-      Key lastKey = node.getLastChild();
-      node.getKeySet().remove(lastKey);
-      InnerNode leftBranch = (InnerNode) lastKey.node();
-      node.setRightMost(new Key(leftBranch));
-      leftBranch.add(new Key(lastKey.indexKey(), leftBranch.getRightMost().node()));
-      leftBranch.setRightMost(new Key(remainingKey.node()));
-    }
-  }
-
-  // There are two possibilities here, 1) remaining key is the right most. In this case, the
-  // first child of the right most must be compared with the parent because the right most key
-  // doesn't contain index keys to compare. 2) remaining key is a left-side branch with an index
-  // key, so we can compare it with the parent to determine if the remaining node resides in the
-  // left branch of the parent.
-  private boolean isRemainingInTheLeftBranch(Key remainingKey, Key parentKey) {
-    return (remainingKey.isRightMost() &&
-        parentKey.indexKey().toString().compareTo(remainingKey.node().firstIndexKey().toString())
-            >= 0) ||
-        parentKey.compareTo(remainingKey) > 0;
-  }
-
-  // Move the parent node to the left sibling of the remaining, because the unbalanced node is in
-  // the right branch of the parent, i.e., the unbalanced node mustn't survive on its own. The
-  // parent becomes the new parent of the unbalanced one's child while moving it to the left
-  // sibling.
-  private void mergeParentToLeftSibling(Key parentKey, Key remainingKey) {
-    InnerNode leftBranchInner = (InnerNode) getParent().getLastKeyOrRightmost().node();
-    leftBranchInner.add(new Key(parentKey.indexKey(), remainingKey.node()));
-    if (getParent().getParent() != null) {
-      leftBranchInner.setParent(getParent().getParent());
+    var parent = getParent();
+    int index = parent.childIndexOf(indexKey);
+    if (index < parent.separatorCount) {
+      var rightSibling = (InnerNode) parent.children[index + 1];
+      var separator = parent.separators[index];
+      parent.removeChildAt(index);
+      handOverMessages(rightSibling);
+      rightSibling.prependChild(separator, remainingChild);
     } else {
-      leftBranchInner.setParent(null);
-      notifyObservers(leftBranchInner);
+      var leftSibling = (InnerNode) parent.children[index - 1];
+      var separator = parent.separators[index - 1];
+      parent.removeChildAt(index);
+      handOverMessages(leftSibling);
+      leftSibling.appendChild(separator, remainingChild);
     }
-    leftBranchInner.setParent(null);
-    notifyObservers(leftBranchInner);
+    return 1 + parent.rebalance(indexKey);
   }
 
-  // Same as mergeParentToLeftSibling but moves the parent to the right branch.
-  private void mergeParentToRightSibling(Key parentKey, Key remainingKey) {
-    InnerNode rightBranchInner = (InnerNode) getParent().getRightMost().node();
-    rightBranchInner.add(new Key(parentKey.indexKey(), remainingKey.node()));
-    if (getParent().getParent() != null) {
-      rightBranchInner.setParent(getParent().getParent());
-    } else {
-      rightBranchInner.setParent(null);
-      notifyObservers(rightBranchInner);
+  // The root with a single child is replaced by the child.
+  private int collapseRoot() {
+    var remainingChild = children[0];
+    remainingChild.setParent(null);
+    notifyObservers(remainingChild);
+    handOverMessages(remainingChild);
+    return 1;
+  }
+
+  /**
+   * <p>
+   * Rebalances the leaf, which has fallen below the fill threshold. If the keys of the leaf and
+   * its sibling fit into a single leaf, the leaf is merged into the sibling, and the node itself is
+   * rebalanced, as it loses a child. Otherwise, the leaf borrows a key from the sibling, if the
+   * sibling remains above the threshold, and the separator between them is moved:
+   * </p>
+   * <pre>
+   *        300                     400
+   *   [100]   [300 400 500]  =>  [100 300]   [400 500]
+   * </pre>
+   * <p>
+   * The sibling is the right one, or the left one, if the leaf is the right most child.
+   * </p>
+   *
+   * @param leaf Leaf child, which has fallen below the threshold.
+   * @param minFillPercent Fill threshold of the nodes in percent of their capacity.
+   */
+  void rebalanceLeaf(DataNode leaf, int minFillPercent) {
+    int index = indexOfChild(leaf);
+    if (index < 0 || separatorCount == 0) {
+      return;
+    }
+    boolean hasRightSibling = index < separatorCount;
+    var sibling = (DataNode) children[hasRightSibling ? index + 1 : index - 1];
+    if (leaf.getSize() + sibling.getSize() <= DataNode.MAX_KEYS) {
+      metrics().nodeDeleted();
+      leaf.moveKeysTo(sibling);
+      removeChildAt(index);
+      fixUnderflow(minFillPercent);
+    } else if (sibling.getSize() > DataNode.minKeys(minFillPercent)) {
+      if (hasRightSibling) {
+        leaf.borrowFrom(sibling, true);
+        separators[index] = sibling.firstIndexKey().toString();
+      } else {
+        separators[index - 1] = leaf.borrowFrom(sibling, false).indexKey().toString();
+      }
+      markDirty();
     }
   }
 
-  private boolean removeNodeKeyBy(String indexKey) {
-    keySet.removeIf(key -> indexKey.compareTo(key.indexKey().toString()) < 0);
-    if (indexKey.compareTo(rightMost.indexKey().toString()) >= 0) {
-      rightMost = null;
-      if (keySet.size() >= 2) {
-        var lastKey = keySet.last();
-        rightMost = lastKey;
-        keySet.remove(lastKey);
+  // Merges the node with or borrows a child from a sibling, if the node has fallen below the fill
+  // threshold, and continues with the parent after a merge. The unbalanced nodes, i.e. the ones
+  // with a single child, are always rebalanced. Returns the number of the nodes eliminated.
+  int fixUnderflow(int minFillPercent) {
+    if (!hasParent()) {
+      return isUnbalanced() ? collapseRoot() : 0;
+    }
+    int minChildren = minChildren(minFillPercent);
+    if (getTotalSize() >= minChildren) {
+      return 0;
+    }
+    var parent = getParent();
+    int index = parent.indexOfChild(this);
+    boolean hasRightSibling = index < parent.separatorCount;
+    var sibling = (InnerNode) parent.children[hasRightSibling ? index + 1 : index - 1];
+    if (getTotalSize() + sibling.getTotalSize() <= MAX_CHILDREN) {
+      metrics().nodeMerged();
+      handOverMessages(sibling);
+      if (hasRightSibling) {
+        sibling.prependChildren(this, parent.separators[index]);
+      } else {
+        sibling.appendChildren(this, parent.separators[index - 1]);
+      }
+      parent.removeChildAt(index);
+      return 1 + parent.fixUnderflow(minFillPercent);
+    }
+    if (sibling.getTotalSize() > minChildren || isUnbalanced()) {
+      if (hasRightSibling) {
+        borrowFirstChild(sibling, index);
+      } else {
+        borrowLastChild(sibling, index - 1);
       }
     }
+    return 0;
+  }
 
-    return isUnbalanced();
+  private static int minChildren(int minFillPercent) {
+    return Math.max(2, (int) Math.ceil(minFillPercent * MAX_CHILDREN / 100.0d));
   }
 
-  private boolean isBinaryNode() {
-    return getTotalSize() == 2 && rightMost != null;
+  // Takes over the children of the left sibling, which are smaller than the separator.
+  private void prependChildren(InnerNode leftSibling, String separator) {
+    int count = leftSibling.separatorCount + 1;
+    ensureCapacity(separatorCount + count);
+    System.arraycopy(separators, 0, separators, count, separatorCount);
+    System.arraycopy(children, 0, children, count, separatorCount + 1);
+    System.arraycopy(leftSibling.separators, 0, separators, 0, count - 1);
+    System.arraycopy(leftSibling.children, 0, children, 0, count);
+    separators[count - 1] = separator;
+    separatorCount += count;
+    for (int i = 0; i < count; i++) {
+      children[i].setParent(this);
+    }
+    subtreeSize += leftSibling.subtreeSize;
+    markDirty();
+  }
+
+  // Takes over the children of the right sibling, which are equal or bigger than the separator.
+  private void appendChildren(InnerNode rightSibling, String separator) {
+    int count = rightSibling.separatorCount + 1;
+    ensureCapacity(separatorCount + count);
+    separators[separatorCount] = separator;
+    System.arraycopy(rightSibling.separators, 0, separators, separatorCount + 1, count - 1);
+    System.arraycopy(rightSibling.children, 0, children, separatorCount + 1, count);
+    for (int i = separatorCount + 1; i <= separatorCount + count; i++) {
+      children[i].setParent(this);
+    }
+    separatorCount += count;
+    subtreeSize += rightSibling.subtreeSize;
+    markDirty();
+  }
+
+  // Moves the first child of the right sibling to the node, i.e. the parent's separator between
+  // them moves down into the node, and the sibling's first separator moves up into the parent.
+  private void borrowFirstChild(InnerNode rightSibling, int separatorIndex) {
+    var parent = getParent();
+    var child = rightSibling.children[0];
+    var newSeparator = rightSibling.separators[0];
+    rightSibling.removeItems(1);
+    rightSibling.subtreeSize -= child.getSubtreeSize();
+    appendChild(parent.separators[separatorIndex], child);
+    parent.separators[separatorIndex] = newSeparator;
+    parent.markDirty();
+    messageBuffer.addAll(rightSibling.messageBuffer.removeRange(null, newSeparator));
+  }
+
+  // Moves the right most child of the left sibling to the node, i.e. the parent's separator
+  // between them moves down into the node, and the sibling's last separator moves up into the
+  // parent.
+  private void borrowLastChild(InnerNode leftSibling, int separatorIndex) {
+    var parent = getParent();
+    var child = leftSibling.children[leftSibling.separatorCount];
+    var newSeparator = leftSibling.separators[leftSibling.separatorCount - 1];
+    leftSibling.removeChildAt(leftSibling.separatorCount);
+    leftSibling.subtreeSize -= child.getSubtreeSize();
+    prependChild(parent.separators[separatorIndex], child);
+    parent.separators[separatorIndex] = newSeparator;
+    parent.markDirty();
+    messageBuffer.addAll(leftSibling.messageBuffer.removeRange(newSeparator, null));
+  }
+
+  // The buffered messages of an eliminated node are taken over by the node, which takes over its
+  // range. If the root collapses into a leaf, there is no buffer left, so the messages are handed
+  // over to the observers to be applied. The messages of a collapsing root are newer than the
+  // ones of its child, so the upserts, which have no effect in the child's buffer, are dropped.
+  private void handOverMessages(Node successor) {
+    if (messageBuffer.isEmpty()) {
+      return;
+    }
+    var messages = messageBuffer.removeRange(null, null);
+    if (successor instanceof InnerNode innerNode) {
+      var dropped = innerNode.messageBuffer.addAll(messages);
+      if (!dropped.isEmpty()) {
+        getNodeObservers().forEach(nodeObserver -> nodeObserver.onDroppedMessages(dropped));
+      }
+    } else {
+      getNodeObservers().forEach(nodeObserver -> nodeObserver.onPendingMessages(messages));
+    }
   }
 
-  private Key getLastKeyOrRightmost() {
-    return keySet.isEmpty() ? rightMost : keySet.first();
+  // Removes the child at the index together with a separator next to it. The range of the removed
+  // child is taken over by its right sibling or, if it is the right most, by its left sibling.
+  private void removeChildAt(int index) {
+    if (index < separatorCount) {
+      System.arraycopy(separators, index + 1, separators, index, separatorCount - index - 1);
+      System.arraycopy(children, index + 1, children, index, separatorCount - index);
+    }
+    separatorCount--;
+    separators[separatorCount] = null;
+    children[separatorCount + 1] = null;
+    markDirty();
+  }
+
+  // Adds the child as the left most one, its index keys are smaller than the separator.
+  private void prependChild(String separator, Node child) {
+    insertSeparator(separator, child);
+    child.setParent(this);
+    subtreeSize += child.getSubtreeSize();
+    markDirty();
+    splitIfFull();
+  }
+
+  // Adds the child as the right most one, its index keys are equal or bigger than the separator.
+  private void appendChild(String separator, Node child) {
+    ensureCapacity(separatorCount + 1);
+    separators[separatorCount++] = separator;
+    children[separatorCount] = child;
+    child.setParent(this);
+    subtreeSize += child.getSubtreeSize();
+    markDirty();
+    splitIfFull();
+  }
+
+  private void splitIfFull() {
+    if (getTotalSize() > MAX_CHILDREN) {
+      split();
+    }
   }
 
-  private boolean isUnbalanced() {
+  boolean isUnbalanced() {
     return getTotalSize() == 1;
   }
 
   private int getTotalSize() {
-    int totalSize = keySet.size();
-    if (rightMost != null) {
+    int totalSize = separatorCount;
+    if (children[separatorCount] != null) {
       totalSize++;
     }
     return totalSize;
   }
 
   private void split() {
+    metrics().innerNodeSplit();
+    var event = new NodeSplitEvent();
+    event.begin();
     createParentIfNotExists();
-    extractLeftNode();
+    commitSplitEvent(event, extractLeftNode());
   }
 
-  private void extractLeftNode() {
+  // The left node takes over the separators before the mid-point together with their children,
+  // and the child of the mid-point separator becomes its right most. The mid-point separator
+  // moves up to the parent.
+  private String extractLeftNode() {
     InnerNode leftNode = new InnerNode(getDiskAccessController());
-    int midPoint = getMidPoint();
-    int counter = 0;
-    for (var key : keySet) {
-      if (++counter < midPoint) {
-        leftNode.add(key);
-        key.node().setParent(leftNode);
-      } else {
-        break;
-      }
+    int leftSeparators = getMidPoint() - 1;
+    leftNode.ensureCapacity(leftSeparators);
+    System.arraycopy(separators, 0, leftNode.separators, 0, leftSeparators);
+    System.arraycopy(children, 0, leftNode.children, 0, leftSeparators + 1);
+    leftNode.separatorCount = leftSeparators;
+    for (int i = 0; i <= leftSeparators; i++) {
+      leftNode.children[i].setParent(leftNode);
     }
     leftNode.registerObservers(getNodeObservers());
-    removeItems(leftNode);
-    attachToParent(leftNode);
+    String leftNodeParentKey = separators[leftSeparators];
+    leftNode.messageBuffer = messageBuffer.splitBefore(leftNodeParentKey);
+    removeItems(leftSeparators + 1);
+    leftNode.recountSubtreeSize();
+    recountSubtreeSize();
+    attachToParent(leftNode, leftNodeParentKey);
+    return leftNodeParentKey;
   }
 
-  private void attachToParent(InnerNode leftNode) {
-    Object leftNodeParentKey = initRightmost(leftNode);
+  private void attachToParent(InnerNode leftNode, String leftNodeParentKey) {
     leftNode.setParent(getParent());
     Key key = new Key(leftNodeParentKey, leftNode);
     getParent().add(key);
   }
 
-  private void removeItems(InnerNode leftNode) {
-    keySet.removeAll(leftNode.keySet);
+  // Removes the first separators and their children from the node.
+  private void removeItems(int count) {
+    System.arraycopy(separators, count, separators, 0, separatorCount - count);
+    System.arraycopy(children, count, children, 0, separatorCount - count + 1);
+    Arrays.fill(separators, separatorCount - count, separatorCount, null);
+    Arrays.fill(children, separatorCount - count + 1, separatorCount + 1, null);
+    separatorCount -= count;
+    markDirty();
   }
 
   private void createParentIfNotExists() {
     if (!hasParent()) {
       createRoot();
       getParent().add(asRightMostKey());
+      getParent().recountSubtreeSize();
     }
   }
 
-  private Object initRightmost(InnerNode leftNode) {
-    Key keyToRemoveFromRightTree = keySet.getFirst();
-    Key keyOftheLeftsRightMostNode = new Key(keyToRemoveFromRightTree.node());
-    leftNode.setRightMost(keyOftheLeftsRightMostNode);
-    keySet.remove(keyToRemoveFromRightTree);
-    return keyToRemoveFromRightTree.indexKey();
-  }
-
   private Key asRightMostKey() {
     return new Key(this);
   }
@@ -328,7 +821,7 @@ public class InnerNode extends Node implements Iterable<Key> {
 
   @Override
   Object getFirstIndexKey() {
-    return keySet.first().indexKey();
+    return separators[0];
   }
 
   @Override
@@ -341,16 +834,39 @@ public class InnerNode extends Node implements Iterable<Key> {
     return Type.INNER;
   }
 
-  public Set<Key> getKeySet() {
-    return keySet;
+  /**
+   * A read-only view of the references to the children except the right most one.
+   *
+   * @return List of {@link Key}s sorted by the index range keys.
+   */
+  public List<Key> getKeySet() {
+    return new AbstractList<>() {
+      @Override
+      public Key get(int index) {
+        return keyAt(index);
+      }
+
+      @Override
+      public int size() {
+        return separatorCount;
+      }
+    };
+  }
+
+  private Key keyAt(int index) {
+    if (index < 0 || index >= separatorCount) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return new Key(separators[index], children[index]);
   }
 
   public Key getRightMost() {
-    return rightMost;
+    var rightMost = children[separatorCount];
+    return rightMost != null ? new Key(rightMost) : null;
   }
 
   public void setRightMost(Key rightMost) {
-    this.rightMost = rightMost;
+    children[separatorCount] = rightMost != null ? rightMost.node() : null;
   }
 
   // we persist the slotted pages backwards, i.e., the last cell's offset (the right most)
@@ -360,12 +876,12 @@ public class InnerNode extends Node implements Iterable<Key> {
     // TODO Precondition checks for the cells bigger than page size. Alternatively we can split
     //  the cell into multiple pages.
     Page page = new Page(this);
-    for (final Key key : keySet) {
-      ByteBuffer keyByteBuf = key.serialize();
+    for (int i = 0; i < separatorCount; i++) {
+      ByteBuffer keyByteBuf = keyAt(i).serialize();
       page = persistIfFull(page, keyByteBuf);
       page.appendCell(keyByteBuf);
     }
-    ByteBuffer serialize = rightMost.serialize();
+    ByteBuffer serialize = getRightMost().serialize();
     page = persistIfFull(page, serialize);
     PageRef pageRef = getDiskAccessController().append(page);
     markSynced();
@@ -384,16 +900,31 @@ public class InnerNode extends Node implements Iterable<Key> {
 
   public Page serialize() {
     var page = new Page(this);
-    keySet.forEach(key -> page.appendCell(key.serialize()));
-    page.appendCell(rightMost.serialize());
+    for (int i = 0; i < separatorCount; i++) {
+      page.appendCell(keyAt(i).serialize());
+    }
+    page.appendCell(getRightMost().serialize());
     return page;
   }
 
   @Override
   public Iterator<Key> iterator() {
-    var listView = new ArrayList<>(Arrays.asList(keySet.toArray(new Key[keySet.size()])));
-    listView.add(rightMost);
-    return listView.iterator();
+    return new Iterator<>() {
+      private int cursor;
+
+      @Override
+      public boolean hasNext() {
+        return cursor <= separatorCount;
+      }
+
+      @Override
+      public Key next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return cursor < separatorCount ? keyAt(cursor++) : new Key(children[cursor++]);
+      }
+    };
   }
 
   @Override
@@ -402,13 +933,13 @@ public class InnerNode extends Node implements Iterable<Key> {
   }
 
   public List<String> getIndexKeys() {
-    return keySet.stream().map(Key::indexKey).map(Object::toString).toList();
+    return List.of(Arrays.copyOf(separators, separatorCount));
   }
 
   public Key getLastChild() {
-    if (keySet.isEmpty()) {
+    if (separatorCount == 0) {
       return null;
     }
-    return keySet.last();
+    return keyAt(separatorCount - 1);
   }
 }
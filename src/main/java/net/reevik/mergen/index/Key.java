@@ -18,8 +18,10 @@ package net.reevik.mergen.index;
 import static net.reevik.mergen.index.Key.KeyType.RMN;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import net.reevik.mergen.index.Node.Type;
+import net.reevik.mergen.io.ByteCodec;
 import net.reevik.mergen.io.DiskController;
 import net.reevik.mergen.io.PageRef;
 
@@ -29,17 +31,27 @@ public class Key implements Comparable<Key> {
     RMN
   }
 
+  private static final int NODE_TYPE_OFFSET = 0;
+  private static final int NODE_OFFSET_OFFSET = NODE_TYPE_OFFSET + Integer.BYTES;
+  private static final int SUBTREE_SIZE_OFFSET = NODE_OFFSET_OFFSET + Long.BYTES;
+  private static final int INDEX_KEY_OFFSET = SUBTREE_SIZE_OFFSET + Long.BYTES;
+
   private final Object indexKey;
   private final Node node;
+  private final long subtreeSize;
 
   public Key(Object indexKey, Node node) {
-    this.indexKey = indexKey;
-    this.node = node;
+    this(indexKey, node, node != null ? node.getSubtreeSize() : 0);
   }
 
   public Key(Node node) {
-    this.indexKey = RMN;
+    this(RMN, node);
+  }
+
+  private Key(Object indexKey, Node node, long subtreeSize) {
+    this.indexKey = indexKey;
     this.node = node;
+    this.subtreeSize = subtreeSize;
   }
 
   public boolean isRightMost() {
@@ -47,27 +59,29 @@ public class Key implements Comparable<Key> {
   }
 
   public ByteBuffer serialize() {
-    var indexKeyInBytes = indexKey.toString().getBytes();
-    var buffer = ByteBuffer.allocate(indexKeyInBytes.length + Long.BYTES + Integer.BYTES);
-    buffer.putInt(node.getNodeType().ordinal());
-    buffer.putLong(node.getPageRef().pageOffset());
-    buffer.put(indexKeyInBytes);
-    return buffer;
+    var indexKeyInBytes = indexKey.toString().getBytes(StandardCharsets.UTF_8);
+    var cell = new byte[INDEX_KEY_OFFSET + indexKeyInBytes.length];
+    ByteCodec.putInt(cell, NODE_TYPE_OFFSET, node.getNodeType().ordinal());
+    ByteCodec.putLong(cell, NODE_OFFSET_OFFSET, node.getPageRef().pageOffset());
+    ByteCodec.putLong(cell, SUBTREE_SIZE_OFFSET, subtreeSize);
+    System.arraycopy(indexKeyInBytes, 0, cell, INDEX_KEY_OFFSET, indexKeyInBytes.length);
+    return ByteBuffer.wrap(cell);
   }
 
   public static Key deserialize(ByteBuffer byteBuffer, DiskController controller) {
-    var nodeType = Node.Type.values()[byteBuffer.getInt()];
-    var nodeOffset = byteBuffer.getLong();
-    var indeyKeySize = byteBuffer.capacity() - Long.BYTES - Integer.BYTES;
-    var indexKey = new byte[indeyKeySize];
-    byteBuffer.get(indexKey, 0, indeyKeySize);
+    var cell = byteBuffer.array();
+    var nodeType = Node.Type.values()[ByteCodec.getInt(cell, NODE_TYPE_OFFSET)];
+    var nodeOffset = ByteCodec.getLong(cell, NODE_OFFSET_OFFSET);
+    var subtreeSize = ByteCodec.getLong(cell, SUBTREE_SIZE_OFFSET);
+    var indexKey = new String(cell, INDEX_KEY_OFFSET, byteBuffer.capacity() - INDEX_KEY_OFFSET,
+        StandardCharsets.UTF_8);
     Node node;
     if (nodeType.equals(Type.INNER)) {
       node = new InnerNode(PageRef.of(nodeOffset), controller);
     } else {
       node = new DataNode(PageRef.of(nodeOffset), controller);
     }
-    return new Key(new String(indexKey), node);
+    return new Key(indexKey, node, subtreeSize);
   }
 
   @Override
@@ -106,4 +120,12 @@ public class Key implements Comparable<Key> {
   public Node node() {
     return node;
   }
+
+  /**
+   * Returns the number of the index keys in the child's sub-tree at the time the key is created,
+   * or the number persisted in the cell, if the key is deserialized.
+   */
+  public long subtreeSize() {
+    return subtreeSize;
+  }
 }
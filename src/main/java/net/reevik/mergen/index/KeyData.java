@@ -16,26 +16,188 @@
 package net.reevik.mergen.index;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import net.reevik.mergen.io.ByteCodec;
 import net.reevik.mergen.io.DiskController;
 import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.ValuePointer;
 
-public record KeyData(Object indexKey, DataRecord dataRecord) implements Comparable<KeyData> {
+/**
+ * An entry of a leaf. In a non-unique index, the entry of an index key with multiple data records
+ * keeps them in a {@link PostingList}, and the data record of the entry is the first one of the
+ * posting list.
+ * <p>
+ * The leaf cells of the entries without a posting list are the record offset followed by the
+ * index key. The cells with a posting list, or with the payload of the data record inline, start
+ * with a negative marker, which never is a record offset:
+ * </p>
+ * <pre>
+ *   [record offset:long][index key]
+ *   [INLINE_POSTING_LIST:long][key length:int][index key][encoded posting list]
+ *   [SPILLED_POSTING_LIST:long][key length:int][index key][posting list page offset:long]
+ *   [INLINE_PAYLOAD:long][key length:int][index key][payload]
+ *   [VALUE_POINTER:long][key length:int][index key][segment:int][offset:long][length:int]
+ * </pre>
+ * <p>
+ * The payloads up to the inline limit are stored in the leaf cell next to the index key, so the
+ * data records of such entries are read together with the leaf, without reading their own pages.
+ * The payloads, which are stored in the value log, are referenced with their {@link ValuePointer}.
+ * </p>
+ * <p>
+ * If the deletes are deferred, the deleted entries are replaced by tombstones, which the queries
+ * ignore, until the tombstones are purged. The tombstones are never persisted.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public record KeyData(Object indexKey, DataRecord dataRecord, PostingList postingList,
+                      boolean tombstone) implements Comparable<KeyData> {
+
+  static final long INLINE_POSTING_LIST = -2L;
+  static final long SPILLED_POSTING_LIST = -3L;
+  static final long INLINE_PAYLOAD = -4L;
+  static final long VALUE_POINTER = -5L;
+
+  /**
+   * The maximum size of the payloads, which are stored inline, regardless of the configured limit,
+   * so that a leaf page keeps several entries.
+   */
+  public static final int MAX_INLINE_PAYLOAD = PostingList.INLINE_LIMIT;
+  private static final int RECORD_OFFSET_OFFSET = 0;
+  static final int INDEX_KEY_OFFSET = RECORD_OFFSET_OFFSET + Long.BYTES;
+  private static final int KEY_LENGTH_OFFSET = RECORD_OFFSET_OFFSET + Long.BYTES;
+  private static final int POSTING_KEY_OFFSET = KEY_LENGTH_OFFSET + Integer.BYTES;
+
+  public KeyData(Object indexKey, DataRecord dataRecord) {
+    this(indexKey, dataRecord, null);
+  }
+
+  public KeyData(Object indexKey, DataRecord dataRecord, PostingList postingList) {
+    this(indexKey, dataRecord, postingList, false);
+  }
+
+  /**
+   * Returns the tombstone of the entry, which keeps the index key only.
+   */
+  public KeyData asTombstone() {
+    return new KeyData(indexKey, null, null, true);
+  }
+
+  /**
+   * Returns all data records of the entry, or none, if it is a tombstone.
+   */
+  public List<DataRecord> dataRecords() {
+    if (tombstone) {
+      return List.of();
+    }
+    return postingList != null ? postingList.records() : List.of(dataRecord);
+  }
+
+  public boolean hasPostingList() {
+    return postingList != null;
+  }
 
   public ByteBuffer serialize() {
-    var indexKeyInBytes = indexKey.toString().getBytes();
-    var buffer = ByteBuffer.allocate(indexKeyInBytes.length + Long.BYTES);
-    buffer.putLong(dataRecord.getPageRef().pageOffset());
-    buffer.put(indexKeyInBytes);
-    return buffer;
+    return serialize(0);
+  }
+
+  /**
+   * Serializes the entry into a leaf cell.
+   *
+   * @param inlinePayloadLimit The maximum size of the payloads, which are stored in the cell, up to
+   * {@link #MAX_INLINE_PAYLOAD}. The payloads aren't stored inline if it is not positive.
+   * @return Leaf cell of the entry.
+   */
+  public ByteBuffer serialize(int inlinePayloadLimit) {
+    var indexKeyInBytes = indexKey.toString().getBytes(StandardCharsets.UTF_8);
+    if (postingList != null) {
+      return serializePostingList(indexKeyInBytes);
+    }
+    if (dataRecord.getValuePointer() != null) {
+      var cell = createPrefixedCell(VALUE_POINTER, indexKeyInBytes, ValuePointer.BYTES);
+      dataRecord.getValuePointer().writeTo(cell, POSTING_KEY_OFFSET + indexKeyInBytes.length);
+      return ByteBuffer.wrap(cell);
+    }
+    // The payloads, which aren't loaded yet, remain referenced by their record offset. The ones
+    // read from an inline cell have no record page, so they remain inline, whatever the limit.
+    int limit = isInlineOnly(dataRecord) ? MAX_INLINE_PAYLOAD
+        : Math.min(inlinePayloadLimit, MAX_INLINE_PAYLOAD);
+    if (!dataRecord.isUnsynced() && dataRecord.getPayload().length <= limit) {
+      var payload = dataRecord.getPayload();
+      var cell = createPrefixedCell(INLINE_PAYLOAD, indexKeyInBytes, payload.length);
+      System.arraycopy(payload, 0, cell, POSTING_KEY_OFFSET + indexKeyInBytes.length,
+          payload.length);
+      return ByteBuffer.wrap(cell);
+    }
+    var cell = new byte[INDEX_KEY_OFFSET + indexKeyInBytes.length];
+    ByteCodec.putLong(cell, RECORD_OFFSET_OFFSET, dataRecord.getPageRef().pageOffset());
+    System.arraycopy(indexKeyInBytes, 0, cell, INDEX_KEY_OFFSET, indexKeyInBytes.length);
+    return ByteBuffer.wrap(cell);
+  }
+
+  /**
+   * Returns whether the leaf cell stores the payload of the data record inline.
+   */
+  static boolean isInlinePayload(ByteBuffer cell) {
+    return ByteCodec.getLong(cell.array(), RECORD_OFFSET_OFFSET) == INLINE_PAYLOAD;
+  }
+
+  private static boolean isInlineOnly(DataRecord dataRecord) {
+    return dataRecord.isSynced() && dataRecord.getPageRef().hasNoOffset();
+  }
+
+  // The posting lists larger than the inline limit are spilled into their own pages.
+  private ByteBuffer serializePostingList(byte[] indexKeyInBytes) {
+    var encoded = postingList.encode();
+    boolean spilled = encoded.length > PostingList.INLINE_LIMIT;
+    int valueOffset = POSTING_KEY_OFFSET + indexKeyInBytes.length;
+    var cell = createPrefixedCell(spilled ? SPILLED_POSTING_LIST : INLINE_POSTING_LIST,
+        indexKeyInBytes, spilled ? Long.BYTES : encoded.length);
+    if (spilled) {
+      postingList.spill().writeTo(cell, valueOffset);
+    } else {
+      System.arraycopy(encoded, 0, cell, valueOffset, encoded.length);
+    }
+    return ByteBuffer.wrap(cell);
+  }
+
+  // Creates the cell of the entries, of which value follows the index key, with the marker and
+  // the index key written.
+  private static byte[] createPrefixedCell(long marker, byte[] indexKeyInBytes, int valueLength) {
+    var cell = new byte[POSTING_KEY_OFFSET + indexKeyInBytes.length + valueLength];
+    ByteCodec.putLong(cell, RECORD_OFFSET_OFFSET, marker);
+    ByteCodec.putInt(cell, KEY_LENGTH_OFFSET, indexKeyInBytes.length);
+    System.arraycopy(indexKeyInBytes, 0, cell, POSTING_KEY_OFFSET, indexKeyInBytes.length);
+    return cell;
   }
 
   public static KeyData deserialize(ByteBuffer byteBuffer, DiskController controller) {
-    long dataRecordOffset = byteBuffer.getLong();
-    int indeyKeySize = byteBuffer.capacity() - Long.BYTES;
-    byte[] indexKey = new byte[indeyKeySize];
-    byteBuffer.get(indexKey, 0, indeyKeySize);
-    return new KeyData(new String(indexKey), new DataRecord(new PageRef(dataRecordOffset),
-        controller));
+    var cell = byteBuffer.array();
+    long dataRecordOffset = ByteCodec.getLong(cell, RECORD_OFFSET_OFFSET);
+    if (dataRecordOffset == INLINE_POSTING_LIST || dataRecordOffset == SPILLED_POSTING_LIST
+        || dataRecordOffset == INLINE_PAYLOAD || dataRecordOffset == VALUE_POINTER) {
+      int keyLength = ByteCodec.getInt(cell, KEY_LENGTH_OFFSET);
+      var indexKey = new String(cell, POSTING_KEY_OFFSET, keyLength, StandardCharsets.UTF_8);
+      int valueOffset = POSTING_KEY_OFFSET + keyLength;
+      if (dataRecordOffset == VALUE_POINTER) {
+        return new KeyData(indexKey,
+            DataRecord.createLogged(ValuePointer.readFrom(cell, valueOffset), controller));
+      }
+      if (dataRecordOffset == INLINE_PAYLOAD) {
+        var payload = Arrays.copyOfRange(cell, valueOffset, byteBuffer.capacity());
+        return new KeyData(indexKey,
+            DataRecord.createSynced(PageRef.empty(), payload, controller));
+      }
+      var postingList = dataRecordOffset == INLINE_POSTING_LIST
+          ? PostingList.decode(cell, valueOffset, controller)
+          : PostingList.read(PageRef.readFrom(cell, valueOffset), controller);
+      return new KeyData(indexKey, postingList.get(0), postingList);
+    }
+    var indexKey = new String(cell, INDEX_KEY_OFFSET, byteBuffer.capacity() - INDEX_KEY_OFFSET,
+        StandardCharsets.UTF_8);
+    return new KeyData(indexKey, new DataRecord(new PageRef(dataRecordOffset), controller));
   }
 
   @Override
@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import net.reevik.mergen.io.ByteCodec;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.PageRef;
+
+/**
+ * <p>
+ * The entries of a leaf, which are kept in sorted parallel arrays instead of a
+ * {@link java.util.TreeSet}. The index keys are stored back-to-back in a single byte arena in
+ * UTF-8, an int offset table marks the start of every key in the arena, and the page offsets of
+ * the data records are kept in a long array:
+ * </p>
+ * <pre>
+ *   keyOffsets   [0, 3, 6, 9]
+ *   keyArena     [3 0 0 4 0 0 5 0 0]
+ *   recordRefs   [16384, 32768, ATTACHED]
+ *   attachments  [null, null, DataRecord]
+ * </pre>
+ * <p>
+ * An entry, of which data record is persisted and isn't loaded, e.g. a plain entry of a leaf read
+ * from the disk, keeps the record offset only, and its {@link KeyData} is created, once it is
+ * accessed. The other entries keep their data record or posting list as an attachment, i.e. the
+ * dirty and loaded records, the inline payloads, the value pointers and the posting lists. The
+ * tombstones keep their index key only.
+ * </p>
+ * <p>
+ * Lookups are binary searches over the offset table, and inserts shift the tails of the arrays in
+ * bulk. The index keys are ordered by the UTF-16 code units of their strings, as in
+ * {@link KeyData#compareTo(KeyData)}, and the entries are returned with the string keys.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+final class KeyDataArray extends AbstractSet<KeyData> {
+
+  private static final int INITIAL_CAPACITY = 4;
+  private static final long ATTACHED = -1L;
+  private static final long TOMBSTONE = -2L;
+
+  private final DiskController diskAccessController;
+  private byte[] keyArena;
+  private int[] keyOffsets;
+  private long[] recordRefs;
+  private Object[] attachments;
+  private int size;
+
+  KeyDataArray(DiskController diskAccessController) {
+    this.diskAccessController = diskAccessController;
+    this.keyArena = new byte[INITIAL_CAPACITY * Long.BYTES];
+    this.keyOffsets = new int[INITIAL_CAPACITY + 1];
+    this.recordRefs = new long[INITIAL_CAPACITY];
+    this.attachments = new Object[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Adds the entry, unless its index key already exists.
+   *
+   * @return true if the entry is added.
+   */
+  @Override
+  public boolean add(KeyData keyData) {
+    var key = bytesOf(keyData.indexKey());
+    int index = search(key, 0, key.length);
+    if (index >= 0) {
+      return false;
+    }
+    insertAt(-(index + 1), key, 0, key.length);
+    store(-(index + 1), keyData);
+    return true;
+  }
+
+  /**
+   * Adds the plain cell of a leaf page, i.e. a record offset followed by the index key, without
+   * creating its entry.
+   *
+   * @param cell Leaf cell.
+   * @return false if the cell isn't a plain one with a record offset, or its key already exists.
+   */
+  boolean addCell(ByteBuffer cell) {
+    var bytes = cell.array();
+    long recordRef = ByteCodec.getLong(bytes, 0);
+    if (recordRef < 0) {
+      return false;
+    }
+    int length = cell.capacity() - KeyData.INDEX_KEY_OFFSET;
+    int index = search(bytes, KeyData.INDEX_KEY_OFFSET, length);
+    if (index >= 0) {
+      return false;
+    }
+    insertAt(-(index + 1), bytes, KeyData.INDEX_KEY_OFFSET, length);
+    recordRefs[-(index + 1)] = recordRef;
+    return true;
+  }
+
+  /**
+   * Replaces the entry at the index with another one of the same index key.
+   */
+  void set(int index, KeyData keyData) {
+    checkIndex(index);
+    store(index, keyData);
+  }
+
+  private void store(int index, KeyData keyData) {
+    attachments[index] = null;
+    if (keyData.tombstone()) {
+      recordRefs[index] = TOMBSTONE;
+    } else if (keyData.hasPostingList()) {
+      recordRefs[index] = ATTACHED;
+      attachments[index] = keyData.postingList();
+    } else if (isReference(keyData.dataRecord())) {
+      recordRefs[index] = keyData.dataRecord().getPageRef().pageOffset();
+    } else {
+      recordRefs[index] = ATTACHED;
+      attachments[index] = keyData.dataRecord();
+    }
+  }
+
+  // The records, which aren't loaded from their pages yet, are restored from their offsets.
+  private static boolean isReference(DataRecord dataRecord) {
+    return dataRecord.isUnsynced() && dataRecord.getValuePointer() == null
+        && !dataRecord.getPageRef().hasNoOffset();
+  }
+
+  private void insertAt(int index, byte[] key, int from, int length) {
+    ensureCapacity(size + 1, keyOffsets[size] + length);
+    int keyStart = keyOffsets[index];
+    int arenaEnd = keyOffsets[size];
+    System.arraycopy(keyArena, keyStart, keyArena, keyStart + length, arenaEnd - keyStart);
+    System.arraycopy(key, from, keyArena, keyStart, length);
+    System.arraycopy(recordRefs, index, recordRefs, index + 1, size - index);
+    System.arraycopy(attachments, index, attachments, index + 1, size - index);
+    System.arraycopy(keyOffsets, index, keyOffsets, index + 1, size - index + 1);
+    for (int i = index + 1; i <= size + 1; i++) {
+      keyOffsets[i] += length;
+    }
+    size++;
+  }
+
+  /**
+   * Removes the entry at the index.
+   *
+   * @return The removed entry.
+   */
+  KeyData removeAt(int index) {
+    var keyData = get(index);
+    removeRange(index, index + 1);
+    return keyData;
+  }
+
+  /**
+   * Removes the entries from the index (inclusive) to the index (exclusive).
+   */
+  void removeRange(int from, int to) {
+    if (from < 0 || to > size || from > to) {
+      throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + size);
+    }
+    int count = to - from;
+    if (count == 0) {
+      return;
+    }
+    int keyStart = keyOffsets[from];
+    int length = keyOffsets[to] - keyStart;
+    System.arraycopy(keyArena, keyStart + length, keyArena, keyStart,
+        keyOffsets[size] - keyStart - length);
+    System.arraycopy(recordRefs, to, recordRefs, from, size - to);
+    System.arraycopy(attachments, to, attachments, from, size - to);
+    System.arraycopy(keyOffsets, to, keyOffsets, from, size - to + 1);
+    Arrays.fill(attachments, size - count, size, null);
+    size -= count;
+    for (int i = from; i <= size; i++) {
+      keyOffsets[i] -= length;
+    }
+  }
+
+  @Override
+  public boolean remove(Object object) {
+    if (!(object instanceof KeyData keyData)) {
+      return false;
+    }
+    int index = indexOf(keyData.indexKey().toString());
+    if (index < 0 || !get(index).equals(keyData)) {
+      return false;
+    }
+    removeRange(index, index + 1);
+    return true;
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super KeyData> filter) {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (!filter.test(get(i))) {
+        moveEntry(i, kept++);
+      }
+    }
+    boolean removed = kept < size;
+    truncate(kept);
+    return removed;
+  }
+
+  // Moves the entry at the index to an index before it, of which entry is removed. The entries in
+  // between are removed too, once the array is truncated.
+  private void moveEntry(int from, int to) {
+    if (from == to) {
+      return;
+    }
+    int length = keyOffsets[from + 1] - keyOffsets[from];
+    System.arraycopy(keyArena, keyOffsets[from], keyArena, keyOffsets[to], length);
+    keyOffsets[to + 1] = keyOffsets[to] + length;
+    recordRefs[to] = recordRefs[from];
+    attachments[to] = attachments[from];
+  }
+
+  private void truncate(int newSize) {
+    Arrays.fill(attachments, newSize, size, null);
+    size = newSize;
+  }
+
+  @Override
+  public void clear() {
+    truncate(0);
+  }
+
+  @Override
+  public boolean contains(Object object) {
+    if (!(object instanceof KeyData keyData)) {
+      return false;
+    }
+    int index = indexOf(keyData.indexKey().toString());
+    return index >= 0 && get(index).equals(keyData);
+  }
+
+  /**
+   * Returns the entry of the index key including a tombstone, or null if it doesn't exist.
+   */
+  KeyData get(String indexKey) {
+    int index = indexOf(indexKey);
+    return index >= 0 ? get(index) : null;
+  }
+
+  /**
+   * Finds the index key.
+   *
+   * @return The index of the key if it exists, otherwise (-(insertion point) - 1).
+   */
+  int indexOf(String indexKey) {
+    var key = bytesOf(indexKey);
+    return search(key, 0, key.length);
+  }
+
+  /**
+   * Returns the index of the first entry, of which index key is greater than or equal to, or
+   * greater than if not inclusive, the index key.
+   */
+  int ceilingIndex(String indexKey, boolean inclusive) {
+    int index = indexOf(indexKey);
+    if (index < 0) {
+      return -(index + 1);
+    }
+    return inclusive ? index : index + 1;
+  }
+
+  KeyData get(int index) {
+    checkIndex(index);
+    long recordRef = recordRefs[index];
+    var indexKey = indexKeyAt(index);
+    if (recordRef == TOMBSTONE) {
+      return new KeyData(indexKey, null, null, true);
+    }
+    if (recordRef != ATTACHED) {
+      return new KeyData(indexKey, new DataRecord(PageRef.of(recordRef), diskAccessController));
+    }
+    if (attachments[index] instanceof PostingList postingList) {
+      return new KeyData(indexKey, postingList.get(0), postingList);
+    }
+    return new KeyData(indexKey, (DataRecord) attachments[index]);
+  }
+
+  boolean isTombstone(int index) {
+    checkIndex(index);
+    return recordRefs[index] == TOMBSTONE;
+  }
+
+  /**
+   * Returns the number of the tombstones from the index (inclusive) to the index (exclusive).
+   */
+  int tombstonesIn(int from, int to) {
+    int tombstones = 0;
+    for (int i = from; i < to; i++) {
+      if (recordRefs[i] == TOMBSTONE) {
+        tombstones++;
+      }
+    }
+    return tombstones;
+  }
+
+  /**
+   * Returns the entries from the index (inclusive) to the index (exclusive) without the
+   * tombstones.
+   */
+  List<KeyData> entries(int from, int to) {
+    var entries = new ArrayList<KeyData>(to - from);
+    for (int i = from; i < to; i++) {
+      if (recordRefs[i] != TOMBSTONE) {
+        entries.add(get(i));
+      }
+    }
+    return entries;
+  }
+
+  KeyData first() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return get(0);
+  }
+
+  KeyData last() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return get(size - 1);
+  }
+
+  /**
+   * Returns whether the entry has no objects but its key and record offset.
+   */
+  boolean isReference(int index) {
+    checkIndex(index);
+    return recordRefs[index] >= 0;
+  }
+
+  /**
+   * Binary search over the key arena.
+   *
+   * @return the index of the key if it exists, otherwise (-(insertion point) - 1).
+   */
+  private int search(byte[] key, int from, int length) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(keyArena, keyOffsets[mid], keyOffsets[mid + 1], key, from, from + length);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Compares the UTF-8 encoded keys in the order of the UTF-16 code units of their strings. The
+   * keys first differ either at the lead bytes of a character or at the continuation bytes of the
+   * same character, and the byte order differs from the code unit order at the lead bytes only,
+   * since the supplementary characters, i.e. the surrogate pairs, sort before U+E000 to U+FFFF.
+   */
+  static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+    int mismatch = Arrays.mismatch(a, aFrom, aTo, b, bFrom, bTo);
+    if (mismatch < 0) {
+      return 0;
+    }
+    if (mismatch == aTo - aFrom || mismatch == bTo - bFrom) {
+      return (aTo - aFrom) - (bTo - bFrom);
+    }
+    return codeUnitOrder(a[aFrom + mismatch]) - codeUnitOrder(b[bFrom + mismatch]);
+  }
+
+  // Moves the lead bytes of the supplementary characters (0xF0-0xF4) below the ones of U+E000 to
+  // U+FFFF (0xEE-0xEF).
+  private static int codeUnitOrder(byte b) {
+    int value = b & 0xFF;
+    if (value >= 0xF0) {
+      return value - 0x02;
+    }
+    return value >= 0xEE ? value + 0x08 : value;
+  }
+
+  private static byte[] bytesOf(Object indexKey) {
+    return indexKey.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void ensureCapacity(int entries, int arenaSize) {
+    if (entries > recordRefs.length) {
+      int newCapacity = Math.max(entries, recordRefs.length * 2);
+      recordRefs = Arrays.copyOf(recordRefs, newCapacity);
+      attachments = Arrays.copyOf(attachments, newCapacity);
+      keyOffsets = Arrays.copyOf(keyOffsets, newCapacity + 1);
+    }
+    if (arenaSize > keyArena.length) {
+      keyArena = Arrays.copyOf(keyArena, Math.max(arenaSize, keyArena.length * 2));
+    }
+  }
+
+  String indexKeyAt(int index) {
+    checkIndex(index);
+    return new String(keyArena, keyOffsets[index], keyOffsets[index + 1] - keyOffsets[index],
+        StandardCharsets.UTF_8);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Iterator<KeyData> iterator() {
+    return new Iterator<>() {
+      private int cursor;
+      private int last = -1;
+
+      @Override
+      public boolean hasNext() {
+        return cursor < size;
+      }
+
+      @Override
+      public KeyData next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        last = cursor++;
+        return get(last);
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        removeRange(last, last + 1);
+        cursor = last;
+        last = -1;
+      }
+    };
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.ReadAhead;
+
+/**
+ * Scans the persisted leaves in the key order by following the sibling references of the leaf
+ * pages, starting from the left most leaf. The leaf pages are read through a {@link ReadAhead}, so
+ * once the scan turns out to be sequential, the next leaves are already read in the background
+ * while the current one is being consumed.
+ *
+ * @author Erhan Bagdemir
+ * @see BTreeIndex#persistLeaves()
+ */
+public class LeafScanner implements Iterator<KeyData>, Closeable {
+
+  private final DiskController diskAccessController;
+  private final ReadAhead readAhead;
+  private PageRef nextLeaf;
+  private Iterator<KeyData> entries = Collections.emptyIterator();
+
+  public LeafScanner(PageRef firstLeaf, DiskController diskAccessController) {
+    this(firstLeaf, diskAccessController, ReadAhead.DEFAULT_MAX_WINDOW);
+  }
+
+  public LeafScanner(PageRef firstLeaf, DiskController diskAccessController, int maxReadAhead) {
+    this.nextLeaf = firstLeaf;
+    this.diskAccessController = diskAccessController;
+    this.readAhead = new ReadAhead(diskAccessController, maxReadAhead);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!entries.hasNext() && !nextLeaf.hasNoOffset()) {
+      var page = readAhead.read(nextLeaf);
+      nextLeaf = page.getSiblingPageRef();
+      var leafEntries = new ArrayList<KeyData>();
+      page.forEach(cell -> leafEntries.add(KeyData.deserialize(cell, diskAccessController)));
+      entries = leafEntries.iterator();
+    }
+    return entries.hasNext();
+  }
+
+  @Override
+  public KeyData next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return entries.next();
+  }
+
+  ReadAhead getReadAhead() {
+    return readAhead;
+  }
+
+  @Override
+  public void close() {
+    readAhead.close();
+  }
+}
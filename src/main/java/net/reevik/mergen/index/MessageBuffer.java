@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * The buffer of an {@link InnerNode}, which holds the pending upserts and deletes for the sub-tree
+ * of the node, as in a B-epsilon tree. The messages are sorted by index key, and the messages of
+ * an index key are kept in their arrival order. Once the buffer is full, the messages of the child
+ * with the most pending messages are flushed down in a batch, either into the child's buffer or,
+ * if the child is a leaf, into the leaf. Since the messages move down only, a message is always
+ * newer than the messages of the same index key in the buffers below.
+ * </p>
+ * <p>
+ * A delete makes the earlier messages of its index key in the same buffer obsolete, and an upsert
+ * following an upsert of the same index key has no effect, so these are dropped on arrival. The
+ * dropped upserts are reported to the caller, which releases their data records, e.g. the
+ * payloads appended to the value log.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+final class MessageBuffer {
+
+  enum Kind {
+    /**
+     * Adds the data record, unless the index key exists.
+     */
+    UPSERT,
+
+    /**
+     * Adds the data record to the records of the index key.
+     */
+    APPEND,
+
+    /**
+     * Deletes the index key with all its records.
+     */
+    DELETE
+  }
+
+  record Message(Kind kind, Object indexKey, DataRecord dataRecord) {
+
+    static Message delete(String indexKey) {
+      return new Message(Kind.DELETE, indexKey, null);
+    }
+
+    String key() {
+      return indexKey.toString();
+    }
+
+    /**
+     * Applies the message to the records of the index key found below the buffer.
+     */
+    List<DataRecord> applyTo(List<DataRecord> dataRecords) {
+      return switch (kind) {
+        case UPSERT -> dataRecords.isEmpty() ? List.of(dataRecord) : dataRecords;
+        case APPEND -> {
+          var appended = new ArrayList<DataRecord>(dataRecords.size() + 1);
+          appended.addAll(dataRecords);
+          appended.add(dataRecord);
+          yield appended;
+        }
+        case DELETE -> List.of();
+      };
+    }
+
+    /**
+     * Applies the message to the leaf, which is responsible for the index key.
+     *
+     * @param leaf Leaf of the index key.
+     * @param minFillPercent Fill threshold of the nodes, below which a delete rebalances the leaf.
+     * @return False if the message is an upsert of an existing index key, which has no effect.
+     */
+    boolean applyTo(DataNode leaf, int minFillPercent) {
+      switch (kind) {
+        case UPSERT -> {
+          if (leaf.entryOf(key()) != null) {
+            return false;
+          }
+          leaf.add(new KeyData(indexKey, dataRecord));
+        }
+        case APPEND -> leaf.append(indexKey, dataRecord);
+        case DELETE -> leaf.delete(key(), minFillPercent);
+      }
+      return true;
+    }
+  }
+
+  private final TreeMap<String, List<Message>> messages = new TreeMap<>();
+  private int size;
+
+  /**
+   * Adds the message, which is newer than the messages in the buffer.
+   *
+   * @return False if the message is an upsert, which is dropped, since it has no effect.
+   */
+  boolean add(Message message) {
+    var keyMessages = messages.computeIfAbsent(message.key(), ignored -> new ArrayList<>(1));
+    if (message.kind() == Kind.DELETE) {
+      size -= keyMessages.size();
+      keyMessages.clear();
+    } else if (message.kind() == Kind.UPSERT && !keyMessages.isEmpty()
+        && keyMessages.getLast().kind() != Kind.DELETE) {
+      return false;
+    }
+    keyMessages.add(message);
+    size++;
+    return true;
+  }
+
+  /**
+   * Adds the messages, which are newer than the messages in this buffer.
+   *
+   * @return Upserts dropped, since they have no effect.
+   */
+  List<Message> addAll(List<Message> newer) {
+    var dropped = new ArrayList<Message>(0);
+    for (var message : newer) {
+      if (!add(message)) {
+        dropped.add(message);
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * Applies the buffered messages of the index key to the records found below the buffer.
+   */
+  List<DataRecord> resolve(String indexKey, List<DataRecord> dataRecords) {
+    var keyMessages = messages.get(indexKey);
+    if (keyMessages != null) {
+      for (var message : keyMessages) {
+        dataRecords = message.applyTo(dataRecords);
+      }
+    }
+    return dataRecords;
+  }
+
+  /**
+   * Removes the messages in the key range.
+   *
+   * @param from Lower bound of the range (inclusive), or null for the first key.
+   * @param to Upper bound of the range (exclusive), or null for the last key.
+   * @return Removed messages sorted by index key.
+   */
+  List<Message> removeRange(String from, String to) {
+    NavigableMap<String, List<Message>> range = messages;
+    if (from != null) {
+      range = range.tailMap(from, true);
+    }
+    if (to != null) {
+      range = range.headMap(to, false);
+    }
+    var removed = new ArrayList<Message>();
+    range.values().forEach(removed::addAll);
+    size -= removed.size();
+    range.clear();
+    return removed;
+  }
+
+  /**
+   * Moves the messages of the index keys before the separator into a new buffer, e.g. for the left
+   * node of a split.
+   */
+  MessageBuffer splitBefore(String separator) {
+    var left = new MessageBuffer();
+    left.addAll(removeRange(null, separator));
+    return left;
+  }
+
+  Iterable<String> keys() {
+    return messages.keySet();
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+}
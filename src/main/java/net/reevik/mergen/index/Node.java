@@ -17,10 +17,13 @@ package net.reevik.mergen.index;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiFunction;
 import net.reevik.mergen.io.DiskController;
 import net.reevik.mergen.io.PageRef;
 import net.reevik.mergen.io.SerializableObject;
+import net.reevik.mergen.jfr.NodeSplitEvent;
+import net.reevik.mergen.metrics.IndexMetrics;
 
 public abstract class Node extends SerializableObject {
 
@@ -62,6 +65,11 @@ public abstract class Node extends SerializableObject {
 
   abstract void doUpsert(DataEntity entity);
 
+  /**
+   * Adds the entity to the index key's data records, even if the index key already exists.
+   */
+  abstract void doAppend(DataEntity entity);
+
   public List<DataRecord> query(String queryString,
       BiFunction<List<KeyData>, DataNode, List<DataRecord>> operation) {
     return doQuery(queryString, operation);
@@ -70,12 +78,68 @@ public abstract class Node extends SerializableObject {
   abstract List<DataRecord> doQuery(String queryString,
       BiFunction<List<KeyData>, DataNode, List<DataRecord>> operation);
 
+  /**
+   * Queries the sorted index keys in the range [from, to) in a single descent. The records found
+   * for every key are put into the results.
+   */
+  abstract void doQueryAll(List<String> indexKeys, int from, int to,
+      Map<String, List<DataRecord>> results);
+
+  /**
+   * Returns the left most leaf of the sub-tree.
+   */
+  abstract DataNode firstLeaf();
+
+  /**
+   * Returns the right most leaf of the sub-tree.
+   */
+  abstract DataNode lastLeaf();
+
+  /**
+   * Returns the leaf of the sub-tree, which is responsible for the index key.
+   */
+  abstract DataNode leafFor(String indexKey);
+
   public int getSize() {
     return doGetSize();
   }
 
   abstract int doGetSize();
 
+  /**
+   * Returns the number of the index keys in the sub-tree.
+   */
+  abstract long getSubtreeSize();
+
+  /**
+   * Returns the number of the index keys in the sub-tree, which are smaller than the index key.
+   */
+  abstract long doRank(String indexKey);
+
+  /**
+   * Returns the entry at the position in the key order of the sub-tree.
+   */
+  abstract KeyData doSelect(long position);
+
+  /**
+   * Removes the index keys in the range [from, to) from the sub-tree, of which the range is
+   * [lo, hi). A null bound is unbounded.
+   *
+   * @param removed Collects the data records of the removed index keys, or null if they aren't
+   *     needed. The sub-trees dropped as a whole are walked to collect their records.
+   * @return Number of the index keys removed.
+   */
+  abstract long deleteRange(String from, String to, String lo, String hi,
+      List<DataRecord> removed);
+
+  // Adds the delta to the sub-tree sizes of the ascendants, once keys are added to or removed from
+  // a leaf.
+  void propagateSubtreeSize(long delta) {
+    for (var ascendant = getParent(); ascendant != null; ascendant = ascendant.getParent()) {
+      ascendant.addToSubtreeSize(delta);
+    }
+  }
+
   abstract Type getNodeType();
 
   public InnerNode getParent() {
@@ -106,6 +170,25 @@ public abstract class Node extends SerializableObject {
     return nodeObservers;
   }
 
+  /**
+   * @return {@link IndexMetrics} of the index file, which the node belongs to.
+   */
+  IndexMetrics metrics() {
+    var diskAccessController = getDiskAccessController();
+    return diskAccessController != null ? diskAccessController.getMetrics()
+        : IndexMetrics.DETACHED;
+  }
+
+  void commitSplitEvent(NodeSplitEvent event, Object separator) {
+    if (event.shouldCommit()) {
+      event.nodeType = getNodeType().name();
+      event.pageOffset = getPageRef().pageOffset();
+      event.parentPageOffset = getParentPageOffset().pageOffset();
+      event.separator = separator.toString();
+      event.commit();
+    }
+  }
+
   public PageRef getParentPageOffset() {
     if (hasParent()) {
       return getParent().getPageRef();
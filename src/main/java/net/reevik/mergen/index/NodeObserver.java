@@ -15,7 +15,28 @@
  */
 package net.reevik.mergen.index;
 
+import java.util.List;
+import net.reevik.mergen.index.MessageBuffer.Message;
+
 public interface NodeObserver {
 
   void onNewRoot(Node root);
+
+  /**
+   * A callback method which is called, whenever buffered messages are left without a buffer, i.e.
+   * the root, which holds them, collapses into a leaf. The messages are to be applied to the tree.
+   *
+   * @param messages Messages sorted by index key.
+   */
+  default void onPendingMessages(List<Message> messages) {
+  }
+
+  /**
+   * A callback method which is called, whenever buffered upserts are dropped, since their index
+   * keys are upserted by older messages, i.e. the upserts have no effect.
+   *
+   * @param messages Dropped upserts.
+   */
+  default void onDroppedMessages(List<Message> messages) {
+  }
 }
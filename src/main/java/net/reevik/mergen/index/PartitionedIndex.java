@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import net.reevik.mergen.io.DiskController;
+
+/**
+ * <p>
+ * An index, of which keys are hash-partitioned across independent {@link BTreeIndex} shards. Every
+ * shard has its own index file and is owned by a single thread, i.e. all operations of a shard run
+ * on the shard's executor one after another, so the shards never contend with each other. By
+ * default, there is one shard per core.
+ * </p>
+ * <p>
+ * The shards are regular {@link BTreeIndex} instances, so each shard keeps its read-write lock and
+ * its executor for the background work. The lock is not contended, since the shard's thread is its
+ * only caller: the shards don't enable the deferred deletes or the value log, of which the purges
+ * and the collections are the only work a {@link BTreeIndex} runs on its executor in the
+ * background. An uncontended lock costs a compare-and-set, which is small next to the work of an
+ * operation, so the shards have no separate lock-free mode.
+ * </p>
+ * <p>
+ * The point operations are routed to the shard of the index key. The multi-key queries are split
+ * by shard and run on the shards in parallel, and the scans merge the ordered entries of all
+ * shards.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public class PartitionedIndex implements Closeable {
+
+  private static final int SCAN_BATCH_SIZE = 256;
+
+  private final BTreeIndex[] shards;
+  private final ExecutorService[] executors;
+
+  public PartitionedIndex(String fileName) {
+    this(fileName, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates the shards. The index file of each shard is named after the file name with the
+   * shard's number as suffix, e.g. index.000, index.001.
+   *
+   * @param fileName Base name of the shards' index files.
+   * @param shardCount Number of the shards.
+   */
+  public PartitionedIndex(String fileName, int shardCount) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("At least one shard is required.");
+    }
+    this.shards = new BTreeIndex[shardCount];
+    this.executors = new ExecutorService[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new BTreeIndex(new DiskController(String.format("%s.%03d", fileName, i)));
+      executors[i] = Executors.newSingleThreadExecutor(
+          Thread.ofPlatform().daemon().name("mergen-shard-" + i).factory());
+    }
+  }
+
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  int shardOf(Object indexKey) {
+    int hash = indexKey.toString().hashCode();
+    return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+  }
+
+  private <T> CompletableFuture<T> onShard(int shard, Supplier<T> operation) {
+    return CompletableFuture.supplyAsync(operation, executors[shard]);
+  }
+
+  public CompletableFuture<Void> upsertAsync(DataEntity dataEntity) {
+    int shard = shardOf(dataEntity.indexKey());
+    return onShard(shard, () -> {
+      shards[shard].upsert(dataEntity);
+      return null;
+    });
+  }
+
+  public void upsert(DataEntity dataEntity) {
+    upsertAsync(dataEntity).join();
+  }
+
+  public CompletableFuture<List<DataRecord>> queryAsync(String indexKey) {
+    int shard = shardOf(indexKey);
+    return onShard(shard, () -> shards[shard].query(indexKey));
+  }
+
+  public List<DataRecord> query(String indexKey) {
+    return queryAsync(indexKey).join();
+  }
+
+  public CompletableFuture<List<DataRecord>> deleteAsync(String indexKey) {
+    int shard = shardOf(indexKey);
+    return onShard(shard, () -> shards[shard].delete(indexKey));
+  }
+
+  public List<DataRecord> delete(String indexKey) {
+    return deleteAsync(indexKey).join();
+  }
+
+  /**
+   * Deletes the key range from all shards in parallel, since the keys of a range are spread over
+   * all shards.
+   *
+   * @param from Lower bound of the range (inclusive), or null to delete from the first key.
+   * @param to Upper bound of the range (exclusive), or null to delete up to the last key.
+   * @return Number of the index keys deleted.
+   * @see BTreeIndex#deleteRange(String, String)
+   */
+  public long deleteRange(String from, String to) {
+    var deletes = new ArrayList<CompletableFuture<Long>>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      var shard = shards[i];
+      deletes.add(onShard(i, () -> shard.deleteRange(from, to)));
+    }
+    return deletes.stream().mapToLong(CompletableFuture::join).sum();
+  }
+
+  /**
+   * Query multiple index keys. The keys are split by shard, and each shard queries its keys with
+   * {@link BTreeIndex#queryAll(Collection)} in parallel to the others.
+   *
+   * @param indexKeys Index keys.
+   * @return {@link DataRecord} instances found for each index key, sorted by the index keys.
+   */
+  public Map<String, List<DataRecord>> queryAll(Collection<?> indexKeys) {
+    var keysByShard = new ArrayList<List<Object>>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      keysByShard.add(new ArrayList<>());
+    }
+    indexKeys.forEach(indexKey -> keysByShard.get(shardOf(indexKey)).add(indexKey));
+    var queries = new ArrayList<CompletableFuture<Map<String, List<DataRecord>>>>();
+    for (int i = 0; i < shards.length; i++) {
+      var shardKeys = keysByShard.get(i);
+      if (!shardKeys.isEmpty()) {
+        var shard = shards[i];
+        queries.add(onShard(i, () -> shard.queryAll(shardKeys)));
+      }
+    }
+    var results = new TreeMap<String, List<DataRecord>>();
+    queries.forEach(query -> results.putAll(query.join()));
+    return results;
+  }
+
+  /**
+   * Scans the key range of all shards in the key order.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to scan up to the last key.
+   * @return Iterator over the entries of all shards in the key order.
+   */
+  public Iterator<KeyData> scan(String from, String to) {
+    var shardScans = new ArrayList<ShardScan>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      shardScans.add(new ShardScan(i, shards[i].scan(from, to)));
+    }
+    return new MergingIterator(shardScans);
+  }
+
+  public Iterator<KeyData> scan() {
+    return scan(null, null);
+  }
+
+  /**
+   * Scans the index keys starting with the prefix in the key order. The keys of a prefix are
+   * spread over all shards, so every shard scans the prefix's key range.
+   *
+   * @param prefix Prefix of the index keys.
+   * @return Iterator over the entries of all shards, of which index keys start with the prefix.
+   * @see BTreeIndex#queryPrefix(String)
+   */
+  public Iterator<KeyData> queryPrefix(String prefix) {
+    return scan(prefix, BTreeIndex.prefixUpperBound(prefix));
+  }
+
+  /**
+   * Stops the shards' executors after the submitted operations are completed, and closes the
+   * shards.
+   */
+  @Override
+  public void close() throws IOException {
+    for (var executor : executors) {
+      executor.shutdown();
+    }
+    try {
+      for (var executor : executors) {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (var shard : shards) {
+      shard.close();
+    }
+  }
+
+  // The cursor of a shard is only advanced on the shard's own thread, in batches.
+  private final class ShardScan {
+
+    private final int shard;
+    private final ScanCursor cursor;
+    private Iterator<KeyData> batch = Collections.emptyIterator();
+    private boolean exhausted;
+
+    private ShardScan(int shard, ScanCursor cursor) {
+      this.shard = shard;
+      this.cursor = cursor;
+    }
+
+    private KeyData next() {
+      if (!batch.hasNext() && !exhausted) {
+        var entries = onShard(shard, () -> {
+          var list = new ArrayList<KeyData>(SCAN_BATCH_SIZE);
+          while (list.size() < SCAN_BATCH_SIZE && cursor.hasNext()) {
+            list.add(cursor.next());
+          }
+          return list;
+        }).join();
+        exhausted = entries.size() < SCAN_BATCH_SIZE;
+        batch = entries.iterator();
+      }
+      return batch.hasNext() ? batch.next() : null;
+    }
+  }
+
+  private record Head(KeyData keyData, ShardScan shardScan) {
+
+  }
+
+  private static final class MergingIterator implements Iterator<KeyData> {
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>(
+        Comparator.comparing(head -> head.keyData().indexKey().toString()));
+
+    private MergingIterator(List<ShardScan> shardScans) {
+      shardScans.forEach(this::advance);
+    }
+
+    private void advance(ShardScan shardScan) {
+      var keyData = shardScan.next();
+      if (keyData != null) {
+        heads.add(new Head(keyData, shardScan));
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public KeyData next() {
+      var head = heads.poll();
+      if (head == null) {
+        throw new NoSuchElementException();
+      }
+      advance(head.shardScan());
+      return head.keyData();
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.Page;
+import net.reevik.mergen.io.Page.PageType;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.SerializableObject;
+
+/**
+ * <p>
+ * The data records of an index key in a non-unique index. In the leaf cells, the posting list is
+ * stored as the sorted page offsets of its records, each encoded as the delta to the previous one
+ * in the variable-length format, i.e. seven bits per byte, where the high bit marks that more bytes
+ * follow. The first offset is stored incremented by one, so that the records, which aren't
+ * persisted yet (offset -1), are encoded as well:
+ * </p>
+ * <pre>
+ *   offsets    [-1, 16384, 16384, 49152]
+ *   encoded    [count=4][0][16385][0][32768]
+ * </pre>
+ * <p>
+ * Posting lists, of which encoding is larger than {@link #INLINE_LIMIT}, are spilled into the
+ * dedicated pages, and the leaf cell keeps the reference of the pages only.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public class PostingList extends SerializableObject implements Iterable<DataRecord> {
+
+  /**
+   * The maximum encoded size of the posting lists, which are stored inline in the leaf cells.
+   */
+  public static final int INLINE_LIMIT = 1024;
+  private static final int CHUNK_RECORDS = 1024;
+  private static final int INITIAL_CAPACITY = 4;
+
+  private DataRecord[] records = new DataRecord[INITIAL_CAPACITY];
+  private int size;
+  private PageRef spilledPageRef = PageRef.empty();
+
+  public PostingList(DiskController diskAccessController) {
+    super(PageRef.empty(), diskAccessController);
+    markDirty();
+  }
+
+  private PostingList(PageRef pageRef, DiskController diskAccessController) {
+    super(pageRef, diskAccessController);
+    markSynced();
+  }
+
+  public void add(DataRecord dataRecord) {
+    if (size == records.length) {
+      records = Arrays.copyOf(records, size * 2);
+    }
+    records[size++] = dataRecord;
+    markDirty();
+  }
+
+  public DataRecord get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return records[index];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public List<DataRecord> records() {
+    return List.of(Arrays.copyOf(records, size));
+  }
+
+  /**
+   * Returns the records from the position on, up to the count.
+   *
+   * @param from Position of the first record.
+   * @param count Maximum number of the records.
+   * @return The records, or an empty list if the position is beyond the last record.
+   */
+  public List<DataRecord> records(int from, int count) {
+    if (from >= size) {
+      return List.of();
+    }
+    return List.of(Arrays.copyOfRange(records, from, (int) Math.min(size, (long) from + count)));
+  }
+
+  public long[] sortedRecordRefs() {
+    var recordRefs = new long[size];
+    for (int i = 0; i < size; i++) {
+      recordRefs[i] = records[i].getPageRef().pageOffset();
+    }
+    Arrays.sort(recordRefs);
+    return recordRefs;
+  }
+
+  public byte[] encode() {
+    var recordRefs = sortedRecordRefs();
+    return encode(recordRefs, 0, recordRefs.length);
+  }
+
+  static byte[] encode(long[] recordRefs, int from, int to) {
+    var out = new ByteArrayOutputStream((to - from) * 3 + 5);
+    writeVarLong(out, to - from);
+    long previous = -1L;
+    for (int i = from; i < to; i++) {
+      writeVarLong(out, recordRefs[i] - previous);
+      previous = recordRefs[i];
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes the posting list encoded with {@link #encode()}.
+   *
+   * @param buffer Buffer, which contains the encoded posting list.
+   * @param offset Offset of the encoded posting list in the buffer.
+   * @param controller {@link DiskController} to resolve the data records.
+   * @return Decoded {@link PostingList}.
+   */
+  public static PostingList decode(byte[] buffer, int offset, DiskController controller) {
+    var postingList = new PostingList(PageRef.empty(), controller);
+    postingList.decodeFrom(ByteBuffer.wrap(buffer, offset, buffer.length - offset));
+    postingList.markSynced();
+    return postingList;
+  }
+
+  private void decodeFrom(ByteBuffer buffer) {
+    long count = readVarLong(buffer);
+    long recordRef = -1L;
+    for (long i = 0; i < count; i++) {
+      recordRef += readVarLong(buffer);
+      add(new DataRecord(PageRef.of(recordRef), getDiskAccessController()));
+    }
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Spills the posting list into the dedicated pages. Every cell of the pages is an independently
+   * encoded chunk of the sorted record offsets.
+   *
+   * @return the page reference, which is to be kept in the leaf cell.
+   */
+  @Override
+  public PageRef persist() {
+    var recordRefs = sortedRecordRefs();
+    var page = new Page(this);
+    for (int from = 0; from < recordRefs.length; from += CHUNK_RECORDS) {
+      var chunk = encode(recordRefs, from, Math.min(recordRefs.length, from + CHUNK_RECORDS));
+      if (!page.hasSpace(chunk.length)) {
+        var pageRef = getDiskAccessController().append(page);
+        page = new Page(this);
+        page.setNextSlottedPage(pageRef);
+      }
+      page.appendCell(ByteBuffer.wrap(chunk));
+    }
+    var pageRef = getDiskAccessController().append(page);
+    markSynced();
+    return pageRef;
+  }
+
+  /**
+   * Returns the reference of the spilled pages. The posting list is persisted again only if it is
+   * modified after it has been spilled.
+   */
+  PageRef spill() {
+    if (isDirty() || spilledPageRef.hasNoOffset()) {
+      spilledPageRef = persist();
+    }
+    return spilledPageRef;
+  }
+
+  /**
+   * Reads the posting list spilled with {@link #persist()}.
+   *
+   * @param pageRef Page reference returned by {@link #persist()}.
+   * @param controller {@link DiskController} to read the pages.
+   * @return {@link PostingList} read.
+   */
+  public static PostingList read(PageRef pageRef, DiskController controller) {
+    var postingList = new PostingList(pageRef, controller);
+    for (var nextPage = pageRef; !nextPage.hasNoOffset(); ) {
+      var page = controller.read(nextPage);
+      if (page.getPageType() != PageType.POSTING_LIST) {
+        throw new IllegalStateException(
+            "Page at " + nextPage.pageOffset() + " isn't a posting list page.");
+      }
+      page.forEach(postingList::decodeFrom);
+      nextPage = page.getNextSlottedPage();
+    }
+    postingList.spilledPageRef = pageRef;
+    postingList.markSynced();
+    return postingList;
+  }
+
+  @Override
+  public PageType getPageType() {
+    return PageType.POSTING_LIST;
+  }
+
+  @Override
+  public Iterator<DataRecord> iterator() {
+    return records().iterator();
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Flow.Publisher} of the data records, which honours the demand of its subscribers. Every
+ * subscriber gets its own stream of the records, which is advanced on the executor only as far as
+ * the subscriber has requested, so the records are never buffered for a slow subscriber. The
+ * stream is closed, once the subscription completes, fails or is cancelled.
+ *
+ * @author Erhan Bagdemir
+ */
+final class RecordPublisher implements Flow.Publisher<DataRecord> {
+
+  private final Supplier<? extends Stream<DataRecord>> records;
+  private final Executor executor;
+
+  RecordPublisher(Supplier<? extends Stream<DataRecord>> records, Executor executor) {
+    this.records = records;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super DataRecord> subscriber) {
+    Objects.requireNonNull(subscriber);
+    subscriber.onSubscribe(new RecordSubscription(subscriber));
+  }
+
+  private final class RecordSubscription implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super DataRecord> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+
+    /**
+     * The number of the pending emission requests. Only the caller, which raises it from zero,
+     * emits, so the subscriber is never called concurrently.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    private Stream<DataRecord> stream;
+    private Iterator<DataRecord> iterator;
+    private volatile Throwable invalidRequest;
+    private volatile boolean done;
+
+    private RecordSubscription(Flow.Subscriber<? super DataRecord> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("The demand must be positive: " + n);
+      } else {
+        demand.accumulateAndGet(n, (current, added) -> {
+          long sum = current + added;
+          return sum < 0 ? Long.MAX_VALUE : sum;
+        });
+      }
+      schedule();
+    }
+
+    // The stream is closed by the emission, which isn't called concurrently with itself.
+    @Override
+    public void cancel() {
+      done = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (pending.getAndIncrement() == 0) {
+        executor.execute(this::emit);
+      }
+    }
+
+    private void emit() {
+      int missed = 1;
+      do {
+        try {
+          if (invalidRequest != null) {
+            fail(invalidRequest);
+          }
+          if (stream == null && !done) {
+            stream = records.get();
+            iterator = stream.iterator();
+          }
+          long requested = done ? 0 : demand.get();
+          long emitted = 0;
+          while (emitted < requested && !done && iterator.hasNext()) {
+            subscriber.onNext(iterator.next());
+            emitted++;
+          }
+          if (!done && !iterator.hasNext()) {
+            done = true;
+            closeStream();
+            subscriber.onComplete();
+          }
+          if (requested != Long.MAX_VALUE) {
+            demand.addAndGet(-emitted);
+          }
+        } catch (RuntimeException e) {
+          fail(e);
+        }
+        if (done) {
+          closeStream();
+        }
+        missed = pending.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void closeStream() {
+      if (stream != null) {
+        var closed = stream;
+        stream = null;
+        iterator = null;
+        closed.close();
+      }
+    }
+
+    private void fail(Throwable throwable) {
+      if (!done) {
+        done = true;
+        closeStream();
+        subscriber.onError(throwable);
+      }
+    }
+  }
+}
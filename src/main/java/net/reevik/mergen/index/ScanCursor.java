@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An ordered cursor over the entries of the index in a key range. The cursor fetches the entries
+ * leaf by leaf. Every fetch continues after the last key returned, so the cursor remains valid
+ * while the index is being modified, and it observes the changes made after the last key. Closing
+ * the cursor stops it, i.e. no further leaves are fetched.
+ *
+ * @author Erhan Bagdemir
+ * @see BTreeIndex#scan(String, String)
+ */
+public class ScanCursor implements Iterator<KeyData>, Closeable {
+
+  private final BTreeIndex index;
+  private final String to;
+  private String lastKey;
+  private boolean inclusive = true;
+  private boolean exhausted;
+  private Iterator<KeyData> entries = Collections.emptyIterator();
+  private KeyData next;
+
+  /**
+   * @param index Index to be scanned.
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to scan up to the last key.
+   */
+  ScanCursor(BTreeIndex index, String from, String to) {
+    this.index = index;
+    this.lastKey = from;
+    this.to = to;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next != null) {
+      return true;
+    }
+    if (exhausted) {
+      return false;
+    }
+    if (!entries.hasNext()) {
+      entries = index.nextLeafEntries(lastKey, inclusive).iterator();
+      inclusive = false;
+    }
+    if (!entries.hasNext()) {
+      exhausted = true;
+      return false;
+    }
+    var keyData = entries.next();
+    var indexKey = keyData.indexKey().toString();
+    if (to != null && indexKey.compareTo(to) >= 0) {
+      exhausted = true;
+      return false;
+    }
+    lastKey = indexKey;
+    next = keyData;
+    return true;
+  }
+
+  @Override
+  public KeyData next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    var keyData = next;
+    next = null;
+    return keyData;
+  }
+
+  @Override
+  public void close() {
+    exhausted = true;
+    next = null;
+    entries = Collections.emptyIterator();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes primitives in big-endian order directly at an offset of a caller-provided
+ * byte array or {@link ByteBuffer}, which is the byte order of the pages. The methods neither
+ * allocate nor move the position of the buffers.
+ *
+ * @author Erhan Bagdemir
+ */
+public final class ByteCodec {
+
+  private static final VarHandle LONG_ARRAY =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT_ARRAY =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle SHORT_ARRAY =
+      MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle LONG_BUFFER =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT_BUFFER =
+      MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle SHORT_BUFFER =
+      MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+
+  private ByteCodec() {
+  }
+
+  public static void putLong(byte[] buffer, int offset, long value) {
+    LONG_ARRAY.set(buffer, offset, value);
+  }
+
+  public static long getLong(byte[] buffer, int offset) {
+    return (long) LONG_ARRAY.get(buffer, offset);
+  }
+
+  public static void putInt(byte[] buffer, int offset, int value) {
+    INT_ARRAY.set(buffer, offset, value);
+  }
+
+  public static int getInt(byte[] buffer, int offset) {
+    return (int) INT_ARRAY.get(buffer, offset);
+  }
+
+  public static void putShort(byte[] buffer, int offset, short value) {
+    SHORT_ARRAY.set(buffer, offset, value);
+  }
+
+  public static short getShort(byte[] buffer, int offset) {
+    return (short) SHORT_ARRAY.get(buffer, offset);
+  }
+
+  public static void putLong(ByteBuffer buffer, int offset, long value) {
+    LONG_BUFFER.set(buffer, offset, value);
+  }
+
+  public static long getLong(ByteBuffer buffer, int offset) {
+    return (long) LONG_BUFFER.get(buffer, offset);
+  }
+
+  public static void putInt(ByteBuffer buffer, int offset, int value) {
+    INT_BUFFER.set(buffer, offset, value);
+  }
+
+  public static int getInt(ByteBuffer buffer, int offset) {
+    return (int) INT_BUFFER.get(buffer, offset);
+  }
+
+  public static void putShort(ByteBuffer buffer, int offset, short value) {
+    SHORT_BUFFER.set(buffer, offset, value);
+  }
+
+  public static short getShort(ByteBuffer buffer, int offset) {
+    return (short) SHORT_BUFFER.get(buffer, offset);
+  }
+}
@@ -19,6 +19,15 @@ import static net.reevik.mergen.io.DiskFile.PAGE_SIZE;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import net.reevik.mergen.jfr.PageReadEvent;
+import net.reevik.mergen.jfr.PageWriteEvent;
+import net.reevik.mergen.metrics.IndexMetrics;
 import net.reevik.mikron.annotation.Configurable;
 import net.reevik.mikron.annotation.Initialize;
 import net.reevik.mikron.annotation.Managed;
@@ -26,18 +35,125 @@ import net.reevik.mikron.annotation.Managed;
 @Managed(name = "diskAccessController")
 public class DiskController implements Closeable {
 
+  /**
+   * The maximum number of adjacent pages, which are fetched with a single read.
+   */
+  static final int MAX_COALESCED_PAGES = 16;
+
   @Configurable(name = "fileName")
   private String fileName;
 
   private FileIO file;
 
+  /**
+   * Metrics of the file. The controller registers and unregisters them, unless they are shared
+   * with the controller by their owner.
+   */
+  private IndexMetrics metrics;
+  private boolean ownsMetrics;
+
+  public DiskController() {
+  }
+
+  public DiskController(String fileName) {
+    this.fileName = fileName;
+    init();
+  }
+
+  /**
+   * @param fileName Name of the file.
+   * @param metrics {@link IndexMetrics} of the owner, which the I/O of the file is recorded to.
+   */
+  public DiskController(String fileName, IndexMetrics metrics) {
+    this.fileName = fileName;
+    this.metrics = metrics;
+    init();
+  }
+
   @Initialize
   public void init() {
-    this.file = new DiskFile(fileName);
+    if (metrics == null) {
+      this.metrics = new IndexMetrics(fileName).register();
+      this.ownsMetrics = true;
+    }
+    this.file = new DiskFile(fileName, metrics);
+  }
+
+  public IndexMetrics getMetrics() {
+    return metrics;
   }
 
   public Page read(PageRef pageRef) {
+    var event = new PageReadEvent();
+    event.begin();
     var bytes = file.readBytes(pageRef.pageOffset(), PAGE_SIZE);
+    return toPage(event, bytes, pageRef);
+  }
+
+  /**
+   * Reads multiple pages. The page references are deduplicated and sorted by their offsets, and the
+   * pages, which are adjacent in the file, are fetched with a single read.
+   *
+   * @param pageRefs Page references to be read.
+   * @return Pages by their references.
+   */
+  public Map<PageRef, Page> readAll(Collection<PageRef> pageRefs) {
+    long[] offsets = pageRefs.stream().mapToLong(PageRef::pageOffset).distinct().sorted()
+        .toArray();
+    var pages = new HashMap<PageRef, Page>();
+    int runStart = 0;
+    for (int i = 1; i <= offsets.length; i++) {
+      if (i == offsets.length || offsets[i] != offsets[i - 1] + PAGE_SIZE
+          || i - runStart == MAX_COALESCED_PAGES) {
+        readRun(offsets, runStart, i, pages);
+        runStart = i;
+      }
+    }
+    return pages;
+  }
+
+  private void readRun(long[] offsets, int from, int to, Map<PageRef, Page> pages) {
+    var event = new PageReadEvent();
+    event.begin();
+    var bytes = file.readBytes(offsets[from], (to - from) * PAGE_SIZE);
+    for (int i = from; i < to; i++) {
+      int start = (i - from) * PAGE_SIZE;
+      if (start >= bytes.length) {
+        break;
+      }
+      var pageRef = PageRef.of(offsets[i]);
+      var pageBytes = Arrays.copyOfRange(bytes, start, Math.min(bytes.length, start + PAGE_SIZE));
+      pages.put(pageRef, new Page(pageBytes, pageRef));
+      metrics.pageRead();
+    }
+    if (event.shouldCommit()) {
+      event.pageOffset = offsets[from];
+      event.bytes = bytes.length;
+      event.commit();
+    }
+  }
+
+  /**
+   * Reads the page without blocking the caller. Many reads can be outstanding at the same time,
+   * which lets the file system queue them, e.g. while fetching the children of an inner node.
+   *
+   * @param pageRef Page reference to be read.
+   * @return {@link CompletableFuture} which completes with the {@link Page}.
+   */
+  public CompletableFuture<Page> readAsync(PageRef pageRef) {
+    var event = new PageReadEvent();
+    event.begin();
+    return file.readBytesAsync(pageRef.pageOffset(), PAGE_SIZE)
+        .thenApply(bytes -> toPage(event, bytes, pageRef));
+  }
+
+  private Page toPage(PageReadEvent event, byte[] bytes, PageRef pageRef) {
+    metrics.pageRead();
+    if (event.shouldCommit()) {
+      event.pageOffset = pageRef.pageOffset();
+      event.bytes = bytes.length;
+      event.commit();
+    }
     return new Page(bytes, pageRef);
   }
 
@@ -51,12 +167,82 @@ public class DiskController implements Closeable {
     if (page.getPageRef().hasNoOffset()) {
       throw new IllegalArgumentException("Cannot persist a page without a reference.");
     }
+    var event = new PageWriteEvent();
+    event.begin();
     long offset = file.writeAt(page.getPageBuffer(), page.getPageRef().pageOffset());
+    metrics.pageWritten();
+    commit(event, page.getPageRef(), false);
     return PageRef.of(offset);
   }
 
+  /**
+   * Persists an already read page back into the disk without blocking the caller.
+   *
+   * @param page Page, read from the disk.
+   * @return {@link CompletableFuture} which completes with the {@link PageRef} once the page is
+   * forced to the disk.
+   */
+  public CompletableFuture<PageRef> persistAsync(Page page) {
+    if (page.getPageRef().hasNoOffset()) {
+      throw new IllegalArgumentException("Cannot persist a page without a reference.");
+    }
+    var event = new PageWriteEvent();
+    event.begin();
+    return file.writeAtAsync(page.getPageBuffer(), page.getPageRef().pageOffset())
+        .thenApply(offset -> written(event, PageRef.of(offset), false));
+  }
+
+  public CompletableFuture<PageRef> appendAsync(Page page) {
+    var event = new PageWriteEvent();
+    event.begin();
+    return file.writeAtAsync(page.getPageBuffer())
+        .thenApply(offset -> written(event, PageRef.of(offset), true));
+  }
+
+  private PageRef written(PageWriteEvent event, PageRef pageRef, boolean append) {
+    metrics.pageWritten();
+    commit(event, pageRef, append);
+    return pageRef;
+  }
+
   public PageRef append(Page page) {
-    return PageRef.of(file.writeAt(page.getPageBuffer()));
+    var event = new PageWriteEvent();
+    event.begin();
+    var pageRef = PageRef.of(file.writeAt(page.getPageBuffer()));
+    metrics.pageWritten();
+    commit(event, pageRef, true);
+    return pageRef;
+  }
+
+  /**
+   * Appends the pages with a single write, so they are forced to the disk once, and they are
+   * adjacent in the file in the given order.
+   *
+   * @param pages Pages to be appended.
+   * @return {@link PageRef} of the first page. The next pages follow at the page size distance.
+   */
+  public PageRef appendAll(List<Page> pages) {
+    if (pages.isEmpty()) {
+      throw new IllegalArgumentException("No pages to append.");
+    }
+    var event = new PageWriteEvent();
+    event.begin();
+    var buffer = new byte[pages.size() * PAGE_SIZE];
+    for (int i = 0; i < pages.size(); i++) {
+      System.arraycopy(pages.get(i).getPageBuffer(), 0, buffer, i * PAGE_SIZE, PAGE_SIZE);
+    }
+    var pageRef = PageRef.of(file.writeAt(buffer));
+    pages.forEach(page -> metrics.pageWritten());
+    commit(event, pageRef, true);
+    return pageRef;
+  }
+
+  private void commit(PageWriteEvent event, PageRef pageRef, boolean append) {
+    if (event.shouldCommit()) {
+      event.pageOffset = pageRef.pageOffset();
+      event.append = append;
+      event.commit();
+    }
   }
 
   public void purge() {
@@ -65,5 +251,11 @@ public class DiskController implements Closeable {
 
   @Override
   public void close() throws IOException {
+    if (ownsMetrics) {
+      metrics.unregister();
+    }
+    if (file instanceof Closeable closeable) {
+      closeable.close();
+    }
   }
 }
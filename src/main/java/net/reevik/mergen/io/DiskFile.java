@@ -15,24 +15,68 @@
  */
 package net.reevik.mergen.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
 import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import net.reevik.mergen.jfr.FileWriteEvent;
+import net.reevik.mergen.metrics.IndexMetrics;
 
 public class DiskFile implements FileIO, Closeable {
   private static final String READ_WRITE = "rw";
   public static final int PAGE_SIZE = 1024 * 16;
 
   private final String fileName;
+  private final IndexMetrics metrics;
   private RandomAccessFile randomAccessFile;
   private FileChannel channel;
-  private volatile long currentOffset;
+  private final AtomicLong currentOffset = new AtomicLong();
+
+  /**
+   * The end of the file including the regions reserved by appends, which are not yet written.
+   * Synchronous and asynchronous appends reserve their offsets here, so they never overlap.
+   */
+  private final AtomicLong fileEnd = new AtomicLong();
+
+  /**
+   * Guards the file position during writes, and the opening and closing of the asynchronous
+   * channel. A lock is used instead of synchronized, since the virtual threads blocked in a
+   * synchronized block pin their carrier threads.
+   */
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private volatile AsynchronousFileChannel asyncChannel;
+  private ExecutorService ioExecutor;
+
+  /**
+   * Forces the asynchronous writes to the disk. The force blocks, so it runs on a virtual thread
+   * rather than in the completion handler, which would hold a thread of the channel's I/O pool.
+   */
+  private ExecutorService forceExecutor;
 
   public DiskFile(String fileName) {
+    this(fileName, IndexMetrics.DETACHED);
+  }
+
+  /**
+   * @param fileName Name of the file.
+   * @param metrics {@link IndexMetrics}, which the I/O of the file is recorded to.
+   */
+  public DiskFile(String fileName, IndexMetrics metrics) {
     this.fileName = fileName;
+    this.metrics = metrics;
     init();
   }
 
@@ -41,55 +85,167 @@ public class DiskFile implements FileIO, Closeable {
       randomAccessFile = new RandomAccessFile(fileName, READ_WRITE);
       randomAccessFile.seek(randomAccessFile.length());
       channel = randomAccessFile.getChannel();
-      this.currentOffset = randomAccessFile.length();
+      this.currentOffset.set(randomAccessFile.length());
+      this.fileEnd.set(randomAccessFile.length());
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
   public long writeAt(byte[] data, long offset) {
+    var event = new FileWriteEvent();
+    event.begin();
+    long forceDuration;
+    long writtenOffset;
     try {
-      synchronized (this) {
+      writeLock.lock();
+      try {
         randomAccessFile.seek(offset);
         var buffer = ByteBuffer.allocate(data.length);
         buffer.put(data);
         buffer.flip();
         channel.write(buffer);
+        long fsyncStart = System.nanoTime();
         channel.force(true); // TODO is this efficient at all?
-        currentOffset += data.length;
+        forceDuration = System.nanoTime() - fsyncStart;
+        metrics.fsync().record(forceDuration);
+        writtenOffset = currentOffset.addAndGet(data.length);
+        fileEnd.accumulateAndGet(offset + data.length, Math::max);
+      } finally {
+        writeLock.unlock();
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-
-    return currentOffset;
+    metrics.bytesWritten(data.length);
+    if (event.shouldCommit()) {
+      event.fileName = fileName;
+      event.offset = offset;
+      event.bytes = data.length;
+      event.forceDuration = forceDuration;
+      event.commit();
+    }
+    return writtenOffset;
   }
 
   public long writeAt(byte[] data) {
+    long nextOffset = fileEnd.getAndAdd(data.length);
+    writeAt(data, nextOffset);
+    return nextOffset;
+  }
+
+  /**
+   * Reads up to the page size bytes at the offset. The result is shorter than the page size only
+   * if the end of the file is reached. The read is positional, so concurrent reads don't interfere.
+   */
+  public byte[] readBytes(long pageOffset, int pageSize) {
     try {
-      long nextOffset = randomAccessFile.length();
-      writeAt(data, nextOffset);
-      return nextOffset;
+      var buffer = ByteBuffer.allocate(pageSize);
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, pageOffset + buffer.position());
+        if (read < 0) {
+          break;
+        }
+      }
+      metrics.bytesRead(buffer.position());
+      return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position())
+          : buffer.array();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  public byte[] readBytes(long pageOffset, int pageSize) {
-    try (var out = new ByteArrayOutputStream()) {
-      channel.position(pageOffset);
-      var bufferSize = pageSize;
-      if (bufferSize > channel.size()) {
-        bufferSize = (int) channel.size();
+  @Override
+  public CompletableFuture<byte[]> readBytesAsync(long pageOffset, int pageSize) {
+    var future = new CompletableFuture<byte[]>();
+    var buffer = ByteBuffer.allocate(pageSize);
+    var channel = getAsyncChannel();
+    channel.read(buffer, pageOffset, future, new CompletionHandler<>() {
+      @Override
+      public void completed(Integer read, CompletableFuture<byte[]> result) {
+        if (read >= 0 && buffer.hasRemaining()) {
+          channel.read(buffer, pageOffset + buffer.position(), result, this);
+          return;
+        }
+        metrics.bytesRead(buffer.position());
+        result.complete(buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position())
+            : buffer.array());
+      }
+
+      @Override
+      public void failed(Throwable exc, CompletableFuture<byte[]> result) {
+        result.completeExceptionally(exc);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Writes the data at the offset and forces it to the disk. The write runs on the I/O threads
+   * of the file, and the force on a virtual thread, so the caller isn't blocked.
+   *
+   * @return The offset, at which the data is written.
+   */
+  @Override
+  public CompletableFuture<Long> writeAtAsync(byte[] data, long offset) {
+    var written = new CompletableFuture<Long>();
+    var buffer = ByteBuffer.wrap(data);
+    var channel = getAsyncChannel();
+    currentOffset.addAndGet(data.length);
+    fileEnd.accumulateAndGet(offset + data.length, Math::max);
+    channel.write(buffer, offset, written, new CompletionHandler<>() {
+      @Override
+      public void completed(Integer bytes, CompletableFuture<Long> result) {
+        if (buffer.hasRemaining()) {
+          channel.write(buffer, offset + buffer.position(), result, this);
+          return;
+        }
+        result.complete(offset);
+      }
+
+      @Override
+      public void failed(Throwable exc, CompletableFuture<Long> result) {
+        result.completeExceptionally(exc);
+      }
+    });
+    return written.thenApplyAsync(writtenOffset -> {
+      try {
+        long fsyncStart = System.nanoTime();
+        channel.force(true);
+        metrics.fsync().recordSince(fsyncStart);
+        metrics.bytesWritten(data.length);
+        return writtenOffset;
+      } catch (IOException e) {
+        throw new CompletionException(e);
       }
-      var buffer = ByteBuffer.allocate(bufferSize);
-      while (channel.read(buffer) > 0) {
-        out.write(buffer.array(), 0, buffer.position());
-        buffer.clear();
+    }, forceExecutor);
+  }
+
+  @Override
+  public CompletableFuture<Long> writeAtAsync(byte[] data) {
+    return writeAtAsync(data, fileEnd.getAndAdd(data.length));
+  }
+
+  // The channel is opened once, so the lock is taken only until it is published.
+  private AsynchronousFileChannel getAsyncChannel() {
+    var channel = asyncChannel;
+    if (channel != null) {
+      return channel;
+    }
+    writeLock.lock();
+    try {
+      if (asyncChannel == null) {
+        ioExecutor = Executors.newCachedThreadPool(
+            Thread.ofPlatform().daemon().name("mergen-io-", 0).factory());
+        forceExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        asyncChannel = AsynchronousFileChannel.open(Path.of(fileName),
+            Set.of(StandardOpenOption.READ, StandardOpenOption.WRITE), ioExecutor);
       }
-      return out.toByteArray();
+      return asyncChannel;
     } catch (IOException e) {
       throw new RuntimeException(e);
+    } finally {
+      writeLock.unlock();
     }
   }
 
@@ -97,6 +253,7 @@ public class DiskFile implements FileIO, Closeable {
   public void purge() {
     try {
       randomAccessFile.setLength(0);
+      fileEnd.set(0);
     } catch (IOException e) {
       throw new RuntimeException("Cannot purge the file.");
     }
@@ -108,6 +265,16 @@ public class DiskFile implements FileIO, Closeable {
 
   @Override
   public void close() throws IOException {
-    randomAccessFile.close();
+    writeLock.lock();
+    try {
+      if (asyncChannel != null) {
+        forceExecutor.close();
+        asyncChannel.close();
+        ioExecutor.shutdown();
+      }
+      randomAccessFile.close();
+    } finally {
+      writeLock.unlock();
+    }
   }
 }
@@ -15,6 +15,7 @@
  */
 package net.reevik.mergen.io;
 
+import java.util.concurrent.CompletableFuture;
 
 public interface FileIO {
 
@@ -24,5 +25,11 @@ public interface FileIO {
 
   byte[] readBytes(long pageOffset, int pageSize);
 
+  CompletableFuture<Long> writeAtAsync(byte[] data, long offset);
+
+  CompletableFuture<Long> writeAtAsync(byte[] data);
+
+  CompletableFuture<byte[]> readBytesAsync(long pageOffset, int pageSize);
+
   void purge();
 }
@@ -45,8 +45,7 @@ public class Page implements Iterable<ByteBuffer> {
         int cellSizeAtIndex = getCellSize(currentIndex);
         int cellOffsetAtIndex = getCellOffset(currentIndex);
         byte[] dest = new byte[cellSizeAtIndex];
-        pageBuffer.position(cellOffsetAtIndex);
-        pageBuffer.get(dest, 0, cellSizeAtIndex);
+        System.arraycopy(pageBuffer.array(), cellOffsetAtIndex, dest, 0, cellSizeAtIndex);
         cursor.incrementAndGet();
         return ByteBuffer.wrap(dest);
       }
@@ -87,7 +86,10 @@ public class Page implements Iterable<ByteBuffer> {
   public enum PageType {
     DATA_NODE((short) 1),
     INNER_NODE((short) 2),
-    DATA_RECORD((short) 3);
+    DATA_RECORD((short) 3),
+    BLOOM_FILTER((short) 4),
+    POSTING_LIST((short) 5),
+    SORTED_RUN((short) 6);
 
     private final short pageTypeShort;
 
@@ -100,6 +102,9 @@ public class Page implements Iterable<ByteBuffer> {
         case 1 -> DATA_NODE;
         case 2 -> INNER_NODE;
         case 3 -> DATA_RECORD;
+        case 4 -> BLOOM_FILTER;
+        case 5 -> POSTING_LIST;
+        case 6 -> SORTED_RUN;
         default -> throw new RuntimeException("Unknown record type.");
       };
     }
@@ -124,7 +129,7 @@ public class Page implements Iterable<ByteBuffer> {
   public Page(SerializableObject serializableObject) {
     this.pageBuffer = ByteBuffer.allocate(PAGE_SIZE);
     this.pageSize = PAGE_SIZE;
-    this.pageType = PageType.DATA_NODE;
+    this.pageType = serializableObject.getPageType();
     this.pageRef = serializableObject.getPageRef();
     this.serializableObject = serializableObject;
     this.parentNodePageRef = serializableObject.getParentPageRef();
@@ -141,27 +146,23 @@ public class Page implements Iterable<ByteBuffer> {
 
   private int getCellSize(int index) {
     int cellIndexPos = pageBuffer.capacity() - ((index + 1) * Integer.BYTES);
-    return pageBuffer.position(cellIndexPos).getInt();
+    return ByteCodec.getInt(pageBuffer.array(), cellIndexPos);
   }
 
+  /**
+   * Returns true, if the cell of the size fits in the page along with its cell pointer.
+   */
   public boolean hasSpace(long askedSize) {
-    return getSpaceAvailable() + Integer.BYTES > askedSize;
+    return getSpaceAvailable() >= askedSize + Integer.BYTES;
   }
 
   public Page appendCell(ByteBuffer cellBuffer) {
-    pageBuffer = pageBuffer.position(getHeadPosition())
-        .put(cellBuffer.array())
-        .position(PageHeader.CELL_COUNT.offset())
-        .putInt(++cellCount)
-        .position(getNextCellPointerOffset())
-        .putInt(cellBuffer.capacity());
-    // space availability check request to move cursor position.
-    // we determine the available space after the cell is written, check available space and
-    // reset the cursor position.
-    int spaceAvailable = getSpaceAvailable();
-    pageBuffer
-        .position(PageHeader.AVAILABLE.offset())
-        .putInt(spaceAvailable);
+    var page = pageBuffer.array();
+    System.arraycopy(cellBuffer.array(), 0, page, getHeadPosition(), cellBuffer.capacity());
+    ByteCodec.putInt(page, PageHeader.CELL_COUNT.offset(), ++cellCount);
+    ByteCodec.putInt(page, getNextCellPointerOffset(), cellBuffer.capacity());
+    // we determine the available space after the cell is written.
+    ByteCodec.putInt(page, PageHeader.AVAILABLE.offset(), getSpaceAvailable());
     return this;
   }
 
@@ -171,14 +172,10 @@ public class Page implements Iterable<ByteBuffer> {
 
   private int getHeadPosition() {
     var firstCellOffset = PageHeader.CELL_COUNT.nextHeaderOffset();
-    // wind to the end of the page.
-    pageBuffer.position(pageBuffer.capacity());
-    // while going back one int byte for each cell pointer, add cell size to the current cell
-    // head offset.
+    // while going back one int byte for each cell pointer from the end of the page, add cell size
+    // to the current cell head offset.
     for (int i = 0; i < cellCount; i++) {
-      pageBuffer.position(pageBuffer.capacity() - (Integer.BYTES * (i + 1)));
-      int nextCellSize = pageBuffer.getInt();
-      firstCellOffset += nextCellSize;
+      firstCellOffset += getCellSize(i);
     }
     return firstCellOffset;
   }
@@ -186,10 +183,8 @@ public class Page implements Iterable<ByteBuffer> {
   private int getCellOffset(int index) {
     if (index < cellCount) {
       var currentCellSize = PageHeader.CELL_COUNT.nextHeaderOffset();
-      pageBuffer.position(pageBuffer.capacity());
       for (int i = 0; i < index; i++) {
-        pageBuffer.position(pageBuffer.capacity() - (Integer.BYTES * (i + 1)));
-        currentCellSize += pageBuffer.getInt();
+        currentCellSize += getCellSize(i);
       }
       return currentCellSize;
     }
@@ -198,13 +193,10 @@ public class Page implements Iterable<ByteBuffer> {
 
 
   private int getOccupiedCellSpace() {
-    pageBuffer.position(pageBuffer.capacity());
     var totalOccupied = 0;
     var cellHeaderSize = Integer.BYTES;
     for (int i = 0; i < cellCount; i++) {
-      pageBuffer.position(pageBuffer.capacity() - (cellHeaderSize * (i + 1)));
-      int currentCellSize = pageBuffer.getInt();
-      totalOccupied += currentCellSize + cellHeaderSize;
+      totalOccupied += getCellSize(i) + cellHeaderSize;
     }
     return totalOccupied;
   }
@@ -214,30 +206,29 @@ public class Page implements Iterable<ByteBuffer> {
   }
 
   public Page appendHeader() {
-    pageBuffer.clear();
-    pageBuffer = pageBuffer
-        .putLong(serializableObject.getPageRef().pageOffset()) // Page reference.
-        .putLong(serializableObject.getParentPageRef().pageOffset()) // Parent page reference.
-        .putLong(nextSlottedPage.pageOffset())
-        .putInt(pageSize) // Page size.
-        .putInt(PAGE_SIZE - PageHeader.getSize() - Long.BYTES) // Available size.
-        .putShort(pageType.toShort()) // Page type.
-        .putLong(serializableObject.getNextSlottedPageRef().pageOffset())
-        .putInt(cellCount);
+    var page = pageBuffer.array();
+    serializableObject.getPageRef().writeTo(page, PageHeader.OFFSET.offset());
+    serializableObject.getParentPageRef().writeTo(page, PageHeader.P_OFFSET.offset());
+    nextSlottedPage.writeTo(page, PageHeader.NEXT_PAGE.offset());
+    ByteCodec.putInt(page, PageHeader.SIZE.offset(), pageSize);
+    ByteCodec.putInt(page, PageHeader.AVAILABLE.offset(),
+        PAGE_SIZE - PageHeader.getSize() - Long.BYTES);
+    ByteCodec.putShort(page, PageHeader.TYPE.offset(), pageType.toShort());
+    serializableObject.getNextSlottedPageRef().writeTo(page, PageHeader.SIBLING_OFFSET.offset());
+    ByteCodec.putInt(page, PageHeader.CELL_COUNT.offset(), cellCount);
     return this;
   }
 
   private void readHeader() {
     if (pageBuffer.capacity() >= PageHeader.getSize()) {
-      pageBuffer.position(0);
-      long pageOffset = pageBuffer.getLong();
-      parentNodePageRef = PageRef.of(pageBuffer.getLong());
-      nextSlottedPage = PageRef.of(pageBuffer.getLong());
-      pageSize = pageBuffer.getInt();
-      availableSpace = pageBuffer.getInt();
-      pageType = PageType.from(pageBuffer.getShort());
-      siblingNodeOffset = pageBuffer.getLong();
-      cellCount = pageBuffer.getInt();
+      var page = pageBuffer.array();
+      parentNodePageRef = PageRef.readFrom(page, PageHeader.P_OFFSET.offset());
+      nextSlottedPage = PageRef.readFrom(page, PageHeader.NEXT_PAGE.offset());
+      pageSize = ByteCodec.getInt(page, PageHeader.SIZE.offset());
+      availableSpace = ByteCodec.getInt(page, PageHeader.AVAILABLE.offset());
+      pageType = PageType.from(ByteCodec.getShort(page, PageHeader.TYPE.offset()));
+      siblingNodeOffset = ByteCodec.getLong(page, PageHeader.SIBLING_OFFSET.offset());
+      cellCount = ByteCodec.getInt(page, PageHeader.CELL_COUNT.offset());
     } else {
       throw new IllegalStateException("Page header is missing.");
     }
@@ -251,7 +242,24 @@ public class Page implements Iterable<ByteBuffer> {
     return pageRef;
   }
 
+  /**
+   * Returns the reference of the sibling node's page, e.g. the next leaf in the key order, which
+   * is read from the SIBLING_OFFSET header.
+   */
+  public PageRef getSiblingPageRef() {
+    return PageRef.of(siblingNodeOffset);
+  }
+
   public void setNextSlottedPage(PageRef nextSlottedPage) {
     this.nextSlottedPage = nextSlottedPage;
+    nextSlottedPage.writeTo(pageBuffer.array(), PageHeader.NEXT_PAGE.offset());
+  }
+
+  public PageRef getNextSlottedPage() {
+    return nextSlottedPage;
+  }
+
+  public PageType getPageType() {
+    return pageType;
   }
 }
@@ -15,8 +15,6 @@
  */
 package net.reevik.mergen.io;
 
-import static net.reevik.mergen.index.IndexUtils.getBytesOf;
-
 public record PageRef(long pageOffset) {
 
   public static PageRef empty() {
@@ -28,7 +26,23 @@ public record PageRef(long pageOffset) {
   }
 
   byte[] toBytes() {
-    return getBytesOf(pageOffset);
+    var bytes = new byte[Long.BYTES];
+    writeTo(bytes, 0);
+    return bytes;
+  }
+
+  /**
+   * Writes the page offset into the buffer at the offset.
+   *
+   * @param buffer Destination buffer.
+   * @param offset Offset in the buffer.
+   */
+  public void writeTo(byte[] buffer, int offset) {
+    ByteCodec.putLong(buffer, offset, pageOffset);
+  }
+
+  public static PageRef readFrom(byte[] buffer, int offset) {
+    return new PageRef(ByteCodec.getLong(buffer, offset));
   }
 
   public boolean hasNoOffset() {
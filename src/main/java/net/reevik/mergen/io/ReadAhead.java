@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.io;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * An adaptive prefetcher for the page reads, which follow a pattern, e.g. a scan walking the leaves
+ * through their sibling references. The read-ahead tracks the distance between two consecutive
+ * reads. Once the same distance is observed twice in a row, the access is considered sequential
+ * and the next pages at that distance are read in the background with
+ * {@link DiskController#readAsync(PageRef)}. The window, i.e. the number of the pages read ahead,
+ * doubles with every further sequential read up to the maximum window, and it is reset as soon as
+ * the pattern breaks:
+ * </p>
+ * <pre>
+ *   reads     0  16K  32K  48K  64K  80K  ...  8K
+ *   window    0    0    2    4    8   16  ...   0
+ * </pre>
+ * <p>
+ * The instances aren't thread-safe. Each scan owns its read-ahead.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public class ReadAhead implements Closeable {
+
+  public static final int DEFAULT_MAX_WINDOW = 32;
+  private static final int INITIAL_WINDOW = 2;
+
+  private final DiskController diskAccessController;
+  private final int maxWindow;
+  private final Map<Long, CompletableFuture<Page>> pending = new HashMap<>();
+  private long lastOffset = -1L;
+  private long stride;
+  private int window;
+  private long hits;
+
+  public ReadAhead(DiskController diskAccessController) {
+    this(diskAccessController, DEFAULT_MAX_WINDOW);
+  }
+
+  public ReadAhead(DiskController diskAccessController, int maxWindow) {
+    this.diskAccessController = diskAccessController;
+    this.maxWindow = maxWindow;
+  }
+
+  /**
+   * Reads the page either from the pages read ahead, or from the disk if it isn't prefetched, and
+   * schedules the next pages, if the access is sequential.
+   *
+   * @param pageRef Page reference to be read.
+   * @return {@link Page} read.
+   */
+  public Page read(PageRef pageRef) {
+    long offset = pageRef.pageOffset();
+    var prefetched = pending.remove(offset);
+    Page page;
+    if (prefetched != null) {
+      hits++;
+      page = prefetched.join();
+    } else {
+      page = diskAccessController.read(pageRef);
+    }
+    observe(offset);
+    return page;
+  }
+
+  private void observe(long offset) {
+    long distance = offset - lastOffset;
+    if (lastOffset >= 0 && distance != 0 && distance == stride) {
+      window = Math.min(window == 0 ? INITIAL_WINDOW : window * 2, maxWindow);
+    } else {
+      window = 0;
+      pending.clear();
+    }
+    stride = lastOffset >= 0 ? distance : 0;
+    lastOffset = offset;
+    prefetch(offset);
+  }
+
+  private void prefetch(long offset) {
+    pending.keySet().removeIf(pendingOffset -> !isAhead(offset, pendingOffset));
+    for (int i = 1; i <= window; i++) {
+      long nextOffset = offset + i * stride;
+      if (nextOffset < 0) {
+        break;
+      }
+      pending.computeIfAbsent(nextOffset,
+          ignored -> diskAccessController.readAsync(PageRef.of(nextOffset)));
+    }
+  }
+
+  private boolean isAhead(long offset, long pendingOffset) {
+    long distance = pendingOffset - offset;
+    return stride != 0 && distance % stride == 0 && distance / stride > 0
+        && distance / stride <= window;
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * Returns the number of the reads served from the pages read ahead.
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Drops the pages read ahead, which aren't consumed.
+   */
+  @Override
+  public void close() {
+    pending.clear();
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * An append-only log of the values, which are stored apart from the index, so the leaves keep
+ * only the {@link ValuePointer} of the values, and the value writes are sequential. The log is
+ * divided into segment files, which are created with {@link FileFactory} and named after the log
+ * with the segment number as suffix, e.g. values.000000, values.000001. The values are appended to
+ * the head segment, which is sealed once it exceeds the segment size, and a new head is started.
+ * Every entry keeps the key of the value, so the garbage collection can look the value up in the
+ * index:
+ * </p>
+ * <pre>
+ *   [key length:int][value length:int][key][value]
+ * </pre>
+ * <p>
+ * The space of the values, which are overwritten or deleted, is reclaimed segment by segment,
+ * i.e. the live values of a sealed segment are appended to the head again, and the segment is
+ * dropped. The values, which the index discards, are accounted to their segments as garbage, so
+ * the segment with the biggest share of garbage is collected first.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public class ValueLog implements Closeable {
+
+  public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+  private static final int HEADER_SIZE = Integer.BYTES * 2;
+  private static final int SCAN_CHUNK_SIZE = 1024 * 1024;
+
+  private final String fileName;
+  private final long segmentSize;
+  private final Map<Integer, FileIO> segments = new ConcurrentSkipListMap<>();
+  private final Map<Integer, Long> sealedSizes = new ConcurrentSkipListMap<>();
+  private final Map<Integer, Long> garbageSizes = new ConcurrentHashMap<>();
+
+  /**
+   * Guards the head segment, so the appends are written one after another.
+   */
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private int head;
+  private long headSize;
+
+  public ValueLog(String fileName) {
+    this(fileName, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * @param fileName Base name of the segment files.
+   * @param segmentSize The size, at which the head segment is sealed.
+   */
+  public ValueLog(String fileName, long segmentSize) {
+    this.fileName = fileName;
+    this.segmentSize = segmentSize;
+    segments.put(head, FileFactory.newDiskFile(segmentFileName(head)));
+  }
+
+  private String segmentFileName(int segment) {
+    return String.format("%s.%06d", fileName, segment);
+  }
+
+  /**
+   * Appends the value to the head segment.
+   *
+   * @param key Key of the value.
+   * @param value Value to be appended.
+   * @return {@link ValuePointer} of the value.
+   */
+  public ValuePointer append(String key, byte[] value) {
+    var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    var entry = new byte[HEADER_SIZE + keyBytes.length + value.length];
+    ByteCodec.putInt(entry, 0, keyBytes.length);
+    ByteCodec.putInt(entry, Integer.BYTES, value.length);
+    System.arraycopy(keyBytes, 0, entry, HEADER_SIZE, keyBytes.length);
+    System.arraycopy(value, 0, entry, HEADER_SIZE + keyBytes.length, value.length);
+    appendLock.lock();
+    try {
+      if (headSize >= segmentSize) {
+        sealedSizes.put(head, headSize);
+        head++;
+        headSize = 0;
+        segments.put(head, FileFactory.newDiskFile(segmentFileName(head)));
+      }
+      long offset = segments.get(head).writeAt(entry);
+      headSize = Math.max(headSize, offset + entry.length);
+      return new ValuePointer(head, offset + HEADER_SIZE + keyBytes.length, value.length);
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  /**
+   * Reads the value with a single read of its bytes.
+   *
+   * @param valuePointer {@link ValuePointer} returned by {@link #append(String, byte[])}.
+   * @return The value.
+   */
+  public byte[] read(ValuePointer valuePointer) {
+    var segment = segments.get(valuePointer.segment());
+    if (segment == null) {
+      throw new IllegalStateException(
+          "Value log segment " + valuePointer.segment() + " is already dropped.");
+    }
+    var value = segment.readBytes(valuePointer.offset(), valuePointer.length());
+    if (value.length != valuePointer.length()) {
+      throw new IllegalStateException("Value at " + valuePointer + " is truncated.");
+    }
+    return value;
+  }
+
+  /**
+   * Accounts the value, which is no longer referred to, as garbage of its segment.
+   *
+   * @param valuePointer {@link ValuePointer} of the value discarded.
+   */
+  public void discard(ValuePointer valuePointer) {
+    garbageSizes.merge(valuePointer.segment(), (long) valuePointer.length(), Long::sum);
+  }
+
+  /**
+   * Returns the sealed segment with the biggest share of garbage, or the oldest one if there is no
+   * garbage accounted, which is the next one to be collected. Returns -1 if all values are in the
+   * head segment.
+   */
+  public int garbageSegment() {
+    int candidate = -1;
+    for (var segment : sealedSizes.keySet()) {
+      if (candidate < 0 || garbagePercent(segment) > garbagePercent(candidate)) {
+        candidate = segment;
+      }
+    }
+    return candidate;
+  }
+
+  /**
+   * Returns the share of the garbage accounted to the sealed segment in percent of its size.
+   */
+  public int garbagePercent(int segment) {
+    long size = sealedSizes.getOrDefault(segment, 0L);
+    return size == 0 ? 0 : (int) (garbageSizes.getOrDefault(segment, 0L) * 100 / size);
+  }
+
+  /**
+   * Reads the entries of the sealed segment sequentially in chunks, and passes them to the
+   * consumer in the order they are appended.
+   *
+   * @param segment Sealed segment.
+   * @param consumer Consumer of the entries.
+   */
+  public void scan(int segment, Consumer<Entry> consumer) {
+    var file = segments.get(segment);
+    var size = sealedSizes.get(segment);
+    if (file == null || size == null) {
+      throw new IllegalArgumentException("Segment " + segment + " isn't a sealed segment.");
+    }
+    long chunkOffset = 0;
+    while (chunkOffset < size) {
+      var chunk = file.readBytes(chunkOffset, (int) Math.min(SCAN_CHUNK_SIZE, size - chunkOffset));
+      int position = 0;
+      while (position + HEADER_SIZE <= chunk.length) {
+        int keyLength = ByteCodec.getInt(chunk, position);
+        int valueLength = ByteCodec.getInt(chunk, position + Integer.BYTES);
+        int entrySize = HEADER_SIZE + keyLength + valueLength;
+        if (position + entrySize > chunk.length) {
+          break;
+        }
+        int valueOffset = position + HEADER_SIZE + keyLength;
+        var key = new String(chunk, position + HEADER_SIZE, keyLength, StandardCharsets.UTF_8);
+        var valuePointer = new ValuePointer(segment, chunkOffset + valueOffset, valueLength);
+        consumer.accept(new Entry(key, valuePointer,
+            Arrays.copyOfRange(chunk, valueOffset, valueOffset + valueLength)));
+        position += entrySize;
+      }
+      if (position == 0) {
+        // The entry is bigger than a chunk, so it is read on its own.
+        int entrySize = HEADER_SIZE + ByteCodec.getInt(chunk, 0)
+            + ByteCodec.getInt(chunk, Integer.BYTES);
+        chunk = file.readBytes(chunkOffset, entrySize);
+        int keyLength = ByteCodec.getInt(chunk, 0);
+        var key = new String(chunk, HEADER_SIZE, keyLength, StandardCharsets.UTF_8);
+        consumer.accept(new Entry(key,
+            new ValuePointer(segment, chunkOffset + HEADER_SIZE + keyLength,
+                entrySize - HEADER_SIZE - keyLength),
+            Arrays.copyOfRange(chunk, HEADER_SIZE + keyLength, entrySize)));
+        position = entrySize;
+      }
+      chunkOffset += position;
+    }
+  }
+
+  /**
+   * Drops the sealed segment, once its live values are appended to the head again. The segment
+   * file is deleted.
+   *
+   * @param segment Sealed segment.
+   */
+  public void drop(int segment) {
+    if (sealedSizes.remove(segment) == null) {
+      throw new IllegalArgumentException("Segment " + segment + " isn't a sealed segment.");
+    }
+    garbageSizes.remove(segment);
+    close(segments.remove(segment));
+    try {
+      Files.deleteIfExists(Path.of(segmentFileName(segment)));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the number of the segments including the head.
+   */
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  private static void close(FileIO file) {
+    if (file instanceof Closeable closeable) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    segments.values().forEach(ValueLog::close);
+  }
+
+  /**
+   * An entry of a segment, i.e. a value with its key and its location.
+   */
+  public record Entry(String key, ValuePointer valuePointer, byte[] value) {
+
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.io;
+
+/**
+ * The location of a value in the {@link ValueLog}, i.e. the segment, the offset of the value in
+ * the segment file and its length.
+ *
+ * @author Erhan Bagdemir
+ */
+public record ValuePointer(int segment, long offset, int length) {
+
+  /**
+   * The size of the pointers written with {@link #writeTo(byte[], int)}.
+   */
+  public static final int BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+  /**
+   * Writes the pointer into the buffer at the offset.
+   *
+   * @param buffer Destination buffer.
+   * @param offset Offset in the buffer.
+   */
+  public void writeTo(byte[] buffer, int offset) {
+    ByteCodec.putInt(buffer, offset, segment);
+    ByteCodec.putLong(buffer, offset + Integer.BYTES, this.offset);
+    ByteCodec.putInt(buffer, offset + Integer.BYTES + Long.BYTES, length);
+  }
+
+  public static ValuePointer readFrom(byte[] buffer, int offset) {
+    return new ValuePointer(ByteCodec.getInt(buffer, offset),
+        ByteCodec.getLong(buffer, offset + Integer.BYTES),
+        ByteCodec.getInt(buffer, offset + Integer.BYTES + Long.BYTES));
+  }
+}
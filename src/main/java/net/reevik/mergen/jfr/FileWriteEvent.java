@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("net.reevik.mergen.FileWrite")
+@Label("File Write")
+@Category({"Mergen", "I/O"})
+@Description("A write into a disk file including the force of the file channel.")
+public class FileWriteEvent extends Event {
+
+  @Label("File Name")
+  public String fileName;
+
+  @Label("Offset")
+  public long offset;
+
+  @Label("Bytes")
+  @DataAmount
+  public int bytes;
+
+  @Label("Force Duration")
+  @Timespan
+  public long forceDuration;
+}
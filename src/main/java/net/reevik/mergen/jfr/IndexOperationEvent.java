@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * An index operation, which takes longer than the threshold. The default threshold can be
+ * overridden in the recording settings, e.g.
+ * {@code -XX:StartFlightRecording:net.reevik.mergen.IndexOperation#threshold=1ms}.
+ */
+@Name("net.reevik.mergen.IndexOperation")
+@Label("Slow Index Operation")
+@Category({"Mergen", "Index"})
+@Description("An upsert, query or delete, which took longer than the threshold.")
+@Threshold("10 ms")
+public class IndexOperationEvent extends Event {
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Index Key")
+  public String indexKey;
+
+  @Label("Records")
+  @Description("The number of data records returned by the operation.")
+  public int records;
+}
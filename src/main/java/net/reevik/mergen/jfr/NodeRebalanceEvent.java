@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.reevik.mergen.NodeRebalance")
+@Label("Node Rebalance")
+@Category({"Mergen", "Index"})
+@Description("A child removed from an inner node and the rebalancing it caused.")
+public class NodeRebalanceEvent extends Event {
+
+  @Label("Index Key")
+  public String indexKey;
+
+  @Label("Page Offset")
+  public long pageOffset;
+
+  @Label("Merges")
+  @Description("The number of unbalanced inner nodes merged into their siblings.")
+  public int merges;
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.reevik.mergen.NodeSplit")
+@Label("Node Split")
+@Category({"Mergen", "Index"})
+@Description("A data or inner node split into two nodes.")
+public class NodeSplitEvent extends Event {
+
+  @Label("Node Type")
+  public String nodeType;
+
+  @Label("Page Offset")
+  public long pageOffset;
+
+  @Label("Parent Page Offset")
+  public long parentPageOffset;
+
+  @Label("Separator")
+  @Description("The index key, which separates the left and right node in the parent.")
+  public String separator;
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.lsm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import net.reevik.mergen.io.ByteCodec;
+
+/**
+ * <p>
+ * A key-value entry of the LSM-tree. A deleted key is represented by a tombstone, i.e. an entry
+ * without value, which shadows the older values of the key until it is merged into the last level.
+ * In the sorted runs, every entry is stored in a single cell:
+ * </p>
+ * <pre>
+ *   [tombstone:byte][key length:int][key][value]
+ * </pre>
+ *
+ * @author Erhan Bagdemir
+ */
+record Entry(String key, byte[] value) {
+
+  private static final int TOMBSTONE_OFFSET = 0;
+  private static final int KEY_LENGTH_OFFSET = TOMBSTONE_OFFSET + Byte.BYTES;
+  private static final int KEY_OFFSET = KEY_LENGTH_OFFSET + Integer.BYTES;
+
+  static Entry tombstone(String key) {
+    return new Entry(key, null);
+  }
+
+  boolean isTombstone() {
+    return value == null;
+  }
+
+  /**
+   * Returns the size of the entry's cell.
+   */
+  int size() {
+    return KEY_OFFSET + key.getBytes(StandardCharsets.UTF_8).length
+        + (value != null ? value.length : 0);
+  }
+
+  ByteBuffer serialize() {
+    var keyInBytes = key.getBytes(StandardCharsets.UTF_8);
+    int valueOffset = KEY_OFFSET + keyInBytes.length;
+    var cell = new byte[valueOffset + (value != null ? value.length : 0)];
+    cell[TOMBSTONE_OFFSET] = (byte) (value == null ? 1 : 0);
+    ByteCodec.putInt(cell, KEY_LENGTH_OFFSET, keyInBytes.length);
+    System.arraycopy(keyInBytes, 0, cell, KEY_OFFSET, keyInBytes.length);
+    if (value != null) {
+      System.arraycopy(value, 0, cell, valueOffset, value.length);
+    }
+    return ByteBuffer.wrap(cell);
+  }
+
+  static Entry deserialize(ByteBuffer byteBuffer) {
+    var cell = byteBuffer.array();
+    int keyLength = ByteCodec.getInt(cell, KEY_LENGTH_OFFSET);
+    var key = new String(cell, KEY_OFFSET, keyLength, StandardCharsets.UTF_8);
+    if (cell[TOMBSTONE_OFFSET] == 1) {
+      return tombstone(key);
+    }
+    int valueOffset = KEY_OFFSET + keyLength;
+    var value = new byte[byteBuffer.capacity() - valueOffset];
+    System.arraycopy(cell, valueOffset, value, 0, value.length);
+    return new Entry(key, value);
+  }
+}
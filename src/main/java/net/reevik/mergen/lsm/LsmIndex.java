@@ -0,0 +1,552 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.lsm;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import net.reevik.mergen.index.BTreeIndex;
+import net.reevik.mergen.index.DataEntity;
+import net.reevik.mergen.index.DataRecord;
+import net.reevik.mergen.index.KeyData;
+import net.reevik.mergen.io.Page;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.metrics.IndexMetrics;
+
+/**
+ * <p>
+ * A log-structured merge-tree implementation of indexing with the upsert, query and delete
+ * operations of {@link BTreeIndex}, which suits the write-heavy workloads. The writes go into the
+ * memtable in the memory. Once the memtable is full, it is flushed into an immutable
+ * {@link SortedRun} file in the background, so the random writes turn into sequential ones. The
+ * deletes write tombstones, which shadow the older values.
+ * </p>
+ * <p>
+ * The runs are merged with the leveled compaction. The flushed runs land in the level 0, where
+ * they may overlap. Once the level 0 has {@link #LEVEL0_COMPACTION_TRIGGER} runs, they are merged
+ * with the overlapping runs of the level 1. The runs of the level 1 and the deeper levels don't
+ * overlap, and every level is {@link #LEVEL_SIZE_RATIO} times larger than the previous one. If a
+ * level exceeds its size, one of its runs is merged with the overlapping runs of the next level,
+ * round-robin over the key space. The tombstones are dropped, once no deeper level holds the key.
+ * </p>
+ * <p>
+ * A lookup checks the memtables and then the levels from the newest to the oldest, and it reads
+ * at most one page per level 0 run and one page per deeper level, unless the runs' Bloom filters
+ * rule the key out. The memtable isn't logged, so the writes, which aren't flushed, are lost on a
+ * crash, and the runs aren't reopened after a restart yet.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public class LsmIndex implements Closeable {
+
+  public static final long DEFAULT_MEMTABLE_BYTES = 4L * 1024 * 1024;
+  public static final long DEFAULT_RUN_BYTES = 2L * 1024 * 1024;
+  static final int LEVEL0_COMPACTION_TRIGGER = 4;
+  static final int LEVEL_SIZE_RATIO = 10;
+
+  /**
+   * The writers wait for the background work, once more memtables than this are waiting to be
+   * flushed.
+   */
+  private static final int MAX_IMMUTABLE_MEMTABLES = 2;
+
+  private final String fileName;
+  private final long memtableBytes;
+  private final long runBytes;
+  private final AtomicLong nextRunId = new AtomicLong();
+
+  /**
+   * Metrics of the index, which the run files share. They are registered under the base name.
+   */
+  private final IndexMetrics metrics;
+
+  /**
+   * The writers share the read lock to write into the memtable, whereas replacing the full
+   * memtable takes the write lock.
+   */
+  private final ReadWriteLock memtableLock = new ReentrantReadWriteLock();
+  private final ReentrantLock versionLock = new ReentrantLock();
+  private volatile Version current = new Version(new Memtable(), List.of(), List.of());
+
+  /**
+   * Flushes and compacts one after another on a single thread, so only this thread changes the
+   * levels.
+   */
+  private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(
+      Thread.ofPlatform().daemon().name("mergen-compaction").factory());
+  private volatile CompletableFuture<Void> backgroundWork = CompletableFuture.completedFuture(null);
+  private volatile RuntimeException backgroundFailure;
+  private final Map<Integer, String> compactionPointers = new HashMap<>();
+
+  public LsmIndex(String fileName) {
+    this(fileName, DEFAULT_MEMTABLE_BYTES, DEFAULT_RUN_BYTES);
+  }
+
+  /**
+   * @param fileName Base name of the run files, which are suffixed with the run number.
+   * @param memtableBytes Size of the memtable in bytes, at which it is flushed.
+   * @param runBytes Target size of the runs written by the compactions in bytes.
+   */
+  public LsmIndex(String fileName, long memtableBytes, long runBytes) {
+    this.fileName = fileName;
+    this.memtableBytes = memtableBytes;
+    this.runBytes = runBytes;
+    this.metrics = new IndexMetrics(fileName).register();
+  }
+
+  /**
+   * Inserts or updates the record of the index key. The latest upsert wins.
+   *
+   * @param dataEntity An instance of {@link DataEntity}.
+   */
+  public void upsert(DataEntity dataEntity) {
+    long start = System.nanoTime();
+    write(new Entry(dataEntity.indexKey().toString(), dataEntity.payload()));
+    metrics.upsert().recordSince(start);
+  }
+
+  /**
+   * Query the index by index key.
+   *
+   * @param indexKey An index key.
+   * @return {@link DataRecord} of the index key, or an empty list if the key is absent or deleted.
+   */
+  public List<DataRecord> query(String indexKey) {
+    long start = System.nanoTime();
+    var entry = lookup(indexKey);
+    metrics.query().recordSince(start);
+    return entry == null || entry.isTombstone() ? List.of() : List.of(toDataRecord(entry));
+  }
+
+  /**
+   * Deletes the index key by writing a tombstone. The deleted record is looked up first, so it can
+   * be returned.
+   *
+   * @param indexKey An index key.
+   * @return The deleted {@link DataRecord}, or an empty list if the key is absent.
+   */
+  public List<DataRecord> delete(String indexKey) {
+    long start = System.nanoTime();
+    var entry = lookup(indexKey);
+    if (entry == null || entry.isTombstone()) {
+      metrics.delete().recordSince(start);
+      return List.of();
+    }
+    write(Entry.tombstone(indexKey));
+    metrics.delete().recordSince(start);
+    return List.of(toDataRecord(entry));
+  }
+
+  /**
+   * Scans the key range in the key order.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to scan up to the last key.
+   * @return {@link Cursor} over the entries in the range, which must be closed, if it isn't
+   * exhausted.
+   */
+  public Cursor scan(String from, String to) {
+    var version = acquire();
+    var sources = new ArrayList<Iterator<Entry>>();
+    sources.add(version.active().iterator(from, to));
+    version.immutables().forEach(memtable -> sources.add(memtable.iterator(from, to)));
+    for (var runs : version.levels()) {
+      for (var run : runs) {
+        if ((from == null || run.lastKey().compareTo(from) >= 0)
+            && (to == null || run.firstKey().compareTo(to) < 0)) {
+          sources.add(run.iterator(from, to));
+        }
+      }
+    }
+    return new Cursor(version, new MergingIterator(sources));
+  }
+
+  public Cursor scan() {
+    return scan(null, null);
+  }
+
+  /**
+   * Flushes the memtable and waits until the flushes and the compactions are completed.
+   */
+  public void flush() {
+    memtableLock.writeLock().lock();
+    try {
+      if (!current.active().isEmpty()) {
+        rotate();
+      }
+    } finally {
+      memtableLock.writeLock().unlock();
+    }
+    backgroundWork.join();
+    checkBackgroundFailure();
+  }
+
+  /**
+   * Flushes the memtable, stops the background work and closes the run files.
+   */
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      backgroundExecutor.shutdown();
+      try {
+        backgroundExecutor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      current.levels().forEach(runs -> runs.forEach(SortedRun::close));
+      metrics.unregister();
+    }
+  }
+
+  public IndexMetrics getMetrics() {
+    return metrics;
+  }
+
+  private void write(Entry entry) {
+    if (entry.size() > Page.MAX_CELL_SPACE) {
+      throw new IllegalArgumentException("Entry of " + entry.key() + " doesn't fit in a page.");
+    }
+    checkBackgroundFailure();
+    boolean full;
+    memtableLock.readLock().lock();
+    try {
+      var active = current.active();
+      active.put(entry);
+      full = active.bytes() >= memtableBytes;
+    } finally {
+      memtableLock.readLock().unlock();
+    }
+    if (full) {
+      memtableLock.writeLock().lock();
+      try {
+        // Another writer might have replaced the memtable in the meantime.
+        if (current.active().bytes() >= memtableBytes) {
+          rotate();
+        }
+      } finally {
+        memtableLock.writeLock().unlock();
+      }
+      if (current.immutables().size() > MAX_IMMUTABLE_MEMTABLES) {
+        backgroundWork.join();
+      }
+    }
+  }
+
+  // Replaces the active memtable with a new one, and schedules the flush of the full one.
+  private void rotate() {
+    install(version -> version.withActive(new Memtable()));
+    backgroundWork = CompletableFuture.runAsync(this::flushAndCompact, backgroundExecutor);
+  }
+
+  private void flushAndCompact() {
+    try {
+      flushOldest();
+      while (compactOnce()) {
+        // compacts until every level is within its size.
+      }
+    } catch (RuntimeException e) {
+      backgroundFailure = e;
+    }
+  }
+
+  private void checkBackgroundFailure() {
+    var failure = backgroundFailure;
+    if (failure != null) {
+      throw new IllegalStateException("Background flush or compaction failed.", failure);
+    }
+  }
+
+  private void flushOldest() {
+    var immutables = current.immutables();
+    if (immutables.isEmpty()) {
+      return;
+    }
+    var memtable = immutables.getLast();
+    var writer = new SortedRun.Writer(nextRunFileName(), metrics);
+    try {
+      memtable.iterator(null, null).forEachRemaining(writer::add);
+    } catch (RuntimeException e) {
+      writer.abandon();
+      throw e;
+    }
+    var run = writer.finish();
+    install(version -> version.withFlushed(memtable, run));
+  }
+
+  private boolean compactOnce() {
+    var version = acquire();
+    try {
+      var level0 = version.level(0);
+      if (level0.size() >= LEVEL0_COMPACTION_TRIGGER) {
+        compact(version, 0, level0);
+        return true;
+      }
+      for (int level = 1; level < version.levels().size(); level++) {
+        var runs = version.level(level);
+        if (sizeInBytes(runs) > maxLevelBytes(level)) {
+          compact(version, level, List.of(pickRun(level, runs)));
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      version.release();
+    }
+  }
+
+  private long maxLevelBytes(int level) {
+    return runBytes * (long) Math.pow(LEVEL_SIZE_RATIO, level);
+  }
+
+  private static long sizeInBytes(List<SortedRun> runs) {
+    return runs.stream().mapToLong(SortedRun::sizeInBytes).sum();
+  }
+
+  // Picks the first run after the one compacted last time, so the compactions cycle through the
+  // key space of the level.
+  private SortedRun pickRun(int level, List<SortedRun> runs) {
+    var pointer = compactionPointers.get(level);
+    if (pointer != null) {
+      for (var run : runs) {
+        if (run.firstKey().compareTo(pointer) > 0) {
+          return run;
+        }
+      }
+    }
+    return runs.getFirst();
+  }
+
+  /**
+   * Merges the input runs of the level with the overlapping runs of the next level, and replaces
+   * them with the merged runs in the next level.
+   */
+  private void compact(Version version, int level, List<SortedRun> inputs) {
+    var from = inputs.stream().map(SortedRun::firstKey).min(Comparator.naturalOrder())
+        .orElseThrow();
+    var to = inputs.stream().map(SortedRun::lastKey).max(Comparator.naturalOrder()).orElseThrow();
+    var overlapping = version.level(level + 1).stream().filter(run -> run.overlaps(from, to))
+        .toList();
+    var sources = new ArrayList<Iterator<Entry>>();
+    inputs.forEach(run -> sources.add(run.iterator(null, null)));
+    overlapping.forEach(run -> sources.add(run.iterator(null, null)));
+    var outputs = new ArrayList<SortedRun>();
+    SortedRun.Writer writer = null;
+    try {
+      for (var merged = new MergingIterator(sources); merged.hasNext(); ) {
+        var entry = merged.next();
+        if (entry.isTombstone() && isBottommost(version, level + 1, entry.key())) {
+          continue;
+        }
+        if (writer != null && writer.sizeInBytes() >= runBytes && !writer.fitsInPage(entry)) {
+          outputs.add(writer.finish());
+          writer = null;
+        }
+        if (writer == null) {
+          writer = new SortedRun.Writer(nextRunFileName(), metrics);
+        }
+        writer.add(entry);
+      }
+      if (writer != null) {
+        var run = writer.finish();
+        if (run != null) {
+          outputs.add(run);
+        }
+      }
+    } catch (RuntimeException e) {
+      if (writer != null) {
+        writer.abandon();
+      }
+      outputs.forEach(run -> {
+        run.retain();
+        run.release();
+      });
+      throw e;
+    }
+    compactionPointers.put(level, to);
+    var newLevels = new ArrayList<>(version.levels());
+    while (newLevels.size() <= level + 1) {
+      newLevels.add(List.of());
+    }
+    newLevels.set(level, without(newLevels.get(level), inputs));
+    var nextLevel = new ArrayList<>(without(newLevels.get(level + 1), overlapping));
+    nextLevel.addAll(outputs);
+    nextLevel.sort(Comparator.comparing(SortedRun::firstKey));
+    newLevels.set(level + 1, List.copyOf(nextLevel));
+    install(latest -> latest.withLevels(List.copyOf(newLevels)));
+  }
+
+  private static List<SortedRun> without(List<SortedRun> runs, List<SortedRun> removed) {
+    return runs.stream().filter(run -> !removed.contains(run)).toList();
+  }
+
+  // The tombstone can be dropped, if none of the levels below holds the key.
+  private static boolean isBottommost(Version version, int level, String key) {
+    for (int deeper = level + 1; deeper < version.levels().size(); deeper++) {
+      for (var run : version.level(deeper)) {
+        if (run.contains(key)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private Entry lookup(String key) {
+    var version = acquire();
+    try {
+      var entry = version.active().get(key);
+      var immutables = version.immutables();
+      for (int i = 0; i < immutables.size() && entry == null; i++) {
+        entry = immutables.get(i).get(key);
+      }
+      var level0 = version.level(0);
+      for (int i = 0; i < level0.size() && entry == null; i++) {
+        entry = level0.get(i).get(key);
+      }
+      for (int level = 1; level < version.levels().size() && entry == null; level++) {
+        var run = runFor(version.level(level), key);
+        entry = run != null ? run.get(key) : null;
+      }
+      return entry;
+    } finally {
+      version.release();
+    }
+  }
+
+  // The runs of the deeper levels are disjoint and sorted, so at most one of them holds the key.
+  private static SortedRun runFor(List<SortedRun> runs, String key) {
+    int low = 0;
+    int high = runs.size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      var run = runs.get(middle);
+      if (key.compareTo(run.firstKey()) < 0) {
+        high = middle - 1;
+      } else if (key.compareTo(run.lastKey()) > 0) {
+        low = middle + 1;
+      } else {
+        return run;
+      }
+    }
+    return null;
+  }
+
+  private Version acquire() {
+    versionLock.lock();
+    try {
+      var version = current;
+      version.retain();
+      return version;
+    } finally {
+      versionLock.unlock();
+    }
+  }
+
+  private void install(UnaryOperator<Version> change) {
+    versionLock.lock();
+    try {
+      var previous = current;
+      var next = change.apply(previous);
+      next.retain();
+      current = next;
+      previous.release();
+    } finally {
+      versionLock.unlock();
+    }
+  }
+
+  private String nextRunFileName() {
+    return String.format("%s.%06d.run", fileName, nextRunId.getAndIncrement());
+  }
+
+  private static DataRecord toDataRecord(Entry entry) {
+    return DataRecord.createSynced(PageRef.empty(), entry.value(), null);
+  }
+
+  /**
+   * Returns the number of the runs in each level.
+   */
+  List<Integer> runsPerLevel() {
+    return current.levels().stream().map(List::size).toList();
+  }
+
+  /**
+   * An ordered cursor over the live entries of a snapshot of the index. The runs of the snapshot
+   * are retained until the cursor is exhausted or closed.
+   */
+  public static final class Cursor implements Iterator<KeyData>, Closeable {
+
+    private final Version version;
+    private final Iterator<Entry> entries;
+    private Entry next;
+    private boolean released;
+
+    private Cursor(Version version, Iterator<Entry> entries) {
+      this.version = version;
+      this.entries = entries;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        if (released || !entries.hasNext()) {
+          close();
+          return false;
+        }
+        var entry = entries.next();
+        if (!entry.isTombstone()) {
+          next = entry;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public KeyData next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      var entry = next;
+      next = null;
+      return new KeyData(entry.key(), toDataRecord(entry));
+    }
+
+    @Override
+    public void close() {
+      if (!released) {
+        released = true;
+        version.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.lsm;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The in-memory buffer of the most recent writes, sorted by key. Once its size reaches the limit,
+ * the memtable becomes immutable and it is flushed into a sorted run in the background, while a
+ * new memtable takes the writes.
+ *
+ * @author Erhan Bagdemir
+ */
+final class Memtable {
+
+  private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+  private final AtomicLong bytes = new AtomicLong();
+
+  void put(Entry entry) {
+    var previous = entries.put(entry.key(), entry);
+    bytes.addAndGet(entry.size() - (previous != null ? previous.size() : 0));
+  }
+
+  Entry get(String key) {
+    return entries.get(key);
+  }
+
+  /**
+   * Returns the entries in the key range in the key order.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to iterate up to the last key.
+   * @return Iterator over the entries in the range.
+   */
+  Iterator<Entry> iterator(String from, String to) {
+    ConcurrentNavigableMap<String, Entry> range = entries;
+    if (from != null) {
+      range = range.tailMap(from, true);
+    }
+    if (to != null) {
+      range = range.headMap(to, false);
+    }
+    return range.values().iterator();
+  }
+
+  /**
+   * Returns the size of the entries' cells in bytes.
+   */
+  long bytes() {
+    return bytes.get();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  boolean isEmpty() {
+    return entries.isEmpty();
+  }
+}
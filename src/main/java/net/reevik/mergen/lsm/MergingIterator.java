@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.lsm;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the sorted sources into a single sorted iteration. The sources are given from the newest
+ * to the oldest, and if multiple sources contain the same key, only the newest entry is returned,
+ * which might be a tombstone.
+ *
+ * @author Erhan Bagdemir
+ */
+final class MergingIterator implements Iterator<Entry> {
+
+  private record Head(Entry entry, int source, Iterator<Entry> iterator) {
+
+  }
+
+  private final PriorityQueue<Head> heads = new PriorityQueue<>(
+      Comparator.comparing((Head head) -> head.entry().key()).thenComparingInt(Head::source));
+
+  MergingIterator(List<Iterator<Entry>> sources) {
+    for (int i = 0; i < sources.size(); i++) {
+      advance(i, sources.get(i));
+    }
+  }
+
+  private void advance(int source, Iterator<Entry> iterator) {
+    if (iterator.hasNext()) {
+      heads.add(new Head(iterator.next(), source, iterator));
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !heads.isEmpty();
+  }
+
+  @Override
+  public Entry next() {
+    var head = heads.poll();
+    if (head == null) {
+      throw new NoSuchElementException();
+    }
+    advance(head.source(), head.iterator());
+    // The older entries of the same key are shadowed.
+    while (!heads.isEmpty() && heads.peek().entry().key().equals(head.entry().key())) {
+      var shadowed = heads.poll();
+      advance(shadowed.source(), shadowed.iterator());
+    }
+    return head.entry();
+  }
+}
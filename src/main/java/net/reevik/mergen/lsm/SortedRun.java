@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.lsm;
+
+import static net.reevik.mergen.io.DiskFile.PAGE_SIZE;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.reevik.mergen.index.BloomFilter;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.Page;
+import net.reevik.mergen.io.Page.PageType;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.ReadAhead;
+import net.reevik.mergen.io.SerializableObject;
+import net.reevik.mergen.metrics.IndexMetrics;
+
+/**
+ * <p>
+ * An immutable file of entries sorted by key. The entries are stored in the cells of the pages,
+ * which are written sequentially from the start of the file, so the run is scanned with the
+ * read-ahead. The first key of every page and a {@link BloomFilter} over the keys are kept in
+ * memory, so a point lookup reads at most one page, and none if the filter rules the key out.
+ * </p>
+ * <p>
+ * The runs are reference counted. The file is deleted, once the run is no longer part of any
+ * {@link Version}, which is in use.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+final class SortedRun {
+
+  private final String fileName;
+  private final DiskController diskAccessController;
+  private final long[] pageOffsets;
+  private final String[] firstKeys;
+  private final String lastKey;
+  private final BloomFilter bloomFilter;
+  private final long entryCount;
+  private final AtomicInteger references = new AtomicInteger();
+
+  private SortedRun(String fileName, DiskController diskAccessController, long[] pageOffsets,
+      String[] firstKeys, String lastKey, BloomFilter bloomFilter, long entryCount) {
+    this.fileName = fileName;
+    this.diskAccessController = diskAccessController;
+    this.pageOffsets = pageOffsets;
+    this.firstKeys = firstKeys;
+    this.lastKey = lastKey;
+    this.bloomFilter = bloomFilter;
+    this.entryCount = entryCount;
+  }
+
+  /**
+   * Looks the key up in the run.
+   *
+   * @param key Key to be looked up.
+   * @return {@link Entry} of the key, which might be a tombstone, or null if the run doesn't
+   * contain the key.
+   */
+  Entry get(String key) {
+    if (!contains(key) || !bloomFilter.mightContain(key)) {
+      return null;
+    }
+    var page = diskAccessController.read(PageRef.of(pageOffsets[pageIndexOf(key)]));
+    for (var cell : page) {
+      var entry = Entry.deserialize(cell);
+      int comparison = entry.key().compareTo(key);
+      if (comparison == 0) {
+        return entry;
+      }
+      if (comparison > 0) {
+        break;
+      }
+    }
+    return null;
+  }
+
+  // The index of the last page, of which first key isn't greater than the key.
+  private int pageIndexOf(String key) {
+    int index = Arrays.binarySearch(firstKeys, key);
+    return index >= 0 ? index : Math.max(0, -index - 2);
+  }
+
+  /**
+   * Returns true, if the key is within the key range of the run.
+   */
+  boolean contains(String key) {
+    return key.compareTo(firstKey()) >= 0 && key.compareTo(lastKey) <= 0;
+  }
+
+  /**
+   * Returns true, if the key range of the run overlaps with the range.
+   *
+   * @param from Lower bound of the range (inclusive).
+   * @param to Upper bound of the range (inclusive).
+   */
+  boolean overlaps(String from, String to) {
+    return from.compareTo(lastKey) <= 0 && to.compareTo(firstKey()) >= 0;
+  }
+
+  /**
+   * Returns the entries in the key range in the key order. The pages are read ahead, once the
+   * scan proceeds sequentially.
+   *
+   * @param from Lower bound of the range (inclusive), or null to start from the first key.
+   * @param to Upper bound of the range (exclusive), or null to iterate up to the last key.
+   * @return Iterator over the entries in the range.
+   */
+  Iterator<Entry> iterator(String from, String to) {
+    return new Iterator<>() {
+
+      private final ReadAhead readAhead = new ReadAhead(diskAccessController);
+      private int nextPage = from != null ? pageIndexOf(from) : 0;
+      private Iterator<Entry> entries = Collections.emptyIterator();
+      private Entry next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null) {
+          while (!entries.hasNext() && nextPage < pageOffsets.length) {
+            var pageEntries = new ArrayList<Entry>();
+            readAhead.read(PageRef.of(pageOffsets[nextPage++]))
+                .forEach(cell -> pageEntries.add(Entry.deserialize(cell)));
+            entries = pageEntries.iterator();
+          }
+          if (!entries.hasNext()) {
+            readAhead.close();
+            return false;
+          }
+          var entry = entries.next();
+          if (to != null && entry.key().compareTo(to) >= 0) {
+            nextPage = pageOffsets.length;
+            entries = Collections.emptyIterator();
+          } else if (from == null || entry.key().compareTo(from) >= 0) {
+            next = entry;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public Entry next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        var entry = next;
+        next = null;
+        return entry;
+      }
+    };
+  }
+
+  String firstKey() {
+    return firstKeys[0];
+  }
+
+  String lastKey() {
+    return lastKey;
+  }
+
+  long entryCount() {
+    return entryCount;
+  }
+
+  long sizeInBytes() {
+    return (long) pageOffsets.length * PAGE_SIZE;
+  }
+
+  String getFileName() {
+    return fileName;
+  }
+
+  void retain() {
+    references.incrementAndGet();
+  }
+
+  /**
+   * Releases a reference. The file of the run is deleted with the last reference.
+   */
+  void release() {
+    if (references.decrementAndGet() == 0) {
+      close();
+      delete(fileName);
+    }
+  }
+
+  void close() {
+    try {
+      diskAccessController.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void delete(String fileName) {
+    try {
+      Files.deleteIfExists(Path.of(fileName));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Writes a new run. The entries must be added in the key order. The pages are appended in
+   * batches, each of which is forced to the disk once.
+   */
+  static final class Writer extends SerializableObject {
+
+    private static final int BATCH_PAGES = 16;
+
+    private final String fileName;
+    private final List<Page> pendingPages = new ArrayList<>(BATCH_PAGES);
+    private final List<String> firstKeys = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private long[] pageOffsets = new long[16];
+    private int writtenPages;
+    private Page page;
+
+    Writer(String fileName, IndexMetrics metrics) {
+      super(PageRef.empty(), new DiskController(fileName, metrics));
+      this.fileName = fileName;
+      getDiskAccessController().purge();
+    }
+
+    void add(Entry entry) {
+      if (!keys.isEmpty() && entry.key().compareTo(keys.getLast()) <= 0) {
+        throw new IllegalArgumentException("Entries must be added in the key order.");
+      }
+      var cell = entry.serialize();
+      if (page != null && !page.hasSpace(cell.capacity())) {
+        closePage();
+      }
+      if (page == null) {
+        page = new Page(this);
+        firstKeys.add(entry.key());
+      }
+      page.appendCell(cell);
+      keys.add(entry.key());
+    }
+
+    private void closePage() {
+      pendingPages.add(page);
+      page = null;
+      if (pendingPages.size() == BATCH_PAGES) {
+        writePendingPages();
+      }
+    }
+
+    private void writePendingPages() {
+      if (pendingPages.isEmpty()) {
+        return;
+      }
+      var pageRef = getDiskAccessController().appendAll(pendingPages);
+      if (writtenPages + pendingPages.size() > pageOffsets.length) {
+        pageOffsets = Arrays.copyOf(pageOffsets,
+            Math.max(pageOffsets.length * 2, writtenPages + pendingPages.size()));
+      }
+      for (int i = 0; i < pendingPages.size(); i++) {
+        pageOffsets[writtenPages++] = pageRef.pageOffset() + (long) i * PAGE_SIZE;
+      }
+      pendingPages.clear();
+    }
+
+    /**
+     * Returns true, if the entry fits in the current page.
+     */
+    boolean fitsInPage(Entry entry) {
+      return page != null && page.hasSpace(entry.size());
+    }
+
+    /**
+     * Returns the size of the run written so far in bytes.
+     */
+    long sizeInBytes() {
+      return (long) firstKeys.size() * PAGE_SIZE;
+    }
+
+    long entryCount() {
+      return keys.size();
+    }
+
+    @Override
+    public PageRef persist() {
+      if (page != null) {
+        closePage();
+      }
+      writePendingPages();
+      markSynced();
+      return writtenPages > 0 ? PageRef.of(pageOffsets[0]) : PageRef.empty();
+    }
+
+    /**
+     * Writes the remaining pages and opens the run for reads.
+     *
+     * @return {@link SortedRun} written, or null if no entries are added, in which case the file
+     * is deleted.
+     */
+    SortedRun finish() {
+      persist();
+      if (keys.isEmpty()) {
+        abandon();
+        return null;
+      }
+      var bloomFilter = BloomFilter.create(keys.size(), BloomFilter.DEFAULT_FALSE_POSITIVE_RATE,
+          getDiskAccessController());
+      keys.forEach(bloomFilter::add);
+      return new SortedRun(fileName, getDiskAccessController(),
+          Arrays.copyOf(pageOffsets, writtenPages), firstKeys.toArray(String[]::new),
+          keys.getLast(), bloomFilter, keys.size());
+    }
+
+    /**
+     * Closes and deletes the file, e.g. if the run cannot be completed.
+     */
+    void abandon() {
+      try {
+        getDiskAccessController().close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      delete(fileName);
+    }
+
+    @Override
+    public PageType getPageType() {
+      return PageType.SORTED_RUN;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.lsm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * An immutable snapshot of the LSM-tree, i.e. the memtable, which takes the writes, the immutable
+ * memtables, which are waiting to be flushed (the newest first), and the sorted runs by level. The
+ * runs of the level 0 are flushed memtables, which may overlap (the newest first). The runs of the
+ * other levels don't overlap, and they are sorted by their keys.
+ * </p>
+ * <p>
+ * Flushes and compactions install a new version instead of modifying the current one. The readers
+ * retain the runs of the version they read from, so the runs replaced by a compaction are deleted
+ * only after the last reader has released them.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+record Version(Memtable active, List<Memtable> immutables, List<List<SortedRun>> levels) {
+
+  Version withActive(Memtable newActive) {
+    var newImmutables = new ArrayList<Memtable>(immutables.size() + 1);
+    newImmutables.add(active);
+    newImmutables.addAll(immutables);
+    return new Version(newActive, List.copyOf(newImmutables), levels);
+  }
+
+  /**
+   * Replaces the oldest immutable memtable with the run, into which it is flushed.
+   */
+  Version withFlushed(Memtable flushed, SortedRun run) {
+    var newImmutables = new ArrayList<>(immutables);
+    newImmutables.remove(flushed);
+    var newLevels = new ArrayList<>(levels);
+    var level0 = new ArrayList<SortedRun>(levels.isEmpty() ? List.of() : levels.getFirst());
+    level0.addFirst(run);
+    if (newLevels.isEmpty()) {
+      newLevels.add(List.copyOf(level0));
+    } else {
+      newLevels.set(0, List.copyOf(level0));
+    }
+    return new Version(active, List.copyOf(newImmutables), List.copyOf(newLevels));
+  }
+
+  Version withLevels(List<List<SortedRun>> newLevels) {
+    return new Version(active, immutables, newLevels);
+  }
+
+  List<SortedRun> level(int level) {
+    return level < levels.size() ? levels.get(level) : List.of();
+  }
+
+  void retain() {
+    levels.forEach(runs -> runs.forEach(SortedRun::retain));
+  }
+
+  void release() {
+    levels.forEach(runs -> runs.forEach(SortedRun::release));
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Counters and latency histograms of the storage engine, i.e. page I/O, fsync durations, tree
+ * restructuring and the latencies of the index operations. Counters are striped
+ * {@link LongAdder}s, so that recording from many threads stays cheap.
+ * </p>
+ * <p>
+ * Every index owns its own instance, which is published as an MXBean under
+ * {@value #OBJECT_NAME_PREFIX}, named after the index file, once it is {@link #register()}ed.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public class IndexMetrics implements IndexMetricsMXBean {
+
+  public static final String OBJECT_NAME_PREFIX = "net.reevik.mergen:type=IndexMetrics";
+
+  /**
+   * Metrics of the nodes, which aren't backed by a file. They are never registered.
+   */
+  public static final IndexMetrics DETACHED = new IndexMetrics("detached");
+
+  private final String name;
+
+  private final LongAdder pageReads = new LongAdder();
+  private final LongAdder pageWrites = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder dataNodeSplits = new LongAdder();
+  private final LongAdder innerNodeSplits = new LongAdder();
+  private final LongAdder nodeDeletions = new LongAdder();
+  private final LongAdder nodeMerges = new LongAdder();
+  private final LongAdder bloomFilterNegatives = new LongAdder();
+  private final LongAdder rightEdgeAppends = new LongAdder();
+  private final LatencyHistogram fsyncLatency = new LatencyHistogram();
+  private final LatencyHistogram upsertLatency = new LatencyHistogram();
+  private final LatencyHistogram queryLatency = new LatencyHistogram();
+  private final LatencyHistogram deleteLatency = new LatencyHistogram();
+  private volatile int treeHeight;
+
+  /**
+   * @param name Name of the metrics, i.e. the name of the index file.
+   */
+  public IndexMetrics(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public ObjectName getObjectName() {
+    try {
+      return new ObjectName(OBJECT_NAME_PREFIX + ",name=" + ObjectName.quote(name));
+    } catch (MalformedObjectNameException e) {
+      throw new IllegalStateException("Invalid name of the index metrics: " + name, e);
+    }
+  }
+
+  /**
+   * Publishes the metrics as an MXBean. The metrics of a previous index on the same file, which
+   * weren't unregistered, are replaced.
+   *
+   * @return The metrics itself.
+   */
+  public IndexMetrics register() {
+    try {
+      var server = ManagementFactory.getPlatformMBeanServer();
+      var objectName = getObjectName();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(this, objectName);
+      return this;
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot register the index metrics.", e);
+    }
+  }
+
+  /**
+   * Removes the MXBean of the metrics, if it is registered.
+   */
+  public void unregister() {
+    try {
+      var server = ManagementFactory.getPlatformMBeanServer();
+      var objectName = getObjectName();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (InstanceNotFoundException e) {
+      // Unregistered concurrently.
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot unregister the index metrics.", e);
+    }
+  }
+
+  public void pageRead() {
+    pageReads.increment();
+  }
+
+  public void pageWritten() {
+    pageWrites.increment();
+  }
+
+  public void bytesRead(long bytes) {
+    bytesRead.add(bytes);
+  }
+
+  public void bytesWritten(long bytes) {
+    bytesWritten.add(bytes);
+  }
+
+  public void dataNodeSplit() {
+    dataNodeSplits.increment();
+  }
+
+  public void innerNodeSplit() {
+    innerNodeSplits.increment();
+  }
+
+  public void nodeDeleted() {
+    nodeDeletions.increment();
+  }
+
+  public void nodeMerged() {
+    nodeMerges.increment();
+  }
+
+  public void bloomFilterNegative() {
+    bloomFilterNegatives.increment();
+  }
+
+  public void rightEdgeAppend() {
+    rightEdgeAppends.increment();
+  }
+
+  public void treeHeight(int treeHeight) {
+    this.treeHeight = treeHeight;
+  }
+
+  public LatencyHistogram fsync() {
+    return fsyncLatency;
+  }
+
+  public LatencyHistogram upsert() {
+    return upsertLatency;
+  }
+
+  public LatencyHistogram query() {
+    return queryLatency;
+  }
+
+  public LatencyHistogram delete() {
+    return deleteLatency;
+  }
+
+  @Override
+  public long getPageReads() {
+    return pageReads.sum();
+  }
+
+  @Override
+  public long getPageWrites() {
+    return pageWrites.sum();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public LatencySnapshot getFsyncLatency() {
+    return fsyncLatency.snapshot();
+  }
+
+  @Override
+  public long getDataNodeSplits() {
+    return dataNodeSplits.sum();
+  }
+
+  @Override
+  public long getInnerNodeSplits() {
+    return innerNodeSplits.sum();
+  }
+
+  @Override
+  public long getNodeDeletions() {
+    return nodeDeletions.sum();
+  }
+
+  @Override
+  public long getNodeMerges() {
+    return nodeMerges.sum();
+  }
+
+  @Override
+  public long getBloomFilterNegatives() {
+    return bloomFilterNegatives.sum();
+  }
+
+  @Override
+  public long getRightEdgeAppends() {
+    return rightEdgeAppends.sum();
+  }
+
+  @Override
+  public int getTreeHeight() {
+    return treeHeight;
+  }
+
+  @Override
+  public LatencySnapshot getUpsertLatency() {
+    return upsertLatency.snapshot();
+  }
+
+  @Override
+  public LatencySnapshot getQueryLatency() {
+    return queryLatency.snapshot();
+  }
+
+  @Override
+  public LatencySnapshot getDeleteLatency() {
+    return deleteLatency.snapshot();
+  }
+
+  @Override
+  public void reset() {
+    pageReads.reset();
+    pageWrites.reset();
+    bytesRead.reset();
+    bytesWritten.reset();
+    dataNodeSplits.reset();
+    innerNodeSplits.reset();
+    nodeDeletions.reset();
+    nodeMerges.reset();
+    bloomFilterNegatives.reset();
+    rightEdgeAppends.reset();
+    fsyncLatency.reset();
+    upsertLatency.reset();
+    queryLatency.reset();
+    deleteLatency.reset();
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.metrics;
+
+/**
+ * Management interface of {@link IndexMetrics}. Latencies are in nanoseconds.
+ *
+ * @author Erhan Bagdemir
+ */
+public interface IndexMetricsMXBean {
+
+  long getPageReads();
+
+  long getPageWrites();
+
+  long getBytesRead();
+
+  long getBytesWritten();
+
+  LatencySnapshot getFsyncLatency();
+
+  long getDataNodeSplits();
+
+  long getInnerNodeSplits();
+
+  long getNodeDeletions();
+
+  long getNodeMerges();
+
+  /**
+   * Returns the number of the lookups answered by the Bloom filter without descending the tree.
+   */
+  long getBloomFilterNegatives();
+
+  /**
+   * Returns the number of the upserts added to the cached right most leaf without descending the
+   * tree.
+   */
+  long getRightEdgeAppends();
+
+  int getTreeHeight();
+
+  LatencySnapshot getUpsertLatency();
+
+  LatencySnapshot getQueryLatency();
+
+  LatencySnapshot getDeleteLatency();
+
+  void reset();
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A log-linear latency histogram in the style of HdrHistogram. Values below 32 are counted exactly,
+ * bigger values fall into one of 16 linear sub-buckets within their power of two range, so the
+ * recorded values have a relative error of at most 1/16 while the histogram covers the whole
+ * positive long range in 960 buckets:
+ * </p>
+ * <pre>
+ *   [0..31] [32..33] [34..35] ... [62..63] [64..67] ... [124..127] [128..135] ...
+ * </pre>
+ * <p>
+ * Recording a value is a single atomic increment on its bucket, and the total count and sum are
+ * striped {@link LongAdder}s, so concurrent recordings don't contend on a single cell.
+ * </p>
+ *
+ * @author Erhan Bagdemir
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+  private static final int BUCKETS =
+      SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS - 1) * HALF_SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+  /**
+   * Records the value. Negative values are recorded as zero.
+   *
+   * @param value The value, e.g. latency in nanoseconds.
+   */
+  public void record(long value) {
+    long normalized = Math.max(value, 0L);
+    buckets.incrementAndGet(bucketOf(normalized));
+    count.increment();
+    sum.add(normalized);
+    max.accumulate(normalized);
+  }
+
+  /**
+   * Records the nanoseconds elapsed since the start.
+   *
+   * @param startNanos Start time from {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    int mantissa = (int) (value >>> shift);
+    return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (mantissa - HALF_SUB_BUCKETS);
+  }
+
+  // The biggest value, which falls into the bucket.
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+    long mantissa = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long total = count.sum();
+    return total == 0 ? 0.0d : (double) sum.sum() / total;
+  }
+
+  /**
+   * The value at the percentile, i.e. the upper bound of the bucket, in which the percentile falls.
+   *
+   * @param percentile Percentile between 0 and 100.
+   * @return The value at the percentile, or zero if nothing is recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = count.sum();
+    if (total == 0) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0d));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += buckets.get(bucket);
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(bucket), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  public LatencySnapshot snapshot() {
+    return new LatencySnapshot(getCount(), getMean(), getValueAtPercentile(50),
+        getValueAtPercentile(90), getValueAtPercentile(99), getValueAtPercentile(99.9), getMax());
+  }
+
+  public void reset() {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      buckets.set(bucket, 0L);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+}
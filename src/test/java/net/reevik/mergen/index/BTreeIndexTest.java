@@ -16,7 +16,25 @@
 package net.reevik.mergen.index;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.ValueLog;
+import net.reevik.mergen.io.ValuePointer;
 import net.reevik.mikron.annotation.ManagedApplication;
 import net.reevik.mikron.annotation.ManagedTest;
 import net.reevik.mikron.annotation.Wire;
@@ -76,6 +94,542 @@ class BTreeIndexTest {
         .map(dr -> new String(dr.getPayload())).toList()).contains("450");
   }
 
+  @Test
+  void testIndexQueryAll() {
+    var results = bTreeIndex.queryAll(List.of("700", "300", "999", "450", "300"));
+    assertThat(results.keySet()).containsExactly("300", "450", "700", "999");
+    assertThat(results.get("300").stream()
+        .map(dr -> new String(dr.getPayload())).toList()).containsExactly("300");
+    assertThat(results.get("450").stream()
+        .map(dr -> new String(dr.getPayload())).toList()).containsExactly("450");
+    assertThat(results.get("700").stream()
+        .map(dr -> new String(dr.getPayload())).toList()).containsExactly("700");
+    assertThat(results.get("999")).isEmpty();
+  }
+
+  @Test
+  void testConcurrentQueryAsync() {
+    var keys = List.of("300", "400", "450", "500", "600", "700");
+    var queries = new ArrayList<CompletableFuture<List<DataRecord>>>();
+    for (int i = 0; i < 10_000; i++) {
+      queries.add(bTreeIndex.queryAsync(keys.get(i % keys.size())));
+    }
+    for (int i = 0; i < queries.size(); i++) {
+      assertThat(queries.get(i).join().stream()
+          .map(dr -> new String(dr.getPayload())).toList())
+          .containsExactly(keys.get(i % keys.size()));
+    }
+  }
+
+  @Test
+  void testScan() {
+    var indexKeys = new ArrayList<Object>();
+    bTreeIndex.scan().forEachRemaining(keyData -> indexKeys.add(keyData.indexKey()));
+    assertThat(indexKeys).containsExactly("300", "400", "450", "500", "600", "700");
+    indexKeys.clear();
+    bTreeIndex.scan("400", "600").forEachRemaining(keyData -> indexKeys.add(keyData.indexKey()));
+    assertThat(indexKeys).containsExactly("400", "450", "500");
+  }
+
+  @Test
+  void testScanPersistedLeaves() {
+    var firstLeaf = bTreeIndex.persistLeaves();
+    var indexKeys = new ArrayList<Object>();
+    try (var scanner = new LeafScanner(firstLeaf, bTreeIndex.getDiskAccessController())) {
+      scanner.forEachRemaining(keyData -> indexKeys.add(keyData.indexKey()));
+    }
+    assertThat(indexKeys).containsExactly("300", "400", "450", "500", "600", "700");
+  }
+
+  @Test
+  void testInlinePayloads() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    index.setInlinePayloadLimit(8);
+    index.upsert(createRecord("100", "small"));
+    index.upsert(createRecord("200", "larger than the limit"));
+    index.upsert(createRecord("300", "limit-08"));
+    var inline = new ArrayList<String>();
+    try (var scanner = new LeafScanner(index.persistLeaves(), index.getDiskAccessController())) {
+      scanner.forEachRemaining(keyData -> {
+        if (keyData.dataRecord().isSynced()) {
+          inline.add(new String(keyData.dataRecord().getPayload()));
+        }
+      });
+    }
+    assertThat(inline).containsExactly("small", "limit-08");
+  }
+
+  @Test
+  void testInlinePayloadsAfterLoweringTheLimit() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    index.setInlinePayloadLimit(16);
+    index.upsert(createRecord("100", "small"));
+    index.upsert(createRecord("200", "limit-16-payload"));
+    index.persistLeaves();
+    index.setInlinePayloadLimit(4);
+    var payloads = new ArrayList<String>();
+    try (var scanner = new LeafScanner(index.persistLeaves(), index.getDiskAccessController())) {
+      scanner.forEachRemaining(keyData -> payloads.add(
+          new String(keyData.dataRecord().getPayload())));
+    }
+    assertThat(payloads).containsExactly("small", "limit-16-payload");
+  }
+
+  @Test
+  void testValueLog() throws IOException {
+    var directory = Files.createTempDirectory("value-log");
+    try (var valueLog = new ValueLog(directory.resolve("values").toString(), 64)) {
+      var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+      index.enableValueLog(valueLog, 8, 0);
+      for (int i = 0; i < 20; i++) {
+        index.upsert(createRecord(String.format("%02d", i), "logged-payload-" + i));
+      }
+      index.upsert(createRecord("small", "small"));
+      for (int i = 0; i < 20; i += 2) {
+        index.delete(String.format("%02d", i));
+      }
+      assertThat(payloads(index.query("03"))).containsExactly("logged-payload-3");
+      var logged = new ArrayList<ValuePointer>();
+      try (var scanner = new LeafScanner(index.persistLeaves(), index.getDiskAccessController())) {
+        scanner.forEachRemaining(keyData -> logged.add(keyData.dataRecord().getValuePointer()));
+      }
+      assertThat(logged.stream().filter(Objects::nonNull).toList()).hasSize(10);
+      // The sealed segments are collected once, in which the live payloads are moved to the head.
+      int segments = valueLog.getSegmentCount();
+      int moved = 0;
+      for (int i = 1; i < segments; i++) {
+        moved += index.collectValueLog();
+      }
+      assertThat(moved).isPositive();
+      assertThat(valueLog.getSegmentCount()).isLessThan(segments);
+      for (int i = 1; i < 20; i += 2) {
+        assertThat(payloads(index.query(String.format("%02d", i))))
+            .containsExactly("logged-payload-" + i);
+      }
+      assertThat(payloads(index.query("small"))).containsExactly("small");
+    }
+  }
+
+  @Test
+  void testClose() throws IOException {
+    var indexFile = Files.createTempFile("closed-index", ".idx");
+    var index = new BTreeIndex(new DiskController(indexFile.toString()));
+    index.upsert(createRecord("100", "100"));
+    assertThat(payloads(index.queryAsync("100").join())).containsExactly("100");
+    index.close();
+    assertThatThrownBy(() -> index.queryAsync("100"))
+        .isInstanceOf(RejectedExecutionException.class);
+    Files.deleteIfExists(indexFile);
+  }
+
+  @Test
+  void testMetricsPerIndexFile() throws IOException {
+    var firstFile = Files.createTempFile("first-index", ".idx");
+    var secondFile = Files.createTempFile("second-index", ".idx");
+    var first = new BTreeIndex(new DiskController(firstFile.toString()));
+    var second = new BTreeIndex(new DiskController(secondFile.toString()));
+    var server = ManagementFactory.getPlatformMBeanServer();
+    var firstName = first.getMetrics().getObjectName();
+    assertThat(firstName).isNotEqualTo(second.getMetrics().getObjectName());
+    assertThat(server.isRegistered(firstName)).isTrue();
+    for (int i = 0; i < 10; i++) {
+      first.upsert(createRecord(String.format("key-%02d", i), "payload-" + i));
+    }
+    assertThat(first.getMetrics().getUpsertLatency().getCount()).isEqualTo(10L);
+    assertThat(first.getMetrics().getDataNodeSplits()).isPositive();
+    assertThat(second.getMetrics().getUpsertLatency().getCount()).isZero();
+    assertThat(second.getMetrics().getDataNodeSplits()).isZero();
+    first.close();
+    second.close();
+    assertThat(server.isRegistered(firstName)).isFalse();
+    Files.deleteIfExists(firstFile);
+    Files.deleteIfExists(secondFile);
+  }
+
+  @Test
+  void testBloomFilterAnswersMissingKeys() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    index.upsert(createRecord("450", "450"));
+    index.enableBloomFilter(1024);
+    long negatives = index.getMetrics().getBloomFilterNegatives();
+    assertThat(index.query("999")).isEmpty();
+    assertThat(index.getMetrics().getBloomFilterNegatives()).isEqualTo(negatives + 1);
+    var pageRef = index.persistBloomFilter();
+    index.loadBloomFilter(pageRef);
+    assertThat(index.query("450").stream()
+        .map(dr -> new String(dr.getPayload())).toList()).contains("450");
+  }
+
+  @Test
+  void testDuplicateKeys() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController(), true);
+    for (int i = 0; i < 20; i++) {
+      index.upsert(createRecord(i % 2 == 0 ? "active" : "inactive", "payload-" + i));
+    }
+    index.upsert(createRecord("deleted", "payload-20"));
+    assertThat(index.query("active")).hasSize(10);
+    assertThat(index.query("inactive")).hasSize(10);
+    assertThat(index.query("deleted").stream()
+        .map(dr -> new String(dr.getPayload())).toList()).containsExactly("payload-20");
+    assertThat(index.delete("active")).hasSize(10);
+    assertThat(index.query("active")).isEmpty();
+    assertThat(index.query("inactive")).hasSize(10);
+  }
+
+  @Test
+  void testMessageBuffers() {
+    var buffered = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    var unbuffered = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    buffered.enableMessageBuffers(8);
+    var random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      var indexKey = "key-" + random.nextInt(150);
+      if (i == 0 || random.nextInt(3) > 0) {
+        var dataEntity = createRecord(indexKey, "payload-" + i);
+        buffered.upsert(dataEntity);
+        unbuffered.upsert(dataEntity);
+      } else {
+        assertThat(payloads(buffered.delete(indexKey)))
+            .isEqualTo(payloads(unbuffered.delete(indexKey)));
+      }
+    }
+    for (int i = 0; i < 150; i++) {
+      assertThat(payloads(buffered.query("key-" + i)))
+          .isEqualTo(payloads(unbuffered.query("key-" + i)));
+    }
+    var bufferedKeys = new ArrayList<Object>();
+    buffered.scan().forEachRemaining(keyData -> bufferedKeys.add(keyData.indexKey()));
+    var unbufferedKeys = new ArrayList<Object>();
+    unbuffered.scan().forEachRemaining(keyData -> unbufferedKeys.add(keyData.indexKey()));
+    assertThat(bufferedKeys).isEqualTo(unbufferedKeys);
+  }
+
+  @Test
+  void testOrderStatistics() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    for (int i = 0; i < 500; i++) {
+      index.upsert(createRecord(String.format("key-%03d", i), "payload-" + i));
+    }
+    for (int i = 0; i < 500; i += 2) {
+      index.delete(String.format("key-%03d", i));
+    }
+    assertThat(index.size()).isEqualTo(250L);
+    assertThat(index.count("key-100", "key-200")).isEqualTo(50L);
+    assertThat(index.count(null, "key-010")).isEqualTo(5L);
+    assertThat(index.rank("key-101")).isEqualTo(50L);
+    assertThat(index.rank("key-102")).isEqualTo(51L);
+    assertThat(index.select(50).indexKey()).isEqualTo("key-101");
+    assertThat(index.select(249).indexKey()).isEqualTo("key-499");
+    assertThatThrownBy(() -> index.select(250)).isInstanceOf(IndexOutOfBoundsException.class);
+  }
+
+  @Test
+  void testPrefixQuery() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    for (var indexKey : List.of("tenant-12/a", "tenant-123", "tenant-123/a", "tenant-123/b",
+        "tenant-123/c", "tenant-1230/a", "tenant-124/a", "tenant-2/a")) {
+      index.upsert(createRecord(indexKey, indexKey));
+    }
+    var indexKeys = new ArrayList<Object>();
+    index.queryPrefix("tenant-123/").forEachRemaining(keyData -> indexKeys.add(keyData.indexKey()));
+    assertThat(indexKeys).containsExactly("tenant-123/a", "tenant-123/b", "tenant-123/c");
+    assertThat(BTreeIndex.prefixUpperBound("ab\uffff")).isEqualTo("ac");
+    assertThat(BTreeIndex.prefixUpperBound("\uffff")).isNull();
+    assertThat(BTreeIndex.prefixUpperBound("")).isNull();
+  }
+
+  @Test
+  void testRightEdgeAppends() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    var metrics = index.getMetrics();
+    long appends = metrics.getRightEdgeAppends();
+    long splits = metrics.getDataNodeSplits();
+    for (int i = 0; i < 100; i++) {
+      index.upsert(createRecord(String.format("event-%03d", i), "payload-" + i));
+    }
+    // The left nodes keep two keys, so every other append splits, instead of every append with
+    // the mid-point splits.
+    assertThat(metrics.getDataNodeSplits() - splits).isEqualTo(50L);
+    assertThat(metrics.getRightEdgeAppends() - appends).isEqualTo(97L);
+    assertThat(index.size()).isEqualTo(100L);
+    assertThat(payloads(index.query("event-042"))).containsExactly("payload-42");
+  }
+
+  @Test
+  void testUnderflowRebalancing() {
+    var sparse = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    var compact = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    compact.setMinFillPercent(100);
+    var random = new Random(7);
+    for (int i = 0; i < 400; i++) {
+      var dataEntity = createRecord(String.format("key-%03d", random.nextInt(300)), "payload");
+      sparse.upsert(dataEntity);
+      compact.upsert(dataEntity);
+    }
+    for (int i = 0; i < 300; i++) {
+      var indexKey = String.format("key-%03d", random.nextInt(300));
+      assertThat(payloads(compact.delete(indexKey))).isEqualTo(payloads(sparse.delete(indexKey)));
+    }
+    var compactKeys = new ArrayList<Object>();
+    compact.scan().forEachRemaining(keyData -> compactKeys.add(keyData.indexKey()));
+    var sparseKeys = new ArrayList<Object>();
+    sparse.scan().forEachRemaining(keyData -> sparseKeys.add(keyData.indexKey()));
+    assertThat(compactKeys).isEqualTo(sparseKeys);
+    assertThat(compact.size()).isEqualTo((long) sparseKeys.size());
+    // Both hold the same keys, so they differ only in the number of the leaf pages written.
+    var metrics = compact.getMetrics();
+    long writes = metrics.getPageWrites();
+    sparse.persistLeaves();
+    long sparseLeaves = metrics.getPageWrites() - writes;
+    writes = metrics.getPageWrites();
+    compact.persistLeaves();
+    assertThat(metrics.getPageWrites() - writes).isLessThan(sparseLeaves);
+  }
+
+  @Test
+  void testDeferredDeletes() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    index.enableDeferredDeletes(Integer.MAX_VALUE);
+    for (int i = 0; i < 100; i++) {
+      index.upsert(createRecord(String.format("key-%03d", i), "payload-" + i));
+    }
+    long deletions = index.getMetrics().getNodeDeletions();
+    for (int i = 0; i < 100; i += 2) {
+      assertThat(payloads(index.delete(String.format("key-%03d", i))))
+          .containsExactly("payload-" + i);
+    }
+    // The deletes only mark the entries, so no leaf has been removed yet.
+    assertThat(index.getMetrics().getNodeDeletions()).isEqualTo(deletions);
+    assertThat(index.query("key-042")).isEmpty();
+    assertThat(index.delete("key-042")).isEmpty();
+    assertThat(index.size()).isEqualTo(50L);
+    assertThat(index.select(0).indexKey()).isEqualTo("key-001");
+    index.upsert(createRecord("key-042", "payload-42"));
+    assertThat(payloads(index.query("key-042"))).containsExactly("payload-42");
+    assertThat(index.purgeTombstones()).isEqualTo(49);
+    var indexKeys = new ArrayList<Object>();
+    index.scan().forEachRemaining(keyData -> indexKeys.add(keyData.indexKey()));
+    assertThat(indexKeys).hasSize(51);
+    assertThat(indexKeys.getFirst()).isEqualTo("key-001");
+  }
+
+  @Test
+  void testDeleteRange() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    for (int i = 0; i < 100; i++) {
+      index.upsert(createRecord(String.format("key-%03d", i), "payload-" + i));
+    }
+    assertThat(index.deleteRange("key-010", "key-090")).isEqualTo(80L);
+    assertThat(index.query("key-050")).isEmpty();
+    assertThat(payloads(index.query("key-090"))).containsExactly("payload-90");
+    assertThat(index.select(10).indexKey()).isEqualTo("key-090");
+    assertThat(index.deleteRange(null, "key-005")).isEqualTo(5L);
+    assertThat(index.deleteRange("key-095", null)).isEqualTo(5L);
+    assertThat(index.deleteRange("key-090", "key-010")).isZero();
+    assertThat(index.size()).isEqualTo(10L);
+    index.upsert(createRecord("key-050", "payload-50"));
+    assertThat(payloads(index.query("key-050"))).containsExactly("payload-50");
+    assertThat(index.deleteRange(null, null)).isEqualTo(11L);
+    assertThat(index.size()).isZero();
+  }
+
+  @Test
+  void testCompositeKeys() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    for (long timestamp = -5; timestamp < 5; timestamp++) {
+      for (var tenant : List.of("tenant", "tenant-2", "tenant\u0000")) {
+        var indexKey = CompositeKey.of(tenant, timestamp, "id");
+        index.upsert(new DataEntity(indexKey, (tenant + timestamp).getBytes()));
+      }
+    }
+    var timestamps = new ArrayList<Object>();
+    var tenant = CompositeKey.of("tenant");
+    index.scan(tenant.toString(), tenant.prefixUpperBound()).forEachRemaining(
+        keyData -> timestamps.add(CompositeKey.decode(keyData.indexKey()).components().get(1)));
+    assertThat(timestamps).containsExactly(-5L, -4L, -3L, -2L, -1L, 0L, 1L, 2L, 3L, 4L);
+    var range = new ArrayList<String>();
+    var from = CompositeKey.of("tenant-2", -1).toString();
+    index.scan(from, CompositeKey.of("tenant-2", 2).toString()).forEachRemaining(
+        keyData -> range.add(new String(keyData.dataRecords().getFirst().getPayload())));
+    assertThat(range).containsExactly("tenant-2-1", "tenant-20", "tenant-21");
+  }
+
+  @Test
+  void testCompositeKeyQueriesAndDeletes() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+    for (long timestamp = 0; timestamp < 5; timestamp++) {
+      var indexKey = CompositeKey.of("tenant", timestamp);
+      index.upsert(new DataEntity(indexKey, ("payload-" + timestamp).getBytes()));
+    }
+    var indexKey = CompositeKey.of("tenant", 3L).toString();
+    assertThat(payloads(index.query(indexKey))).containsExactly("payload-3");
+    assertThat(payloads(index.delete(indexKey))).containsExactly("payload-3");
+    assertThat(index.query(indexKey)).isEmpty();
+    assertThat(index.size()).isEqualTo(4L);
+  }
+
+  @Test
+  void testCompositeKeyReUpsertIntoValueLog() throws IOException {
+    var directory = Files.createTempDirectory("composite-value-log");
+    // Every append seals the previous segment, so each payload has a segment of its own.
+    try (var valueLog = new ValueLog(directory.resolve("values").toString(), 1)) {
+      var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+      index.enableValueLog(valueLog, 0, 0);
+      var indexKey = CompositeKey.of("tenant", 1L);
+      index.upsert(new DataEntity(indexKey, "first-payload".getBytes()));
+      index.upsert(new DataEntity(indexKey, "other-payload".getBytes()));
+      index.upsert(new DataEntity(CompositeKey.of("tenant", 2L), "next-payload".getBytes()));
+      // The existing key is kept, so the second payload is garbage in the log.
+      assertThat(payloads(index.query(indexKey.toString()))).containsExactly("first-payload");
+      assertThat(valueLog.garbagePercent(0)).isZero();
+      assertThat(valueLog.garbagePercent(1)).isPositive();
+    }
+  }
+
+  @Test
+  void testDiscardDroppedUpsertsAndRangeDeletes() throws IOException {
+    var directory = Files.createTempDirectory("discarded-value-log");
+    try (var valueLog = new ValueLog(directory.resolve("values").toString(), 1)) {
+      var index = new BTreeIndex(bTreeIndex.getDiskAccessController());
+      index.enableValueLog(valueLog, 0, 0);
+      index.enableMessageBuffers(4);
+      for (int i = 0; i < 20; i++) {
+        index.upsert(createRecord("key-" + (10 + i), "first-" + i));
+      }
+      // The upserts of the existing keys are dropped in the buffers or in the leaves.
+      for (int i = 0; i < 20; i++) {
+        index.upsert(createRecord("key-" + (10 + i), "other-" + i));
+      }
+      assertThat(index.deleteRange("key-10", "key-20")).isEqualTo(10L);
+      index.upsert(createRecord("last", "last"));
+      assertThat(payloads(index.query("key-25"))).containsExactly("first-15");
+      for (int segment = 0; segment < 40; segment++) {
+        if (segment >= 10 && segment < 20) {
+          assertThat(valueLog.garbagePercent(segment)).isZero();
+        } else {
+          assertThat(valueLog.garbagePercent(segment)).isPositive();
+        }
+      }
+    }
+  }
+
+  @Test
+  void testStreams() throws Exception {
+    try (var stream = bTreeIndex.stream("400", "600")) {
+      assertThat(stream.map(dr -> new String(dr.getPayload())).toList())
+          .containsExactly("400", "450", "500");
+    }
+    assertThat(bTreeIndex.queryStream("700").map(dr -> new String(dr.getPayload())).toList())
+        .containsExactly("700");
+    var received = new CopyOnWriteArrayList<String>();
+    var completed = new CompletableFuture<Void>();
+    var outstanding = new AtomicInteger();
+    bTreeIndex.publisher(null, null).subscribe(new Flow.Subscriber<>() {
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        outstanding.incrementAndGet();
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(DataRecord item) {
+        if (outstanding.decrementAndGet() < 0) {
+          completed.completeExceptionally(new IllegalStateException("Demand exceeded."));
+        }
+        received.add(new String(item.getPayload()));
+        outstanding.incrementAndGet();
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        completed.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        completed.complete(null);
+      }
+    });
+    completed.get(10, TimeUnit.SECONDS);
+    assertThat(received).containsExactly("300", "400", "450", "500", "600", "700");
+  }
+
+  @Test
+  void testQueryStreamOverPostingList() {
+    var index = new BTreeIndex(bTreeIndex.getDiskAccessController(), true);
+    for (int i = 0; i < 600; i++) {
+      index.upsert(createRecord("active", "payload-" + i));
+    }
+    index.upsert(createRecord("inactive", "payload-600"));
+    assertThat(index.queryStream("active").map(dr -> new String(dr.getPayload())).toList())
+        .isEqualTo(payloads(index.query("active")));
+    assertThat(index.queryStream("active").count()).isEqualTo(600L);
+    assertThat(index.queryStream("missing").count()).isZero();
+  }
+
+  @Test
+  void testPublisherClosesStream() throws Exception {
+    var closed = new CountDownLatch(2);
+    var publisher = new RecordPublisher(() -> bTreeIndex.stream(null, null)
+        .onClose(closed::countDown), Runnable::run);
+    var received = new CopyOnWriteArrayList<String>();
+    publisher.subscribe(new Flow.Subscriber<>() {
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(DataRecord item) {
+        received.add(new String(item.getPayload()));
+        subscription.cancel();
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+    assertThat(received).containsExactly("300");
+    var completed = new CompletableFuture<Void>();
+    publisher.subscribe(new Flow.Subscriber<>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(DataRecord item) {
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        completed.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        completed.complete(null);
+      }
+    });
+    completed.get(10, TimeUnit.SECONDS);
+    assertThat(closed.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private static List<String> payloads(List<DataRecord> dataRecords) {
+    return dataRecords.stream().map(dataRecord -> new String(dataRecord.getPayload())).toList();
+  }
+
   static DataEntity createRecord(String indexKey, String payload) {
     return new DataEntity(indexKey, payload.getBytes());
   }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mikron.annotation.ManagedApplication;
+import net.reevik.mikron.annotation.ManagedTest;
+import net.reevik.mikron.annotation.Wire;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+@ManagedApplication(packages = {"net.reevik.mergen.*"})
+@ManagedTest
+class BloomFilterTest {
+
+  @Wire(name = "diskAccessController")
+  private DiskController diskAccessController;
+
+  @AfterEach
+  void tearDown() {
+    diskAccessController.purge();
+  }
+
+  @Test
+  void testNoFalseNegatives() {
+    var bloomFilter = BloomFilter.create(10_000, 0.01d, diskAccessController);
+    for (int i = 0; i < 10_000; i++) {
+      bloomFilter.add("key-" + i);
+    }
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(bloomFilter.mightContain("key-" + i)).isTrue();
+    }
+  }
+
+  @Test
+  void testFalsePositiveRate() {
+    var bloomFilter = BloomFilter.create(10_000, 0.01d, diskAccessController);
+    for (int i = 0; i < 10_000; i++) {
+      bloomFilter.add("key-" + i);
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (bloomFilter.mightContain("missing-" + i)) {
+        falsePositives++;
+      }
+    }
+    assertThat(falsePositives / 100_000d).isLessThan(0.02d);
+  }
+
+  @Test
+  void testPersistAndRead() {
+    var bloomFilter = BloomFilter.create(50_000, 0.01d, diskAccessController);
+    for (int i = 0; i < 50_000; i++) {
+      bloomFilter.add("key-" + i);
+    }
+    var pageRef = bloomFilter.persist();
+    var readBloomFilter = BloomFilter.read(pageRef, diskAccessController);
+    assertThat(readBloomFilter.getInsertions()).isEqualTo(50_000L);
+    for (int i = 0; i < 100_000; i++) {
+      assertThat(readBloomFilter.mightContain("key-" + i))
+          .isEqualTo(bloomFilter.mightContain("key-" + i));
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import net.reevik.mergen.io.PageRef;
+import org.junit.jupiter.api.Test;
+
+class CompositeKeyTest {
+
+  @Test
+  void testOrder() {
+    var keys = List.of(
+        CompositeKey.of("tenant", Long.MIN_VALUE),
+        CompositeKey.of("tenant", -1),
+        CompositeKey.of("tenant", 0),
+        CompositeKey.of("tenant", 255),
+        CompositeKey.of("tenant", 256, "a"),
+        CompositeKey.of("tenant", 256, "a\u0000"),
+        CompositeKey.of("tenant", 256, "ab"),
+        CompositeKey.of("tenant", Long.MAX_VALUE),
+        CompositeKey.of("tenant\u0000"),
+        CompositeKey.of("tenant-2", -0.5d),
+        CompositeKey.of("tenant-2", 0.0d),
+        CompositeKey.of("tenant-2", 1.5d),
+        CompositeKey.of("\u00e9"));
+    for (int i = 1; i < keys.size(); i++) {
+      assertThat(keys.get(i - 1).toString().compareTo(keys.get(i).toString())).isLessThan(0);
+    }
+  }
+
+  @Test
+  void testComponents() {
+    var key = CompositeKey.of("tenant\u0000\u00e9", 42, -7L, 2.5d, new byte[] {0, 1});
+    var components = CompositeKey.decode(key.toString()).components();
+    assertThat(components.subList(0, 4)).containsExactly("tenant\u0000\u00e9", 42L, -7L, 2.5d);
+    assertThat((byte[]) components.get(4)).isEqualTo(new byte[] {0, 1});
+    assertThatThrownBy(() -> CompositeKey.decode("plain-key"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void testLeafCell() {
+    var key = CompositeKey.of("tenant", 1_700_000_000_000L, "id\u0000");
+    var keyData = new KeyData(key, new DataRecord(PageRef.of(0), null));
+    var cell = KeyData.deserialize(ByteBuffer.wrap(keyData.serialize().array()), null);
+    assertThat(CompositeKey.decode(cell.indexKey())).isEqualTo(key);
+  }
+}
@@ -18,6 +18,9 @@ package net.reevik.mergen.index;
 import static net.reevik.mergen.index.Key.KeyType.RMN;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import net.reevik.mergen.io.DiskController;
 import net.reevik.mergen.io.PageRef;
 import net.reevik.mikron.annotation.ManagedApplication;
@@ -83,6 +86,90 @@ class InnerNodeTest {
     Assertions.assertThat(deserializedPage.getKeySet()).hasSize(2);
   }
 
+  @Test
+  void testChildIndexOfRoutesSeparatorsToTheRight() {
+    var inner = createInnerNode(List.of("200", "400"), leaf("100"), leaf("200"), leaf("400"));
+    assertThat(inner.childIndexOf("100")).isEqualTo(0);
+    assertThat(inner.childIndexOf("200")).isEqualTo(1);
+    assertThat(inner.childIndexOf("300")).isEqualTo(1);
+    assertThat(inner.childIndexOf("400")).isEqualTo(2);
+    assertThat(inner.childIndexOf("500")).isEqualTo(2);
+    assertThat(inner.childFor("200")).isSameAs(inner.getKeySet().get(1).node());
+  }
+
+  @Test
+  void testSplitOnceCapacityIsExceeded() {
+    var separators = new ArrayList<String>();
+    var children = new ArrayList<Node>();
+    for (int i = 1; i < InnerNode.MAX_CHILDREN; i++) {
+      separators.add(i + "00");
+    }
+    for (int i = 0; i < InnerNode.MAX_CHILDREN; i++) {
+      children.add(leaf(i + "50"));
+    }
+    var inner = createInnerNode(separators, children.toArray(Node[]::new));
+    assertThat(inner.doGetSize()).isEqualTo(InnerNode.MAX_CHILDREN);
+    assertThat(inner.getParent()).isNull();
+
+    inner.add(new Key(InnerNode.MAX_CHILDREN + "00", leaf(InnerNode.MAX_CHILDREN + "50")));
+    var parent = inner.getParent();
+    assertThat(parent).isNotNull();
+    Assertions.assertThat(parent.getIndexKeys()).containsExactly("200");
+    var left = (InnerNode) parent.getKeySet().getFirst().node();
+    Assertions.assertThat(left.getIndexKeys()).containsExactly("100");
+    Assertions.assertThat(inner.getIndexKeys()).containsExactly("300");
+    assertThat(left.doGetSize() + inner.doGetSize()).isEqualTo(InnerNode.MAX_CHILDREN + 1);
+  }
+
+  @Test
+  void testUnderfullNodeBorrowsFromSibling() {
+    var leaf300 = leaf("300");
+    var left = createInnerNode(List.of("200"), leaf("100"), leaf("200"));
+    var right = createInnerNode(List.of("400", "500"), leaf300, leaf("400"), leaf("500"));
+    var parent = createInnerNode(List.of("300"), left, right);
+    left.deleteNodeAndBalanceBy("100", 100);
+    Assertions.assertThat(left.getIndexKeys()).containsExactly("300");
+    Assertions.assertThat(parent.getIndexKeys()).containsExactly("400");
+    Assertions.assertThat(right.getIndexKeys()).containsExactly("500");
+    assertThat(leaf300.getParent()).isSameAs(left);
+  }
+
+  @Test
+  void testUnderfullNodeMergesWithSibling() {
+    for (int minFillPercent : new int[]{0, 100}) {
+      var leaf200 = leaf("200");
+      var left = createInnerNode(List.of("200"), leaf("100"), leaf200);
+      var right = createInnerNode(List.of("400"), leaf("300"), leaf("400"));
+      var parent = createInnerNode(List.of("300"), left, right);
+      var root = new AtomicReference<Node>(parent);
+      parent.registerObserver(root::set);
+      left.deleteNodeAndBalanceBy("100", minFillPercent);
+      // The root with a single child collapses into the merged node.
+      assertThat(root.get()).isSameAs(right);
+      assertThat(right.getParent()).isNull();
+      Assertions.assertThat(right.getIndexKeys()).containsExactly("300", "400");
+      assertThat(leaf200.getParent()).isSameAs(right);
+    }
+  }
+
+  private InnerNode createInnerNode(List<String> separators, Node... children) {
+    var inner = createInnerNode();
+    for (int i = 0; i < separators.size(); i++) {
+      inner.add(new Key(separators.get(i), children[i]));
+    }
+    inner.add(new Key(RMN, children[separators.size()]));
+    for (var child : children) {
+      child.setParent(inner);
+    }
+    return inner;
+  }
+
+  private DataNode leaf(String indexKey) {
+    var leaf = new DataNode(diskAccessController);
+    leaf.add(new KeyData(indexKey, new DataRecord(indexKey.getBytes(), diskAccessController)));
+    return leaf;
+  }
+
   private InnerNode createAndSplitInnerNode() {
     var inner = createInnerNode();
     inner.add(new Key("100", createInnerNode()));
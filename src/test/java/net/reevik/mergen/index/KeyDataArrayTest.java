@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mergen.io.ValuePointer;
+import net.reevik.mikron.annotation.ManagedApplication;
+import net.reevik.mikron.annotation.Wire;
+import org.junit.jupiter.api.Test;
+
+@ManagedApplication(packages = "net.reevik.hierarchy.*")
+class KeyDataArrayTest {
+
+  @Wire
+  private DiskController diskAccessController;
+
+  @Test
+  void testAddKeepsKeysSorted() {
+    var keyDataArray = new KeyDataArray(diskAccessController);
+    for (var indexKey : new String[]{"500", "300", "4000", "100"}) {
+      assertThat(keyDataArray.add(reference(indexKey, Long.parseLong(indexKey)))).isTrue();
+    }
+    assertThat(keyDataArray.add(reference("300", 1L))).isFalse();
+    assertThat(keyDataArray).extracting(KeyData::indexKey)
+        .containsExactly("100", "300", "4000", "500");
+    assertThat(keyDataArray.get("300").dataRecord().getPageRef().pageOffset()).isEqualTo(300L);
+    assertThat(keyDataArray.get("400")).isNull();
+    assertThat(keyDataArray.ceilingIndex("400", true)).isEqualTo(2);
+    assertThat(keyDataArray.ceilingIndex("300", false)).isEqualTo(2);
+  }
+
+  @Test
+  void testOnlyUnloadedRecordsAreKeptAsReferences() {
+    var keyDataArray = new KeyDataArray(diskAccessController);
+    var dirty = new DataRecord("payload".getBytes(), diskAccessController);
+    var logged = DataRecord.createLogged(new ValuePointer(1, 64L, 7), diskAccessController);
+    var postingList = new PostingList(diskAccessController);
+    postingList.add(dirty);
+    keyDataArray.add(reference("100", 16384L));
+    keyDataArray.add(new KeyData("200", dirty));
+    keyDataArray.add(new KeyData("300", logged));
+    keyDataArray.add(new KeyData("400", dirty, postingList));
+    keyDataArray.add(new KeyData("500", null, null, true));
+    assertThat(keyDataArray.isReference(0)).isTrue();
+    assertThat(keyDataArray.get(0).dataRecord().isUnsynced()).isTrue();
+    for (int i = 1; i < keyDataArray.size(); i++) {
+      assertThat(keyDataArray.isReference(i)).isFalse();
+    }
+    assertThat(keyDataArray.get("200").dataRecord()).isSameAs(dirty);
+    assertThat(keyDataArray.get("300").dataRecord()).isSameAs(logged);
+    assertThat(keyDataArray.get("400").postingList() == postingList).isTrue();
+    assertThat(keyDataArray.get("500").tombstone()).isTrue();
+    assertThat(keyDataArray.contains(new KeyData("200", dirty))).isTrue();
+    assertThat(keyDataArray.tombstonesIn(0, keyDataArray.size())).isEqualTo(1);
+    assertThat(keyDataArray.entries(0, keyDataArray.size())).hasSize(4);
+  }
+
+  @Test
+  void testRemove() {
+    var keyDataArray = new KeyDataArray(diskAccessController);
+    for (int i = 0; i < 100; i++) {
+      keyDataArray.add(reference(String.format("%03d", i), i));
+    }
+    assertThat(keyDataArray.removeAt(50).indexKey()).isEqualTo("050");
+    keyDataArray.removeRange(10, 20);
+    assertThat(keyDataArray.removeIf(keyData -> keyData.indexKey().toString().endsWith("5")))
+        .isTrue();
+    var expected = new ArrayList<String>();
+    for (int i = 0; i < 100; i++) {
+      if (i != 50 && (i < 10 || i >= 20) && i % 10 != 5) {
+        expected.add(String.format("%03d", i));
+      }
+    }
+    assertThat(keyDataArray).extracting(KeyData::indexKey)
+        .containsExactlyElementsOf(new ArrayList<Object>(expected));
+    assertThat(keyDataArray.get("049").dataRecord().getPageRef().pageOffset()).isEqualTo(49L);
+    assertThat(keyDataArray.get("051").dataRecord().getPageRef().pageOffset()).isEqualTo(51L);
+    var iterator = keyDataArray.iterator();
+    while (iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+    assertThat(keyDataArray.isEmpty()).isTrue();
+  }
+
+  @Test
+  void testDeserializeDataNodePage() {
+    var dataNode = new DataNode(diskAccessController);
+    dataNode.add(reference("600", 600L));
+    dataNode.add(new KeyData("500", DataRecord.createLogged(new ValuePointer(2, 8L, 16),
+        diskAccessController)));
+    var deserialized = DataNode.deserialize(dataNode.serialize(), diskAccessController);
+    assertThat(deserialized).extracting(KeyData::indexKey).containsExactly("500", "600");
+    assertThat(deserialized.entryOf("500").dataRecord().getValuePointer())
+        .isEqualTo(new ValuePointer(2, 8L, 16));
+    assertThat(deserialized.entryOf("600").dataRecord().getPageRef().pageOffset())
+        .isEqualTo(600L);
+  }
+
+  @Test
+  void testKeysAreOrderedAsStrings() {
+    // The characters around the UTF-8 length boundaries, the surrogates and U+E000 to U+FFFF.
+    var alphabet = new String[]{"a", "z", "\u00e9", "\u07ff", "\u0800", "\ud7ff", "\ue000",
+        "\uffff", "\ud800\udc00", "\ud83d\ude00", "\udbff\udfff"};
+    var random = new Random(11);
+    for (int i = 0; i < 10_000; i++) {
+      var a = randomKey(random, alphabet);
+      var b = randomKey(random, alphabet);
+      var aBytes = a.getBytes(StandardCharsets.UTF_8);
+      var bBytes = b.getBytes(StandardCharsets.UTF_8);
+      int cmp = KeyDataArray.compare(aBytes, 0, aBytes.length, bBytes, 0, bBytes.length);
+      assertThat(Integer.signum(cmp)).isEqualTo(Integer.signum(a.compareTo(b)));
+    }
+  }
+
+  private static String randomKey(Random random, String[] alphabet) {
+    var key = new StringBuilder();
+    for (int i = random.nextInt(4); i >= 0; i--) {
+      key.append(alphabet[random.nextInt(alphabet.length)]);
+    }
+    return key.toString();
+  }
+
+  private KeyData reference(String indexKey, long recordOffset) {
+    return new KeyData(indexKey, new DataRecord(PageRef.of(recordOffset), diskAccessController));
+  }
+}
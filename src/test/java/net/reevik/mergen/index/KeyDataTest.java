@@ -19,6 +19,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.nio.ByteBuffer;
 import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.Page;
 import net.reevik.mergen.io.PageRef;
 import net.reevik.mikron.annotation.ManagedApplication;
 import net.reevik.mikron.annotation.Wire;
@@ -45,4 +46,30 @@ class KeyDataTest {
     assertThat(deserializedKeyData.dataRecord()).isNotNull();
     assertThat(deserializedKeyData.dataRecord().getPageRef()).isEqualTo(PageRef.of(OFFSET));
   }
+
+  @Test
+  void testInlinePayloadStaysInlineBelowTheLimit() {
+    var dataRecord = new DataRecord("payload".getBytes(), diskAccessController);
+    var inlineCell = new KeyData(INDEX_KEY, dataRecord).serialize(16);
+    var inlineKeyData = KeyData.deserialize(inlineCell, diskAccessController);
+    // The payload has no record page, so it is kept inline, even if the limit is lowered.
+    for (int limit : new int[]{0, 4}) {
+      var cell = inlineKeyData.serialize(limit);
+      var deserializedKeyData = KeyData.deserialize(cell, diskAccessController);
+      assertThat(new String(deserializedKeyData.dataRecord().getPayload())).isEqualTo("payload");
+    }
+  }
+
+  @Test
+  void testInlineLeafSerializedWithoutLimit() {
+    var dataNode = new DataNode(diskAccessController);
+    dataNode.add(new KeyData(INDEX_KEY, new DataRecord("payload".getBytes(),
+        diskAccessController)));
+    var page = new Page(dataNode);
+    page.appendCell(dataNode.iterator().next().serialize(16));
+    var serialized = DataNode.deserialize(DataNode.deserialize(page, diskAccessController)
+        .serialize(), diskAccessController);
+    assertThat(new String(serialized.entryOf(INDEX_KEY).dataRecord().getPayload()))
+        .isEqualTo("payload");
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PartitionedIndexTest {
+
+  private Path directory;
+  private PartitionedIndex partitionedIndex;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("partitioned-index");
+    partitionedIndex = new PartitionedIndex(directory.resolve("index").toString(), 4);
+    var upserts = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < 200; i++) {
+      var indexKey = String.format("%03d", i);
+      upserts.add(partitionedIndex.upsertAsync(new DataEntity(indexKey, indexKey.getBytes())));
+    }
+    upserts.forEach(CompletableFuture::join);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    partitionedIndex.close();
+    try (var files = Files.list(directory)) {
+      for (var file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  void testShardFiles() throws IOException {
+    try (var files = Files.list(directory)) {
+      assertThat(files.map(file -> file.getFileName().toString()).toList())
+          .containsExactlyInAnyOrder("index.000", "index.001", "index.002", "index.003");
+    }
+  }
+
+  @Test
+  void testQueryAndDelete() {
+    assertThat(partitionedIndex.query("042").stream()
+        .map(dr -> new String(dr.getPayload())).toList()).containsExactly("042");
+    assertThat(partitionedIndex.delete("042")).hasSize(1);
+    assertThat(partitionedIndex.query("042")).isEmpty();
+    assertThat(partitionedIndex.queryAll(List.of("199", "042", "007")).keySet())
+        .containsExactly("007", "042", "199");
+  }
+
+  @Test
+  void testScanMergesShards() {
+    var indexKeys = new ArrayList<Object>();
+    partitionedIndex.scan().forEachRemaining(keyData -> indexKeys.add(keyData.indexKey()));
+    assertThat(indexKeys).hasSize(200);
+    assertThat(indexKeys.stream().map(Object::toString).toList()).isSorted();
+    indexKeys.clear();
+    partitionedIndex.scan("100", "110")
+        .forEachRemaining(keyData -> indexKeys.add(keyData.indexKey()));
+    assertThat(indexKeys).containsExactly("100", "101", "102", "103", "104", "105", "106", "107",
+        "108", "109");
+  }
+}
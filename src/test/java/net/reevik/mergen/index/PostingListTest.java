@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.PageRef;
+import net.reevik.mikron.annotation.ManagedApplication;
+import net.reevik.mikron.annotation.ManagedTest;
+import net.reevik.mikron.annotation.Wire;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+@ManagedApplication(packages = {"net.reevik.mergen.*"})
+@ManagedTest
+class PostingListTest {
+
+  @Wire(name = "diskAccessController")
+  private DiskController diskAccessController;
+
+  @AfterEach
+  void tearDown() {
+    diskAccessController.purge();
+  }
+
+  @Test
+  void testEncodeAndDecode() {
+    var postingList = newPostingList(-1L, 49152L, 16384L, 16384L);
+    var encoded = postingList.encode();
+    assertThat(encoded.length).isEqualTo(9);
+    var decoded = PostingList.decode(encoded, 0, diskAccessController);
+    assertThat(decoded.sortedRecordRefs()).isEqualTo(postingList.sortedRecordRefs());
+  }
+
+  @Test
+  void testSpillAndRead() {
+    var recordRefs = new long[5000];
+    for (int i = 0; i < recordRefs.length; i++) {
+      recordRefs[i] = i * 16384L;
+    }
+    var postingList = newPostingList(recordRefs);
+    assertThat(postingList.encode().length).isGreaterThan(PostingList.INLINE_LIMIT);
+    var pageRef = postingList.spill();
+    assertThat(postingList.spill()).isEqualTo(pageRef);
+    var readPostingList = PostingList.read(pageRef, diskAccessController);
+    assertThat(readPostingList.sortedRecordRefs()).isEqualTo(recordRefs);
+  }
+
+  @Test
+  void testPersistLeafWithPostingLists() {
+    var dataNode = new DataNode(diskAccessController);
+    var small = newPostingList(100L, 200L);
+    var large = newPostingList(new long[3000]);
+    dataNode.add(new KeyData("a", small.get(0), small));
+    dataNode.add(new KeyData("b", large.get(0), large));
+    var page = diskAccessController.read(dataNode.persist());
+    var entries = new ArrayList<KeyData>();
+    page.forEach(cell -> entries.add(KeyData.deserialize(cell, diskAccessController)));
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(0).postingList().sortedRecordRefs()).isEqualTo(new long[]{100L, 200L});
+    assertThat(entries.get(1).postingList().size()).isEqualTo(3000);
+  }
+
+  private PostingList newPostingList(long... recordRefs) {
+    var postingList = new PostingList(diskAccessController);
+    for (long recordRef : recordRefs) {
+      postingList.add(new DataRecord(PageRef.of(recordRef), diskAccessController));
+    }
+    return postingList;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+class ByteCodecTest {
+
+  private static final long LONG_VALUE = 0x0102030405060708L;
+  private static final int INT_VALUE = 0x0A0B0C0D;
+  private static final short SHORT_VALUE = (short) 0xFEDC;
+
+  @Test
+  void testRoundTripAtUnalignedOffsets() {
+    for (int offset = 0; offset < Long.BYTES; offset++) {
+      var bytes = new byte[32];
+      ByteCodec.putLong(bytes, offset, LONG_VALUE);
+      ByteCodec.putInt(bytes, offset + Long.BYTES, INT_VALUE);
+      ByteCodec.putShort(bytes, offset + Long.BYTES + Integer.BYTES, SHORT_VALUE);
+      assertThat(ByteCodec.getLong(bytes, offset)).isEqualTo(LONG_VALUE);
+      assertThat(ByteCodec.getInt(bytes, offset + Long.BYTES)).isEqualTo(INT_VALUE);
+      assertThat(ByteCodec.getShort(bytes, offset + Long.BYTES + Integer.BYTES))
+          .isEqualTo(SHORT_VALUE);
+
+      var buffer = ByteBuffer.allocate(32);
+      ByteCodec.putLong(buffer, offset, -LONG_VALUE);
+      ByteCodec.putInt(buffer, offset + Long.BYTES, -INT_VALUE);
+      ByteCodec.putShort(buffer, offset + Long.BYTES + Integer.BYTES, (short) -SHORT_VALUE);
+      assertThat(ByteCodec.getLong(buffer, offset)).isEqualTo(-LONG_VALUE);
+      assertThat(ByteCodec.getInt(buffer, offset + Long.BYTES)).isEqualTo(-INT_VALUE);
+      assertThat(ByteCodec.getShort(buffer, offset + Long.BYTES + Integer.BYTES))
+          .isEqualTo((short) -SHORT_VALUE);
+      assertThat(buffer.position()).isZero();
+    }
+  }
+
+  @Test
+  void testBigEndianLayout() {
+    var bytes = new byte[Long.BYTES + Integer.BYTES + Short.BYTES + 1];
+    ByteCodec.putLong(bytes, 1, LONG_VALUE);
+    ByteCodec.putInt(bytes, 1 + Long.BYTES, INT_VALUE);
+    ByteCodec.putShort(bytes, 1 + Long.BYTES + Integer.BYTES, SHORT_VALUE);
+    var expected = ByteBuffer.allocate(bytes.length).put((byte) 0).putLong(LONG_VALUE)
+        .putInt(INT_VALUE).putShort(SHORT_VALUE).array();
+    assertThat(bytes).isEqualTo(expected);
+
+    var buffer = ByteBuffer.allocateDirect(bytes.length);
+    ByteCodec.putLong(buffer, 1, LONG_VALUE);
+    ByteCodec.putInt(buffer, 1 + Long.BYTES, INT_VALUE);
+    ByteCodec.putShort(buffer, 1 + Long.BYTES + Integer.BYTES, SHORT_VALUE);
+    var written = new byte[bytes.length];
+    buffer.get(0, written);
+    assertThat(written).isEqualTo(expected);
+  }
+
+  @Test
+  void testBufferEdges() {
+    var bytes = new byte[Long.BYTES + 3];
+    ByteCodec.putLong(bytes, bytes.length - Long.BYTES, LONG_VALUE);
+    assertThat(ByteCodec.getLong(bytes, bytes.length - Long.BYTES)).isEqualTo(LONG_VALUE);
+    ByteCodec.putShort(bytes, 0, SHORT_VALUE);
+    assertThat(ByteCodec.getShort(bytes, 0)).isEqualTo(SHORT_VALUE);
+    assertThatThrownBy(() -> ByteCodec.putLong(bytes, bytes.length - Long.BYTES + 1, 1L))
+        .isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> ByteCodec.getInt(bytes, -1))
+        .isInstanceOf(IndexOutOfBoundsException.class);
+
+    var buffer = ByteBuffer.allocate(Integer.BYTES + 1);
+    ByteCodec.putInt(buffer, 1, INT_VALUE);
+    assertThat(ByteCodec.getInt(buffer, 1)).isEqualTo(INT_VALUE);
+    assertThatThrownBy(() -> ByteCodec.getInt(buffer, 2))
+        .isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> ByteCodec.putShort(buffer, buffer.capacity() - 1, SHORT_VALUE))
+        .isInstanceOf(IndexOutOfBoundsException.class);
+  }
+}
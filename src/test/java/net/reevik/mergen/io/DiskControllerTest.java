@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import net.reevik.mergen.index.DataNode;
+import net.reevik.mergen.index.DataRecord;
+import net.reevik.mergen.index.KeyData;
+import net.reevik.mikron.annotation.ManagedApplication;
+import net.reevik.mikron.annotation.ManagedTest;
+import net.reevik.mikron.annotation.Wire;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+@ManagedApplication(packages = {"net.reevik.mergen.*"})
+@ManagedTest
+public class DiskControllerTest {
+
+  @Wire(name = "diskAccessController")
+  private DiskController diskAccessController;
+
+  @AfterEach
+  void tearDown() {
+    diskAccessController.purge();
+  }
+
+  @Test
+  void testAppendAndReadAsync() {
+    var page = newDataNodePage("100");
+    var pageRef = diskAccessController.appendAsync(page).join();
+    var readPage = diskAccessController.readAsync(pageRef).join();
+    var dataNode = DataNode.deserialize(readPage, diskAccessController);
+    assertThat(dataNode.getKeyDataSet()).extracting(KeyData::indexKey).containsExactly("100");
+  }
+
+  @Test
+  void testManyOutstandingReads() {
+    var pageRefs = new ArrayList<PageRef>();
+    for (int i = 0; i < 32; i++) {
+      pageRefs.add(diskAccessController.append(newDataNodePage(String.valueOf(i))));
+    }
+    List<CompletableFuture<Page>> reads = pageRefs.stream()
+        .map(diskAccessController::readAsync)
+        .toList();
+    CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).join();
+    for (int i = 0; i < reads.size(); i++) {
+      var dataNode = DataNode.deserialize(reads.get(i).join(), diskAccessController);
+      assertThat(dataNode.getKeyDataSet()).extracting(KeyData::indexKey)
+          .containsExactly(String.valueOf(i));
+    }
+  }
+
+  @Test
+  void testAsyncAppendsDoNotOverlap() {
+    List<CompletableFuture<PageRef>> appends = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      appends.add(diskAccessController.appendAsync(newDataNodePage(String.valueOf(i))));
+    }
+    var offsets = appends.stream().map(CompletableFuture::join).map(PageRef::pageOffset).toList();
+    assertThat(offsets).doesNotHaveDuplicates();
+    var syncRef = diskAccessController.append(newDataNodePage("sync"));
+    assertThat(offsets).doesNotContain(syncRef.pageOffset());
+  }
+
+  @Test
+  void testSyncAppendKeepsPendingAsyncAppend() {
+    var asyncAppend = diskAccessController.appendAsync(newDataNodePage("async"));
+    var syncRef = diskAccessController.append(newDataNodePage("sync"));
+    var asyncRef = asyncAppend.join();
+    assertThat(DataNode.deserialize(diskAccessController.read(asyncRef), diskAccessController)
+        .getKeyDataSet()).extracting(KeyData::indexKey).containsExactly("async");
+    assertThat(DataNode.deserialize(diskAccessController.read(syncRef), diskAccessController)
+        .getKeyDataSet()).extracting(KeyData::indexKey).containsExactly("sync");
+  }
+
+  @Test
+  void testReadAllDeduplicatesPages() {
+    var pageRefs = new ArrayList<PageRef>();
+    for (int i = 0; i < DiskController.MAX_COALESCED_PAGES + 3; i++) {
+      pageRefs.add(diskAccessController.append(newDataNodePage(String.valueOf(i))));
+    }
+    var requested = new ArrayList<>(pageRefs.reversed());
+    requested.add(pageRefs.getFirst());
+    var pages = diskAccessController.readAll(requested);
+    assertThat(pages.keySet()).containsExactlyInAnyOrder(pageRefs.toArray(PageRef[]::new));
+    for (int i = 0; i < pageRefs.size(); i++) {
+      var dataNode = DataNode.deserialize(pages.get(pageRefs.get(i)), diskAccessController);
+      assertThat(dataNode.getKeyDataSet()).extracting(KeyData::indexKey)
+          .containsExactly(String.valueOf(i));
+    }
+  }
+
+  private Page newDataNodePage(String indexKey) {
+    var dataNode = new DataNode(diskAccessController);
+    var page = new Page(dataNode);
+    page.appendCell(new KeyData(indexKey, new DataRecord(PageRef.of(0), diskAccessController))
+        .serialize());
+    return page;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.reevik.mergen.index.DataNode;
+import net.reevik.mikron.annotation.ManagedApplication;
+import net.reevik.mikron.annotation.ManagedTest;
+import net.reevik.mikron.annotation.Wire;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@ManagedApplication(packages = {"net.reevik.mergen.*"})
+@ManagedTest
+public class ReadAheadTest {
+
+  @Wire(name = "diskAccessController")
+  private DiskController diskAccessController;
+
+  private final List<PageRef> pageRefs = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    for (int i = 0; i < 16; i++) {
+      pageRefs.add(diskAccessController.append(new Page(new DataNode(diskAccessController))));
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    diskAccessController.purge();
+  }
+
+  @Test
+  void testWindowGrowsOnSequentialReads() {
+    try (var readAhead = new ReadAhead(diskAccessController, 4)) {
+      readAhead.read(pageRefs.get(0));
+      readAhead.read(pageRefs.get(1));
+      assertThat(readAhead.getWindow()).isEqualTo(0);
+      readAhead.read(pageRefs.get(2));
+      assertThat(readAhead.getWindow()).isEqualTo(2);
+      readAhead.read(pageRefs.get(3));
+      assertThat(readAhead.getWindow()).isEqualTo(4);
+      readAhead.read(pageRefs.get(4));
+      assertThat(readAhead.getWindow()).isEqualTo(4);
+      assertThat(readAhead.getHits()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void testWindowResetsWhenPatternBreaks() {
+    try (var readAhead = new ReadAhead(diskAccessController)) {
+      for (int i = 0; i < 5; i++) {
+        readAhead.read(pageRefs.get(i));
+      }
+      assertThat(readAhead.getWindow()).isGreaterThan(0);
+      readAhead.read(pageRefs.get(12));
+      assertThat(readAhead.getWindow()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  void testBackwardSequentialReads() {
+    try (var readAhead = new ReadAhead(diskAccessController)) {
+      for (int i = pageRefs.size() - 1; i >= 0; i--) {
+        var page = readAhead.read(pageRefs.get(i));
+        assertThat(page.getPageRef()).isEqualTo(pageRefs.get(i));
+      }
+      assertThat(readAhead.getHits()).isEqualTo(pageRefs.size() - 3);
+    }
+  }
+}
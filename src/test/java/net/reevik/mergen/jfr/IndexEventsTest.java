@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.jfr;
+
+import static net.reevik.mergen.io.DiskFile.PAGE_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.reevik.mergen.index.BTreeIndex;
+import net.reevik.mergen.index.DataEntity;
+import net.reevik.mergen.io.DiskController;
+import net.reevik.mergen.io.PageRef;
+import org.junit.jupiter.api.Test;
+
+class IndexEventsTest {
+
+  private static final String PAGE_WRITE = "net.reevik.mergen.PageWrite";
+  private static final String PAGE_READ = "net.reevik.mergen.PageRead";
+  private static final String NODE_SPLIT = "net.reevik.mergen.NodeSplit";
+
+  @Test
+  void testUpsertBurstRecordsEvents() throws IOException {
+    var indexFile = Files.createTempFile("recorded-index", ".idx");
+    var recordingFile = Files.createTempFile("recorded-index", ".jfr");
+    PageRef firstLeaf;
+    try (var recording = new Recording()) {
+      recording.enable(PAGE_WRITE);
+      recording.enable(PAGE_READ);
+      recording.enable(NODE_SPLIT);
+      recording.start();
+      var index = new BTreeIndex(new DiskController(indexFile.toString()));
+      for (int i = 0; i < 100; i++) {
+        var indexKey = String.format("key-%03d", i);
+        index.upsert(new DataEntity(indexKey, ("payload-" + i).getBytes()));
+      }
+      firstLeaf = index.persistLeaves();
+      index.close();
+      try (var diskController = new DiskController(indexFile.toString())) {
+        diskController.read(firstLeaf);
+      }
+      recording.stop();
+      recording.dump(recordingFile);
+    }
+    var events = RecordingFile.readAllEvents(recordingFile);
+
+    var splits = eventsOf(events, NODE_SPLIT);
+    assertThat(splits).extracting(event -> event.getString("nodeType"))
+        .contains("DATA", "INNER");
+    assertThat(splits).extracting(event -> event.getString("separator").startsWith("key-"))
+        .doesNotContain(false);
+
+    var writes = eventsOf(events, PAGE_WRITE);
+    assertThat(writes).isNotEmpty();
+    assertThat(writes).extracting(event -> event.getLong("pageOffset") % PAGE_SIZE == 0)
+        .doesNotContain(false);
+
+    var reads = eventsOf(events, PAGE_READ);
+    assertThat(reads).hasSize(1);
+    assertThat(reads.getFirst().getLong("pageOffset")).isEqualTo(firstLeaf.pageOffset());
+    assertThat(reads.getFirst().getInt("bytes")).isEqualTo(PAGE_SIZE);
+    Files.deleteIfExists(indexFile);
+    Files.deleteIfExists(recordingFile);
+  }
+
+  private static List<RecordedEvent> eventsOf(List<RecordedEvent> events, String name) {
+    return events.stream().filter(event -> event.getEventType().getName().equals(name)).toList();
+  }
+}
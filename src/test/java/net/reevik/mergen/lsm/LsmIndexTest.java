@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.lsm;
+
+import static net.reevik.mergen.io.DiskFile.PAGE_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import net.reevik.mergen.index.DataEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LsmIndexTest {
+
+  private Path directory;
+  private LsmIndex lsmIndex;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("lsm-index");
+    lsmIndex = new LsmIndex(directory.resolve("index").toString(), 4096, 2L * PAGE_SIZE);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    lsmIndex.close();
+    try (var files = Files.list(directory)) {
+      for (var file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private static DataEntity entity(int i, String value) {
+    return new DataEntity(String.format("%05d", i), value.getBytes());
+  }
+
+  private String payload(String indexKey) {
+    var dataRecords = lsmIndex.query(indexKey);
+    return dataRecords.isEmpty() ? null : new String(dataRecords.getFirst().getPayload());
+  }
+
+  @Test
+  void testQueryAcrossMemtableAndRuns() {
+    for (int i = 0; i < 5000; i++) {
+      lsmIndex.upsert(entity(i, "v1-" + i));
+    }
+    for (int i = 0; i < 5000; i += 3) {
+      lsmIndex.upsert(entity(i, "v2-" + i));
+    }
+    for (int i = 0; i < 5000; i += 7) {
+      assertThat(lsmIndex.delete(String.format("%05d", i))).hasSize(1);
+    }
+    assertThat(payload("00003")).isEqualTo("v2-3");
+    assertThat(payload("00007")).isNull();
+    lsmIndex.flush();
+    assertThat(lsmIndex.runsPerLevel().size()).isGreaterThan(1);
+    assertThat(lsmIndex.runsPerLevel().getFirst())
+        .isLessThan(LsmIndex.LEVEL0_COMPACTION_TRIGGER);
+    for (int i = 0; i < 5000; i++) {
+      var expected = i % 7 == 0 ? null : (i % 3 == 0 ? "v2-" : "v1-") + i;
+      assertThat(payload(String.format("%05d", i))).isEqualTo(expected);
+    }
+    assertThat(lsmIndex.delete("00007")).isEmpty();
+    assertThat(lsmIndex.query("99999")).isEmpty();
+  }
+
+  @Test
+  void testScanSkipsTombstones() {
+    for (int i = 0; i < 2000; i++) {
+      lsmIndex.upsert(entity(i, "v" + i));
+    }
+    for (int i = 0; i < 2000; i += 2) {
+      lsmIndex.delete(String.format("%05d", i));
+    }
+    var indexKeys = new ArrayList<String>();
+    try (var cursor = lsmIndex.scan("00100", "00110")) {
+      cursor.forEachRemaining(keyData -> indexKeys.add(keyData.indexKey().toString()));
+    }
+    assertThat(indexKeys).containsExactly("00101", "00103", "00105", "00107", "00109");
+    lsmIndex.flush();
+    var count = 0;
+    for (var cursor = lsmIndex.scan(); cursor.hasNext(); cursor.next()) {
+      count++;
+    }
+    assertThat(count).isEqualTo(1000);
+  }
+
+  @Test
+  void testCompactionDeletesReplacedRuns() throws IOException {
+    for (int round = 0; round < 4; round++) {
+      for (int i = 0; i < 3000; i++) {
+        lsmIndex.upsert(entity(i, "r" + round));
+      }
+    }
+    lsmIndex.flush();
+    int runs = lsmIndex.runsPerLevel().stream().mapToInt(Integer::intValue).sum();
+    try (var files = Files.list(directory)) {
+      assertThat(files.count()).isEqualTo(runs);
+    }
+    assertThat(payload("02999")).isEqualTo("r3");
+  }
+}
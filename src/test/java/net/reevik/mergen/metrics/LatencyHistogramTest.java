@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2024 Erhan Bagdemir. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.reevik.mergen.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void testBucketsCoverTheirValues() {
+    for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 1_000_000, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertThat(LatencyHistogram.upperBoundOf(bucket)).isGreaterThanOrEqualTo(value);
+      if (bucket > 0) {
+        assertThat(LatencyHistogram.upperBoundOf(bucket - 1)).isLessThan(value);
+      }
+    }
+  }
+
+  @Test
+  void testPercentiles() {
+    var histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertThat(histogram.getCount()).isEqualTo(1000L);
+    assertThat(histogram.getMax()).isEqualTo(1_000_000L);
+    assertThat(histogram.getValueAtPercentile(50)).isBetween(500_000L, 532_000L);
+    assertThat(histogram.getValueAtPercentile(99)).isBetween(990_000L, 1_000_000L);
+    assertThat(histogram.getMean()).isEqualTo(500_500.0d);
+  }
+
+  @Test
+  void testEmptyHistogram() {
+    var histogram = new LatencyHistogram();
+    assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0L);
+    assertThat(histogram.getMean()).isEqualTo(0.0d);
+  }
+}